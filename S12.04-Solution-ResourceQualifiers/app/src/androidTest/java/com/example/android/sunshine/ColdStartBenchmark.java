@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastSnapshot;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+import com.example.android.sunshine.utils.PollingCheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compares the time from MainActivity's onCreate until the first row of the forecast is about to
+ * be drawn (see MainActivity#getTimeToFirstRowMillis), with and without a forecast snapshot:
+ * <p>
+ *   1) Without a snapshot, the list waits for the loader to query the ContentProvider, and for
+ *   the adapter to format the rows on its background thread
+ * <p>
+ *   2) With a snapshot, the first frame shows the rows read from the memory-mapped snapshot
+ * <p>
+ * The database holds the same forecast in both cases, and the provider's query cache is cleared
+ * before each launch. The app's process is already running (the tests run in it), so this
+ * understates a real cold start, which also has to open the database. Results are logged; see
+ * {@link Benchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+@BenchmarkTest
+public class ColdStartBenchmark {
+
+    private static final int LAUNCHES = 10;
+
+    private static final int DAYS = 14;
+
+    private static final long FIRST_ROW_TIMEOUT_MILLIS = 10000;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private ForecastBatch mForecast;
+
+    @Before
+    public void setUp() {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        mForecast = new ForecastBatch(DAYS);
+        for (int day = 0; day < DAYS; day++) {
+            mForecast.add(today + day * SunshineDateUtils.DAY_IN_MILLIS,
+                    800 + day % 4, 5 + day % 7, 15 + day % 9, 60, 1013, 3.5, 180);
+        }
+
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mForecast.bulkInsert(mContext.getContentResolver());
+    }
+
+    @After
+    public void tearDown() {
+        ForecastSnapshot.delete(mContext);
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void benchmarkTimeToFirstRow() throws Exception {
+        long[] fromDatabase = new long[LAUNCHES];
+        long[] fromSnapshot = new long[LAUNCHES];
+
+        /* Alternate, so that whatever else the device is doing affects both equally */
+        for (int i = 0; i < LAUNCHES; i++) {
+            ForecastSnapshot.delete(mContext);
+            fromDatabase[i] = launchAndMeasure(false);
+
+            ForecastSnapshot.write(mContext,
+                    SunshinePreferences.getPreferredWeatherLocation(mContext), mForecast);
+            fromSnapshot[i] = launchAndMeasure(true);
+        }
+
+        log("Time to first row, from the database", fromDatabase);
+        log("Time to first row, from the snapshot", fromSnapshot);
+    }
+
+    /**
+     * Launches MainActivity, waits until its first row is about to be drawn, and finishes it.
+     *
+     * @param expectSnapshot Whether the first rows should come from the snapshot
+     * @return The time to the first row, in milliseconds
+     */
+    private long launchAndMeasure(boolean expectSnapshot) {
+        mContext.getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_CLEAR_QUERY_CACHE, null, null);
+
+        Intent intent = new Intent(mContext, MainActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        final MainActivity activity = (MainActivity) mInstrumentation.startActivitySync(intent);
+        try {
+            PollingCheck.check("The first row was never drawn", FIRST_ROW_TIMEOUT_MILLIS,
+                    new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws Exception {
+                            return getOnMainThread(activity) != -1;
+                        }
+                    });
+
+            assertEquals(expectSnapshot, activity.isShowingSnapshot());
+            return getOnMainThread(activity);
+        } finally {
+            activity.finish();
+            mInstrumentation.waitForIdleSync();
+        }
+    }
+
+    private long getOnMainThread(final MainActivity activity) {
+        final long[] millis = new long[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                millis[0] = activity.getTimeToFirstRowMillis();
+            }
+        });
+        return millis[0];
+    }
+
+    private static void log(String name, long[] millis) {
+        long[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        Log.i(Benchmark.TAG, String.format(Locale.US, "%s: median %d ms, min %d ms, max %d ms",
+                name, sorted[sorted.length / 2], sorted[0], sorted[sorted.length - 1]));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.widget.FrameLayout;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+import com.example.android.sunshine.utils.PollingCheck;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Measures what scrolling through the forecast list costs per row, by binding 1,000 rows to a
+ * handful of recycled ViewHolders, the way a RecyclerView does while flinging:
+ * <p>
+ *   1) Formatting every row as it is bound, the way ForecastAdapter used to
+ * <p>
+ *   2) Binding the display-ready rows ForecastAdapter builds when the data changes
+ * <p>
+ *   3) Building those rows, which happens once per data change, on a background thread
+ * <p>
+ * The allocations logged for 2) are the ones the views make themselves when their text changes;
+ * the adapter itself doesn't allocate while binding, which
+ * TestForecastRows#testReadingRowsDoesNotAllocate checks. Results are logged; see
+ * {@link Benchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+@BenchmarkTest
+public class ForecastScrollBenchmark {
+
+    private static final int ROWS = 1000;
+
+    /* About as many ViewHolders as a RecyclerView keeps around for a screen of rows */
+    private static final int VIEW_HOLDERS = 12;
+
+    private static final long LOAD_TIMEOUT_MILLIS = 10000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private final ForecastAdapter.ForecastAdapterOnClickHandler mClickHandler =
+            new ForecastAdapter.ForecastAdapterOnClickHandler() {
+                @Override
+                public void onClick(long date) {
+                }
+            };
+
+    @Test
+    public void benchmarkScroll() throws Exception {
+        final MatrixCursor cursor = createForecastCursor();
+        final ForecastAdapter adapter = new ForecastAdapter(mContext, mClickHandler);
+        final ForecastAdapter.ForecastAdapterViewHolder[] holders =
+                new ForecastAdapter.ForecastAdapterViewHolder[VIEW_HOLDERS];
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                adapter.swapCursor(cursor);
+
+                FrameLayout parent = new FrameLayout(mContext);
+                for (int i = 0; i < VIEW_HOLDERS; i++) {
+                    holders[i] = adapter.onCreateViewHolder(parent, adapter.getItemViewType(i));
+                }
+            }
+        });
+
+        /* The rows are built on the adapter's background thread */
+        PollingCheck.check("The rows were never built", LOAD_TIMEOUT_MILLIS,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return adapter.getItemCount() == ROWS;
+                    }
+                });
+
+        final Benchmark.Result[] results = new Benchmark.Result[3];
+        final Exception[] failure = new Exception[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    results[0] = Benchmark.measure("Scroll 1,000 rows, formatting each bind", 3,
+                            10, new Benchmark.Block() {
+                                @Override
+                                public void run() throws Exception {
+                                    bindFormattingEachRow(cursor, holders);
+                                }
+                            });
+
+                    results[1] = Benchmark.measure("Scroll 1,000 rows, precomputed rows", 3,
+                            10, new Benchmark.Block() {
+                                @Override
+                                public void run() throws Exception {
+                                    for (int position = 0; position < ROWS; position++) {
+                                        adapter.onBindViewHolder(
+                                                holders[position % VIEW_HOLDERS], position);
+                                    }
+                                }
+                            });
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        results[2] = Benchmark.measure("Build 1,000 rows", 3, 10, new Benchmark.Block() {
+            @Override
+            public void run() throws Exception {
+                ForecastRows.build(mContext, ForecastRows.Values.fromCursor(cursor), true);
+            }
+        });
+
+        for (Benchmark.Result result : results) {
+            Log.i(Benchmark.TAG, String.format(Locale.US,
+                    "%s: %.2f allocations per row, %.1f us per row", result.name,
+                    result.allocationsPerIteration / ROWS,
+                    result.nanosPerIteration / ROWS / 1e3));
+        }
+    }
+
+    /**
+     * Binds every row the way ForecastAdapter did before rows were precomputed: reading the
+     * cursor, then formatting the date, description and temperatures of each row as it is bound.
+     */
+    private void bindFormattingEachRow(MatrixCursor cursor,
+                                       ForecastAdapter.ForecastAdapterViewHolder[] holders) {
+        for (int position = 0; position < ROWS; position++) {
+            cursor.moveToPosition(position);
+            ForecastRow row = ForecastRow.create(mContext,
+                    cursor.getLong(MainActivity.INDEX_WEATHER_DATE),
+                    cursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID),
+                    cursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP),
+                    cursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP),
+                    position == 0);
+
+            ForecastAdapter.ForecastAdapterViewHolder holder = holders[position % VIEW_HOLDERS];
+            holder.iconView.setImageResource(row.iconResourceId);
+            holder.dateView.setText(row.dateText);
+            holder.descriptionView.setText(row.description);
+            holder.descriptionView.setContentDescription(row.descriptionA11y);
+            holder.highTempView.setText(row.highText);
+            holder.highTempView.setContentDescription(row.highA11y);
+            holder.lowTempView.setText(row.lowText);
+            holder.lowTempView.setContentDescription(row.lowA11y);
+        }
+    }
+
+    /**
+     * Builds a forecast cursor, in the shape of MainActivity's query, of ROWS days from today on,
+     * with conditions and temperatures that vary from day to day.
+     */
+    private static MatrixCursor createForecastCursor() {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        int[] weatherIds = {800, 801, 500, 211, 600, 741};
+
+        MatrixCursor cursor = new MatrixCursor(MainActivity.MAIN_FORECAST_PROJECTION, ROWS);
+        for (int day = 0; day < ROWS; day++) {
+            cursor.addRow(new Object[]{
+                    today + day * SunshineDateUtils.DAY_IN_MILLIS,
+                    15.0 + day % 13,
+                    5.0 + day % 11,
+                    weatherIds[day % weatherIds.length]});
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.MatrixCursor;
+import android.os.Debug;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that {@link ForecastRows} are formatted the way the forecast list displays them, and
+ * that comparing two sets of rows only reports the days that were added, removed or would be
+ * displayed differently, so ForecastAdapter doesn't rebind rows needlessly.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastRows {
+
+    private static final int DAYS = 14;
+
+    private static final long TODAY = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private final SharedPreferences mPreferences =
+            PreferenceManager.getDefaultSharedPreferences(mContext);
+    private final String mUnitsKey = mContext.getString(R.string.pref_units_key);
+
+    /* The units the user had picked before the test, restored afterwards */
+    private String mSavedUnits;
+
+    @Before
+    public void setUp() {
+        mSavedUnits = mPreferences.getString(mUnitsKey, null);
+        setUnits(R.string.pref_units_metric);
+    }
+
+    @After
+    public void tearDown() {
+        mPreferences.edit().putString(mUnitsKey, mSavedUnits).commit();
+        SunshinePreferences.reloadSnapshot(mContext);
+    }
+
+    private void setUnits(int unitsResourceId) {
+        mPreferences.edit().putString(mUnitsKey, mContext.getString(unitsResourceId)).commit();
+        /* Don't wait for the change listener, the rows are built right after this */
+        SunshinePreferences.reloadSnapshot(mContext);
+    }
+
+    /**
+     * Adds up the updates DiffUtil dispatches.
+     */
+    private static final class CountingCallback implements ListUpdateCallback {
+        int mInserted;
+        int mRemoved;
+        int mMoved;
+        int mChanged;
+        int mLastChangedPosition = -1;
+
+        @Override
+        public void onInserted(int position, int count) {
+            mInserted += count;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mRemoved += count;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mMoved++;
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mChanged += count;
+            mLastChangedPosition = position;
+        }
+    }
+
+    /**
+     * Builds a forecast cursor, in the shape of MainActivity's query, with one row per day from
+     * firstDay (days after today) on. Every day gets the same temperatures, unless it is
+     * changedDay, which is a degree warmer.
+     */
+    private static MatrixCursor createForecastCursor(int firstDay, int days, int changedDay) {
+        MatrixCursor cursor = new MatrixCursor(MainActivity.MAIN_FORECAST_PROJECTION);
+        for (int day = firstDay; day < firstDay + days; day++) {
+            double max = day == changedDay ? 21 : 20;
+            cursor.addRow(new Object[]{
+                    TODAY + day * SunshineDateUtils.DAY_IN_MILLIS, max, 10.0, 800});
+        }
+        return cursor;
+    }
+
+    private ForecastRows createRows(int firstDay, int days, int changedDay) {
+        return createRows(firstDay, days, changedDay, true);
+    }
+
+    private ForecastRows createRows(int firstDay, int days, int changedDay,
+                                    boolean useTodayLayout) {
+        return ForecastRows.build(mContext, ForecastRows.Values.fromCursor(
+                createForecastCursor(firstDay, days, changedDay)), useTodayLayout);
+    }
+
+    private static CountingCallback diff(ForecastRows oldRows, ForecastRows newRows,
+                                         boolean useTodayLayout) {
+        CountingCallback callback = new CountingCallback();
+        DiffUtil.calculateDiff(
+                new ForecastRows.DiffCallback(oldRows, newRows, useTodayLayout), false)
+                .dispatchUpdatesTo(callback);
+        return callback;
+    }
+
+    @Test
+    public void testRowsAreFormattedForDisplay() {
+        ForecastRows rows = createRows(0, DAYS, 3);
+        assertEquals(DAYS, rows.getCount());
+
+        ForecastRow row = rows.get(3);
+        assertEquals(TODAY + 3 * SunshineDateUtils.DAY_IN_MILLIS, row.date);
+        assertEquals(SunshineDateUtils.getFriendlyDateString(mContext, row.date, false),
+                row.dateText);
+        assertEquals(SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(800),
+                row.iconResourceId);
+        assertEquals(SunshineWeatherUtils.getStringForWeatherCondition(mContext, 800),
+                row.description);
+        assertEquals(SunshineWeatherUtils.formatTemperature(mContext, 21), row.highText);
+        assertEquals(mContext.getString(R.string.a11y_high_temp, row.highText), row.highA11y);
+        assertEquals(SunshineWeatherUtils.formatTemperature(mContext, 10), row.lowText);
+
+        /* The first row uses the large artwork of the "today" layout */
+        assertEquals(SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(800),
+                rows.get(0).iconResourceId);
+
+        assertTrue(row.looksTheSame(createRows(0, DAYS, 3).get(3)));
+        assertFalse(row.looksTheSame(rows.get(4)));
+
+        assertEquals(0, ForecastRows.Values.fromCursor(null).getCount());
+    }
+
+    /**
+     * Binding a row reads it and hands its fields to the views, which is all
+     * ForecastAdapter#onBindViewHolder does itself, so reading the rows must not allocate. What
+     * the views allocate when their text changes is theirs; ForecastScrollBenchmark logs it.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testReadingRowsDoesNotAllocate() {
+        ForecastRows rows = createRows(0, DAYS, -1);
+        int checksum = 0;
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int position = 0; position < rows.getCount(); position++) {
+            ForecastRow row = rows.get(position);
+            checksum += row.iconResourceId + row.dateText.length() + row.description.length()
+                    + row.descriptionA11y.length() + row.highText.length()
+                    + row.highA11y.length() + row.lowText.length() + row.lowA11y.length();
+        }
+        Debug.stopAllocCounting();
+
+        assertEquals("Reading the rows to bind them allocated",
+                0, Debug.getThreadAllocCount());
+        assertTrue(checksum > 0);
+    }
+
+    @Test
+    public void testSameDataDispatchesNothing() {
+        CountingCallback updates = diff(createRows(0, DAYS, -1), createRows(0, DAYS, -1), true);
+
+        assertEquals(0, updates.mInserted + updates.mRemoved + updates.mMoved + updates.mChanged);
+    }
+
+    @Test
+    public void testOnlyChangedDayIsRebound() {
+        CountingCallback updates = diff(createRows(0, DAYS, -1), createRows(0, DAYS, 5), true);
+
+        assertEquals(1, updates.mChanged);
+        assertEquals(5, updates.mLastChangedPosition);
+        assertEquals(0, updates.mInserted + updates.mRemoved + updates.mMoved);
+    }
+
+    @Test
+    public void testNextDayShiftsListByOneRow() {
+        /* A day later, yesterday drops off the top and a new day appears at the bottom */
+        CountingCallback withoutTodayLayout = diff(
+                createRows(0, DAYS, -1, false), createRows(1, DAYS, -1, false), false);
+        assertEquals(1, withoutTodayLayout.mRemoved);
+        assertEquals(1, withoutTodayLayout.mInserted);
+        assertEquals(0, withoutTodayLayout.mChanged);
+
+        /* With a layout of its own for the first row, the new first row is rebound as well */
+        CountingCallback withTodayLayout = diff(
+                createRows(0, DAYS, -1), createRows(1, DAYS, -1), true);
+        assertEquals(1, withTodayLayout.mRemoved);
+        assertEquals(1, withTodayLayout.mInserted);
+        assertEquals(1, withTodayLayout.mChanged);
+    }
+
+    @Test
+    public void testChangeOfUnitsRebindsEveryRow() {
+        ForecastRows metricRows = createRows(0, DAYS, -1);
+        setUnits(R.string.pref_units_imperial);
+        CountingCallback updates = diff(metricRows, createRows(0, DAYS, -1), true);
+
+        assertEquals(DAYS, updates.mChanged);
+        assertEquals(0, updates.mInserted + updates.mRemoved + updates.mMoved);
+    }
+}
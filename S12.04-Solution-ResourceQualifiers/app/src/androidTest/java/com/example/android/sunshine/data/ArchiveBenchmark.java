@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.ArchiveEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Measures reading the weather archive through WeatherProvider once it holds several years of
+ * history:
+ * <p>
+ *   1) The last year, as a trend view would ask for it
+ * <p>
+ *   2) The whole archive
+ * <p>
+ *   3) Compacting the archive down to a year
+ * <p>
+ * As the archive is stored in date order (see WeatherDbHelper#createArchiveTable), the time to
+ * read the last year should barely change as the years before it pile up. Results are logged;
+ * see {@link Benchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+@BenchmarkTest
+public class ArchiveBenchmark {
+
+    /* The columns a trend view needs */
+    private static final String[] TREND_PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID,
+    };
+
+    private static final int DAYS_IN_YEAR = 365;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private final ContentResolver mContentResolver = mContext.getContentResolver();
+
+    private final long mToday = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+    @After
+    public void tearDown() {
+        mContentResolver.delete(ArchiveEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void benchmark1Year() throws Exception {
+        benchmarkArchive(1);
+    }
+
+    @Test
+    public void benchmark5Years() throws Exception {
+        benchmarkArchive(5);
+    }
+
+    @Test
+    public void benchmark20Years() throws Exception {
+        benchmarkArchive(20);
+    }
+
+    private void benchmarkArchive(int years) throws Exception {
+        final int days = years * DAYS_IN_YEAR;
+        fillArchive(days);
+
+        final long yearAgo = mToday - DAYS_IN_YEAR * SunshineDateUtils.DAY_IN_MILLIS;
+        Benchmark.Result lastYear = Benchmark.measure(
+                "Archive of " + years + " years, last year", 20, new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        assertEquals(DAYS_IN_YEAR, readArchive(
+                                WeatherEntry.COLUMN_DATE + " >= " + yearAgo));
+                    }
+                });
+        logRowsPerSecond(lastYear, DAYS_IN_YEAR);
+
+        Benchmark.Result everything = Benchmark.measure(
+                "Archive of " + years + " years, all days", 10, new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        assertEquals(days, readArchive(null));
+                    }
+                });
+        logRowsPerSecond(everything, days);
+
+        long start = System.nanoTime();
+        int deleted = mContentResolver.delete(ArchiveEntry.CONTENT_URI,
+                ArchiveEntry.getSqlSelectOlderThan(yearAgo), null);
+        long elapsed = System.nanoTime() - start;
+        assertEquals(days - DAYS_IN_YEAR, deleted);
+        Log.i(Benchmark.TAG, String.format(Locale.US,
+                "Archive of %d years, compacting to a year: %.3f ms", years, elapsed / 1e6));
+    }
+
+    /**
+     * Reads every row of an archive query, like a trend view binding the days to a chart.
+     *
+     * @return The number of days read
+     */
+    private int readArchive(String selection) {
+        Cursor cursor = mContentResolver.query(ArchiveEntry.CONTENT_URI,
+                TREND_PROJECTION,
+                selection,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        int rows = 0;
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+                cursor.getDouble(1);
+                cursor.getDouble(2);
+                cursor.getInt(3);
+                rows++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Fills the archive with the given number of days before today, a year at a time, the way
+     * years of daily merges would have.
+     */
+    private void fillArchive(int days) {
+        long firstDate = mToday - days * SunshineDateUtils.DAY_IN_MILLIS;
+        for (int offset = 0; offset < days; offset += DAYS_IN_YEAR) {
+            int count = Math.min(DAYS_IN_YEAR, days - offset);
+            ContentValues[] values = new ContentValues[count];
+            for (int i = 0; i < count; i++) {
+                int day = offset + i;
+                ContentValues value = new ContentValues();
+                value.put(WeatherEntry.COLUMN_DATE,
+                        firstDate + day * SunshineDateUtils.DAY_IN_MILLIS);
+                value.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + day % 5);
+                value.put(WeatherEntry.COLUMN_MIN_TEMP, 5 + day % 11);
+                value.put(WeatherEntry.COLUMN_MAX_TEMP, 15 + day % 13);
+                value.put(WeatherEntry.COLUMN_HUMIDITY, 40 + day % 50);
+                value.put(WeatherEntry.COLUMN_PRESSURE, 1000 + day % 30);
+                value.put(WeatherEntry.COLUMN_WIND_SPEED, 1.5 + day % 10);
+                value.put(WeatherEntry.COLUMN_DEGREES, day % 360);
+                values[i] = value;
+            }
+            mContentResolver.bulkInsert(ArchiveEntry.CONTENT_URI, values);
+        }
+    }
+
+    private static void logRowsPerSecond(Benchmark.Result result, int rows) {
+        double rowsPerSecond = rows / (result.nanosPerIteration / 1e9);
+        Log.i(Benchmark.TAG,
+                String.format(Locale.US, "%s: %.0f rows/s", result.name, rowsPerSecond));
+    }
+}
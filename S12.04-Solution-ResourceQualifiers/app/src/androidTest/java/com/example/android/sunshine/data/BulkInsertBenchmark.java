@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+/**
+ * Compares the throughput, in rows per second, of three ways of writing a forecast into the
+ * weather table:
+ * <p>
+ *   1) SQLiteDatabase#insert for every ContentValues, as WeatherProvider#bulkInsert used to do
+ * <p>
+ *   2) WeatherProvider#bulkInsert with ContentValues, now bound to a compiled statement
+ * <p>
+ *   3) A ForecastBatch of primitive arrays, bound to the same compiled statement
+ * <p>
+ * Every run starts from an empty table, so each measured run includes deleting the rows of the
+ * run before. That cost is the same for all three. Results are logged; see {@link Benchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+@BenchmarkTest
+public class BulkInsertBenchmark {
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @After
+    public void tearDown() {
+        clearTable();
+    }
+
+    @Test
+    public void benchmark14Rows() throws Exception {
+        compareInserts(14, 5, 200);
+    }
+
+    @Test
+    public void benchmark1kRows() throws Exception {
+        compareInserts(1000, 3, 20);
+    }
+
+    @Test
+    public void benchmark100kRows() throws Exception {
+        compareInserts(100000, 1, 2);
+    }
+
+    private void compareInserts(final int rows, int warmups, int iterations) throws Exception {
+        final ContentValues[] values = createValues(rows);
+        final ForecastBatch batch = createBatch(rows);
+        final ContentResolver contentResolver = mContext.getContentResolver();
+
+        Benchmark.Result legacy = Benchmark.measure("SQLiteDatabase#insert, " + rows + " rows",
+                warmups, iterations, new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        clearTable();
+                        insertOneByOne(values);
+                    }
+                });
+        logRowsPerSecond(legacy, rows);
+
+        Benchmark.Result compiled = Benchmark.measure("bulkInsert, " + rows + " rows",
+                warmups, iterations, new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        clearTable();
+                        contentResolver.bulkInsert(
+                                WeatherContract.WeatherEntry.CONTENT_URI, values);
+                    }
+                });
+        logRowsPerSecond(compiled, rows);
+
+        Benchmark.Result columnar = Benchmark.measure("ForecastBatch, " + rows + " rows",
+                warmups, iterations, new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        clearTable();
+                        batch.bulkInsert(contentResolver);
+                    }
+                });
+        logRowsPerSecond(columnar, rows);
+    }
+
+    /**
+     * The way WeatherProvider#bulkInsert inserted rows before it used a compiled statement.
+     */
+    private void insertOneByOne(ContentValues[] values) {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+    }
+
+    private void clearTable() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        db.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        db.close();
+    }
+
+    private static void logRowsPerSecond(Benchmark.Result result, int rows) {
+        double rowsPerSecond = rows / (result.nanosPerIteration / 1e9);
+        Log.i(Benchmark.TAG,
+                String.format(Locale.US, "%s: %.0f rows/s", result.name, rowsPerSecond));
+    }
+
+    private static ContentValues[] createValues(int rows) {
+        return createBatch(rows).toContentValues();
+    }
+
+    private static ForecastBatch createBatch(int rows) {
+        long date = TestUtilities.DATE_NORMALIZED;
+        ForecastBatch batch = new ForecastBatch(rows);
+        for (int i = 0; i < rows; i++) {
+            batch.add(date + i * SunshineDateUtils.DAY_IN_MILLIS,
+                    800 + i % 5,
+                    10 + i % 7,
+                    20 + i % 9,
+                    50 + i % 40,
+                    1000 + i % 30,
+                    1.5 + i % 10,
+                    i % 360);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how long the main forecast query takes while another thread keeps rewriting the
+ * weather table, once with the rollback journal and once with write-ahead logging. This is the
+ * situation of MainActivity's CursorLoader during a sync.
+ * <p>
+ * Each mode gets a database file of its own, so the two never interfere. Results (median, 95th
+ * percentile and worst read latency, plus how many write transactions completed meanwhile) are
+ * logged under the {@link Benchmark#TAG} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+@BenchmarkTest
+public class ConcurrentReadBenchmark {
+
+    private static final int READS = 300;
+
+    /* Rows rewritten by every write transaction; about as many as a long forecast */
+    private static final int ROWS_PER_WRITE = 500;
+
+    private static final String[] FORECAST_PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+    };
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void benchmarkReadsDuringWrites() throws Exception {
+        measureReadsDuringWrites("rollback journal", "benchmark-rollback.db", false);
+        measureReadsDuringWrites("write-ahead logging", "benchmark-wal.db", true);
+    }
+
+    private void measureReadsDuringWrites(String label, String databaseName,
+                                          boolean writeAheadLogging) throws Exception {
+        mContext.deleteDatabase(databaseName);
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, databaseName,
+                writeAheadLogging, WeatherDbHelper.DEFAULT_MAX_SQL_CACHE_SIZE);
+        final SQLiteDatabase db = helper.getWritableDatabase();
+
+        final ContentValues[] rows = createRows(ROWS_PER_WRITE);
+        writeRows(db, rows);
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicInteger writes = new AtomicInteger();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (writing.get()) {
+                    writeRows(db, rows);
+                    writes.incrementAndGet();
+                }
+            }
+        }, "BenchmarkWriter");
+        writer.start();
+
+        long[] latencies = new long[READS];
+        String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
+        try {
+            for (int i = 0; i < READS; i++) {
+                long start = System.nanoTime();
+                Cursor cursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                        FORECAST_PROJECTION, selection, null, null, null,
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+                /* Filling the window is when the query actually runs */
+                cursor.getCount();
+                cursor.close();
+                latencies[i] = System.nanoTime() - start;
+            }
+        } finally {
+            writing.set(false);
+            writer.join();
+            helper.close();
+            mContext.deleteDatabase(databaseName);
+        }
+
+        Arrays.sort(latencies);
+        Log.i(Benchmark.TAG, String.format(Locale.US,
+                "Reads during writes, %s: median %.3f ms, p95 %.3f ms, max %.3f ms"
+                        + " (%d reads, %d write transactions)",
+                label,
+                latencies[READS / 2] / 1e6,
+                latencies[READS * 95 / 100] / 1e6,
+                latencies[READS - 1] / 1e6,
+                READS,
+                writes.get()));
+    }
+
+    /**
+     * Rewrites the rows in one transaction, the way a sync does.
+     */
+    private static void writeRows(SQLiteDatabase db, ContentValues[] rows) {
+        db.beginTransactionNonExclusive();
+        try {
+            for (ContentValues row : rows) {
+                db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, row);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static ContentValues[] createRows(int count) {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ContentValues[] template = TestUtilities.createBulkInsertTestWeatherValues();
+        ContentValues[] rows = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new ContentValues(template[i % template.length]);
+            rows[i].put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    today + i * SunshineDateUtils.DAY_IN_MILLIS);
+        }
+        return rows;
+    }
+}
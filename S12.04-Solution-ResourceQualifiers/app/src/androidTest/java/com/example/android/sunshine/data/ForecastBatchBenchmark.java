@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares what it costs to carry a forecast from the parser to the provider, without the
+ * parsing and writing on either end: building it one day at a time, then reading every value of
+ * every day back out, as the provider does to bind them.
+ * <p>
+ *   1) As ContentValues, one HashMap of boxed values per day, as the sync used to
+ * <p>
+ *   2) As a ForecastBatch of primitive arrays
+ * <p>
+ * The interesting numbers are the allocations and garbage collections, rather than the time.
+ * Results are logged; see {@link Benchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+@BenchmarkTest
+public class ForecastBatchBenchmark {
+
+    /* Keeps the JIT from optimizing the reads away */
+    private double mSink;
+
+    @Test
+    public void benchmark14Days() throws Exception {
+        compare(14, 5, 2000);
+    }
+
+    @Test
+    public void benchmark1kDays() throws Exception {
+        compare(1000, 5, 100);
+    }
+
+    @Test
+    public void benchmark100kDays() throws Exception {
+        compare(100000, 1, 5);
+    }
+
+    private void compare(final int days, int warmups, int iterations) throws Exception {
+        Benchmark.measure("ContentValues, " + days + " days", warmups, iterations,
+                new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        mSink += readContentValues(createContentValues(days));
+                    }
+                });
+
+        Benchmark.measure("ForecastBatch, " + days + " days", warmups, iterations,
+                new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        mSink += readBatch(createBatch(days));
+                    }
+                });
+    }
+
+    /* The same values as createBatch, the way the parser used to build them */
+    private static ContentValues[] createContentValues(int days) {
+        ContentValues[] values = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            ContentValues value = new ContentValues();
+            value.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    TestUtilities.DATE_NORMALIZED + i * SunshineDateUtils.DAY_IN_MILLIS);
+            value.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 50.0 + i % 40);
+            value.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1000.0 + i % 30);
+            value.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 1.5 + i % 10);
+            value.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, (double) (i % 360));
+            value.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 20.0 + i % 9);
+            value.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 10.0 + i % 7);
+            value.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 5);
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private static ForecastBatch createBatch(int days) {
+        /* Like the streaming parser, which doesn't know the number of days up front */
+        ForecastBatch batch = new ForecastBatch();
+        for (int i = 0; i < days; i++) {
+            batch.add(TestUtilities.DATE_NORMALIZED + i * SunshineDateUtils.DAY_IN_MILLIS,
+                    800 + i % 5,
+                    10 + i % 7,
+                    20 + i % 9,
+                    50 + i % 40,
+                    1000 + i % 30,
+                    1.5 + i % 10,
+                    i % 360);
+        }
+        return batch;
+    }
+
+    private static double readContentValues(ContentValues[] values) {
+        double sum = 0;
+        for (ContentValues value : values) {
+            sum += value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)
+                    + value.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID)
+                    + value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP)
+                    + value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP)
+                    + value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY)
+                    + value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE)
+                    + value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED)
+                    + value.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES);
+        }
+        return sum;
+    }
+
+    private static double readBatch(ForecastBatch batch) {
+        double sum = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            sum += batch.getDate(i)
+                    + batch.getWeatherId(i)
+                    + batch.getMinTemp(i)
+                    + batch.getMaxTemp(i)
+                    + batch.getHumidity(i)
+                    + batch.getPressure(i)
+                    + batch.getWindSpeed(i)
+                    + batch.getDegrees(i);
+        }
+        return sum;
+    }
+}
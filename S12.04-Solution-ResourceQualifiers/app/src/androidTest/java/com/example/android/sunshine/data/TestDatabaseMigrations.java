@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.MainActivity;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.Benchmark;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static com.example.android.sunshine.data.TestUtilities.getStaticIntegerField;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Upgrades databases created with every historical DATABASE_VERSION to the current one and
+ * checks that the weather survives the trip. Each test also logs how long it takes from opening
+ * the upgraded database to having the rows for the first screen of the forecast list, which is
+ * what the user waits for on the first launch after an app update.
+ * <p>
+ * Version 1 is the weather table as S07.01 created it, with every column allowed to be NULL, and
+ * version 2 the same with NOT NULL columns (S07.02). Version 3 added the UNIQUE date (S07.03),
+ * version 4 the covering index, version 5 the archive and version 6 the location column.
+ * <p>
+ * A database of a newer version than ours, left behind by going back to an older build, can't be
+ * migrated; it is recreated instead.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestDatabaseMigrations {
+
+    private static final String TEST_DATABASE_NAME = "migration-test.db";
+
+    private static final int DAYS = 14;
+
+    private static final String SQL_CREATE_VERSION_1_WEATHER_TABLE =
+            "CREATE TABLE weather ("
+            + " _id INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + " date INTEGER,"
+            + " weather_id INTEGER,"
+            + " min REAL,"
+            + " max REAL,"
+            + " humidity REAL,"
+            + " pressure REAL,"
+            + " wind REAL,"
+            + " degrees REAL);";
+
+    private static final String SQL_CREATE_VERSION_2_WEATHER_TABLE =
+            "CREATE TABLE weather ("
+            + " _id INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + " date INTEGER NOT NULL,"
+            + " weather_id INTEGER NOT NULL,"
+            + " min REAL NOT NULL,"
+            + " max REAL NOT NULL,"
+            + " humidity REAL NOT NULL,"
+            + " pressure REAL NOT NULL,"
+            + " wind REAL NOT NULL,"
+            + " degrees REAL NOT NULL);";
+
+    private static final String SQL_CREATE_VERSION_3_WEATHER_TABLE =
+            "CREATE TABLE weather ("
+            + " _id INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + " date INTEGER NOT NULL,"
+            + " weather_id INTEGER NOT NULL,"
+            + " min REAL NOT NULL,"
+            + " max REAL NOT NULL,"
+            + " humidity REAL NOT NULL,"
+            + " pressure REAL NOT NULL,"
+            + " wind REAL NOT NULL,"
+            + " degrees REAL NOT NULL,"
+            + " UNIQUE (date) ON CONFLICT REPLACE);";
+
+    private static final String SQL_CREATE_VERSION_5_ARCHIVE_TABLE =
+            "CREATE TABLE weather_archive ("
+            + " date INTEGER PRIMARY KEY ON CONFLICT REPLACE,"
+            + " weather_id INTEGER NOT NULL,"
+            + " min REAL NOT NULL,"
+            + " max REAL NOT NULL,"
+            + " humidity REAL NOT NULL,"
+            + " pressure REAL NOT NULL,"
+            + " wind REAL NOT NULL,"
+            + " degrees REAL NOT NULL);";
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private final long mToday = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+    @Before
+    public void setUp() {
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DATABASE_NAME);
+    }
+
+    /**
+     * Version 1 allowed NULLs, which the current table doesn't. Rows with a NULL anywhere are
+     * left behind, and mustn't keep the others from making it across.
+     */
+    @Test
+    public void testUpgradeFromVersion1() throws Exception {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DATABASE_NAME, 0, null);
+        db.execSQL(SQL_CREATE_VERSION_1_WEATHER_TABLE);
+        db.setVersion(1);
+        insertDays(db);
+
+        /* A day after the ones we check for, once without each column */
+        String[] columns = {
+                WeatherEntry.COLUMN_DATE,
+                WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.COLUMN_HUMIDITY,
+                WeatherEntry.COLUMN_PRESSURE,
+                WeatherEntry.COLUMN_WIND_SPEED,
+                WeatherEntry.COLUMN_DEGREES,
+        };
+        for (String column : columns) {
+            ContentValues values = createCurrentValues(DAYS);
+            values.put(WeatherEntry.COLUMN_DATE, dayAt(DAYS));
+            values.putNull(column);
+            db.insert(WeatherEntry.TABLE_NAME, null, values);
+        }
+        db.close();
+
+        upgradeAndVerify(1);
+    }
+
+    /**
+     * Before version 3, nothing kept the dates unique. Where a day was written more than once,
+     * the last row written should be the one that makes it across.
+     */
+    @Test
+    public void testUpgradeFromVersion2() throws Exception {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DATABASE_NAME, 0, null);
+        db.execSQL(SQL_CREATE_VERSION_2_WEATHER_TABLE);
+        db.setVersion(2);
+
+        ContentValues stale = createCurrentValues(1);
+        stale.put(WeatherEntry.COLUMN_DATE, dayAt(0));
+        db.insert(WeatherEntry.TABLE_NAME, null, stale);
+        insertDays(db);
+        db.close();
+
+        upgradeAndVerify(2);
+    }
+
+    @Test
+    public void testUpgradeFromVersion3() throws Exception {
+        createVersion3Database();
+        upgradeAndVerify(3);
+    }
+
+    @Test
+    public void testUpgradeFromVersion4() throws Exception {
+        createVersion4Database();
+        upgradeAndVerify(4);
+    }
+
+    @Test
+    public void testUpgradeFromVersion5() throws Exception {
+        createVersion4Database();
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DATABASE_NAME, 0, null);
+        db.execSQL(SQL_CREATE_VERSION_5_ARCHIVE_TABLE);
+        db.setVersion(5);
+        db.close();
+
+        upgradeAndVerify(5);
+    }
+
+    @Test
+    public void testDowngradeRecreatesDatabase() throws Exception {
+        int currentVersion = getStaticIntegerField(WeatherDbHelper.class, "DATABASE_VERSION");
+
+        /* A schema we know nothing about, from a version we haven't written yet */
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DATABASE_NAME, 0, null);
+        db.execSQL("CREATE TABLE " + WeatherEntry.TABLE_NAME + " (future_column TEXT)");
+        db.setVersion(currentVersion + 1);
+        db.close();
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, TEST_DATABASE_NAME,
+                WeatherDbHelper.DEFAULT_WRITE_AHEAD_LOGGING,
+                WeatherDbHelper.DEFAULT_MAX_SQL_CACHE_SIZE);
+        db = helper.getWritableDatabase();
+
+        assertEquals("The database should be back at the current version",
+                currentVersion, db.getVersion());
+        assertEquals("The weather table should have the current schema",
+                WeatherEntry.COLUMN_LOCATION,
+                getFirstIndexedColumn(db, WeatherEntry.INDEX_FORECAST));
+        assertTrue("The archive is missing after a downgrade",
+                schemaObjectExists(db, "table", WeatherContract.ArchiveEntry.TABLE_NAME));
+
+        helper.close();
+    }
+
+    private void createVersion4Database() {
+        createVersion3Database();
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DATABASE_NAME, 0, null);
+        db.execSQL("CREATE INDEX " + WeatherEntry.INDEX_FORECAST
+                + " ON " + WeatherEntry.TABLE_NAME + " ("
+                + WeatherEntry.COLUMN_DATE + ", "
+                + WeatherEntry.COLUMN_MAX_TEMP + ", "
+                + WeatherEntry.COLUMN_MIN_TEMP + ", "
+                + WeatherEntry.COLUMN_WEATHER_ID + ")");
+        db.setVersion(4);
+        db.close();
+    }
+
+    private void createVersion3Database() {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(TEST_DATABASE_NAME, 0, null);
+        db.execSQL(SQL_CREATE_VERSION_3_WEATHER_TABLE);
+        db.setVersion(3);
+        insertDays(db);
+        db.close();
+    }
+
+    private void insertDays(SQLiteDatabase db) {
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues values = createCurrentValues(i);
+            values.put(WeatherEntry.COLUMN_DATE, dayAt(i));
+            db.insert(WeatherEntry.TABLE_NAME, null, values);
+        }
+    }
+
+    /**
+     * Opens the test database with WeatherDbHelper, which upgrades it, then checks that every
+     * day made it across with its values, as the forecast of the preferred location, and that
+     * the schema is the current one.
+     */
+    private void upgradeAndVerify(int fromVersion) throws Exception {
+        long start = System.nanoTime();
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext, TEST_DATABASE_NAME,
+                WeatherDbHelper.DEFAULT_WRITE_AHEAD_LOGGING,
+                WeatherDbHelper.DEFAULT_MAX_SQL_CACHE_SIZE);
+        SQLiteDatabase db = helper.getReadableDatabase();
+
+        /* The query behind the first screen of MainActivity, as WeatherProvider runs it */
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME,
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                WeatherEntry.COLUMN_LOCATION + " = ? AND "
+                        + WeatherEntry.getSqlSelectForTodayOnwards(),
+                new String[]{WeatherEntry.PRIMARY_LOCATION},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        int count = cursor.getCount();
+
+        long elapsed = System.nanoTime() - start;
+        Log.i(Benchmark.TAG, String.format(Locale.US,
+                "Upgrade from version %d: first forecast rows after %.3f ms",
+                fromVersion, elapsed / 1e6));
+
+        try {
+            assertEquals("Days lost upgrading from version " + fromVersion, DAYS, count);
+
+            int dateIndex = cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_DATE);
+            int maxIndex = cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_MAX_TEMP);
+            int minIndex = cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_MIN_TEMP);
+            int weatherIdIndex = cursor.getColumnIndexOrThrow(WeatherEntry.COLUMN_WEATHER_ID);
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ContentValues expected = createCurrentValues(i);
+                assertEquals("Wrong date for day " + i, dayAt(i), cursor.getLong(dateIndex));
+                assertEquals(expected.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                        cursor.getDouble(maxIndex));
+                assertEquals(expected.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                        cursor.getDouble(minIndex));
+                assertEquals((int) expected.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                        cursor.getInt(weatherIdIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals("The database should be at the current version",
+                getStaticIntegerField(WeatherDbHelper.class, "DATABASE_VERSION"),
+                (Integer) db.getVersion());
+        assertTrue("The covering index is missing after upgrading from version " + fromVersion,
+                schemaObjectExists(db, "index", WeatherEntry.INDEX_FORECAST));
+        assertEquals("The covering index should lead with the location after upgrading from "
+                        + "version " + fromVersion,
+                WeatherEntry.COLUMN_LOCATION,
+                getFirstIndexedColumn(db, WeatherEntry.INDEX_FORECAST));
+        assertTrue("The archive is missing after upgrading from version " + fromVersion,
+                schemaObjectExists(db, "table", WeatherContract.ArchiveEntry.TABLE_NAME));
+
+        helper.close();
+    }
+
+    private static ContentValues createCurrentValues(int day) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + day % 4);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, 10.5 + day);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 20.25 + day);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, 50.0);
+        values.put(WeatherEntry.COLUMN_PRESSURE, 1013.0);
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+        values.put(WeatherEntry.COLUMN_DEGREES, 180.0);
+        return values;
+    }
+
+    private long dayAt(int day) {
+        return mToday + day * SunshineDateUtils.DAY_IN_MILLIS;
+    }
+
+    private static String getFirstIndexedColumn(SQLiteDatabase db, String indexName) {
+        Cursor cursor = db.rawQuery("PRAGMA index_info(" + indexName + ")", null);
+        try {
+            int seqnoIndex = cursor.getColumnIndexOrThrow("seqno");
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                if (cursor.getInt(seqnoIndex) == 0) {
+                    return cursor.getString(nameIndex);
+                }
+            }
+            return null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static boolean schemaObjectExists(SQLiteDatabase db, String type, String name) {
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = ? AND name = ?",
+                new String[]{type, name});
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
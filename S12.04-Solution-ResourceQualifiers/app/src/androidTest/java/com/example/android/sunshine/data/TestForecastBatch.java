@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.sunshine.data.TestUtilities.BULK_INSERT_RECORDS_TO_INSERT;
+import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks that a {@link ForecastBatch} holds on to every value of a forecast, whether it is built
+ * day by day, from ContentValues, or handed over in a Bundle.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastBatch {
+
+    @Test
+    public void testContentValuesRoundTrip() {
+        ContentValues[] expectedValues = createBulkInsertTestWeatherValues();
+
+        ContentValues[] actualValues =
+                ForecastBatch.fromContentValues(expectedValues).toContentValues();
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, actualValues.length);
+        for (int i = 0; i < expectedValues.length; i++) {
+            assertSameDay("Day " + i, expectedValues[i], actualValues[i]);
+        }
+    }
+
+    @Test
+    public void testBatchGrows() {
+        ForecastBatch batch = new ForecastBatch(1);
+        for (int i = 0; i < 100; i++) {
+            batch.add(TestUtilities.DATE_NORMALIZED + i * SunshineDateUtils.DAY_IN_MILLIS,
+                    800 + i, i, i + 10, 50, 1000, 2.5, i);
+        }
+
+        assertEquals(100, batch.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(800 + i, batch.getWeatherId(i));
+            assertEquals(i + 10, batch.getMaxTemp(i), 0);
+        }
+        assertEquals(42, batch.indexOfDate(
+                TestUtilities.DATE_NORMALIZED + 42 * SunshineDateUtils.DAY_IN_MILLIS));
+        assertEquals(-1, batch.indexOfDate(TestUtilities.DATE_NORMALIZED - 1));
+    }
+
+    @Test
+    public void testBundleRoundTrip() {
+        ContentValues[] expectedValues = createBulkInsertTestWeatherValues();
+        Bundle bundle = ForecastBatch.fromContentValues(expectedValues).toBundle();
+
+        ContentValues[] actualValues = ForecastBatch.fromBundle(bundle).toContentValues();
+
+        assertEquals(expectedValues.length, actualValues.length);
+        for (int i = 0; i < expectedValues.length; i++) {
+            assertSameDay("Day " + i, expectedValues[i], actualValues[i]);
+        }
+    }
+
+    @Test
+    public void testCursorRoundTrip() {
+        ContentValues[] expectedValues = createBulkInsertTestWeatherValues();
+        MatrixCursor cursor = new MatrixCursor(ForecastBatch.PROJECTION);
+        for (ContentValues values : expectedValues) {
+            Object[] row = new Object[ForecastBatch.PROJECTION.length];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = values.get(ForecastBatch.PROJECTION[i]);
+            }
+            cursor.addRow(row);
+        }
+
+        ContentValues[] actualValues = ForecastBatch.fromCursor(cursor).toContentValues();
+        cursor.close();
+
+        assertEquals(expectedValues.length, actualValues.length);
+        for (int i = 0; i < expectedValues.length; i++) {
+            assertSameDay("Day " + i, expectedValues[i], actualValues[i]);
+        }
+    }
+
+    @Test
+    public void testIncompleteDayIsRejected() {
+        ContentValues[] values = createBulkInsertTestWeatherValues();
+        values[3].remove(WeatherContract.WeatherEntry.COLUMN_PRESSURE);
+
+        try {
+            ForecastBatch.fromContentValues(values);
+            fail("A day without a pressure should be rejected");
+        } catch (IllegalArgumentException expected) {
+            /* Just what we wanted */
+        }
+    }
+
+    /*
+     * The batch stores every value as the type of its column, so an integer humidity comes back
+     * as a double. Compare the values as numbers.
+     */
+    private static void assertSameDay(String message, ContentValues expected,
+                                      ContentValues actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (String column : expected.keySet()) {
+            assertEquals(message + ", " + column,
+                    expected.getAsDouble(column), actual.getAsDouble(column), 0);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that a {@link ForecastSnapshot} gives back exactly the forecast it was written with, and
+ * that a snapshot that can't be trusted is ignored rather than shown.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastSnapshot {
+
+    private static final String LOCATION = "Mountain View, CA";
+
+    private static final int DAYS = 14;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private final long mToday = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+    @Before
+    public void setUp() {
+        ForecastSnapshot.delete(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        ForecastSnapshot.delete(mContext);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ForecastBatch expected = createForecast(mToday);
+        assertTrue(ForecastSnapshot.write(mContext, LOCATION, expected));
+
+        ForecastBatch actual = ForecastSnapshot.read(mContext, LOCATION, mToday);
+
+        assertEquals(DAYS, actual.size());
+        for (int i = 0; i < DAYS; i++) {
+            assertEquals(expected.getDate(i), actual.getDate(i));
+            assertEquals(expected.getWeatherId(i), actual.getWeatherId(i));
+            assertEquals(expected.getMinTemp(i), actual.getMinTemp(i), 0);
+            assertEquals(expected.getMaxTemp(i), actual.getMaxTemp(i), 0);
+            assertEquals(expected.getHumidity(i), actual.getHumidity(i), 0);
+            assertEquals(expected.getPressure(i), actual.getPressure(i), 0);
+            assertEquals(expected.getWindSpeed(i), actual.getWindSpeed(i), 0);
+            assertEquals(expected.getDegrees(i), actual.getDegrees(i), 0);
+        }
+    }
+
+    @Test
+    public void testDaysThatHavePassedAreSkipped() {
+        long threeDaysAgo = mToday - 3 * SunshineDateUtils.DAY_IN_MILLIS;
+        ForecastSnapshot.write(mContext, LOCATION, createForecast(threeDaysAgo));
+
+        ForecastBatch forecast = ForecastSnapshot.read(mContext, LOCATION, mToday);
+
+        assertEquals(DAYS - 3, forecast.size());
+        assertEquals(mToday, forecast.getDate(0));
+        assertEquals(803, forecast.getWeatherId(0));
+    }
+
+    @Test
+    public void testOtherLocationIsIgnored() {
+        ForecastSnapshot.write(mContext, LOCATION, createForecast(mToday));
+
+        assertNull(ForecastSnapshot.read(mContext, "London, UK", mToday));
+    }
+
+    @Test
+    public void testMissingSnapshotIsIgnored() {
+        assertNull(ForecastSnapshot.read(mContext, LOCATION, mToday));
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsIgnored() throws Exception {
+        ForecastSnapshot.write(mContext, LOCATION, createForecast(mToday));
+
+        RandomAccessFile file = new RandomAccessFile(getFile(), "rw");
+        try {
+            file.setLength(file.length() - ForecastSnapshot.RECORD_SIZE / 2);
+        } finally {
+            file.close();
+        }
+
+        assertNull(ForecastSnapshot.read(mContext, LOCATION, mToday));
+    }
+
+    @Test
+    public void testOtherFileIsIgnored() throws Exception {
+        FileOutputStream out = new FileOutputStream(getFile());
+        try {
+            out.write("{\"cod\": \"200\"}".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        assertNull(ForecastSnapshot.read(mContext, LOCATION, mToday));
+    }
+
+    @Test
+    public void testWriteLeavesNoTemporaryFile() {
+        ForecastSnapshot.write(mContext, LOCATION, createForecast(mToday));
+
+        assertTrue(getFile().exists());
+        assertFalse(new File(getFile().getPath() + ".tmp").exists());
+    }
+
+    private File getFile() {
+        return new File(mContext.getCacheDir(), ForecastSnapshot.FILE_NAME);
+    }
+
+    /**
+     * Builds a forecast of DAYS days from the given date on, in which every value of every day
+     * is different.
+     */
+    private static ForecastBatch createForecast(long firstDate) {
+        ForecastBatch forecast = new ForecastBatch(DAYS);
+        for (int i = 0; i < DAYS; i++) {
+            forecast.add(firstDate + i * SunshineDateUtils.DAY_IN_MILLIS,
+                    800 + i, i - 5.5, i + 10.25, 40 + i, 1000 + i, 1.5 + i, 10 * i);
+        }
+        return forecast;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.utils.PollingCheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that the {@link PreferencesSnapshot} SunshinePreferences reads from is replaced when
+ * preferences change, both through the setters of SunshinePreferences and behind its back, as
+ * the SettingsFragment changes them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestPreferencesSnapshot {
+
+    private static final long LISTENER_TIMEOUT_MILLIS = 5000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private final SharedPreferences mPreferences =
+            PreferenceManager.getDefaultSharedPreferences(mContext);
+
+    /* The preferences before the test, restored afterwards */
+    private Map<String, ?> mSavedPreferences;
+
+    @Before
+    public void setUp() {
+        mSavedPreferences = mPreferences.getAll();
+        mPreferences.edit().clear().commit();
+        SunshinePreferences.reloadSnapshot(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        SharedPreferences.Editor editor = mPreferences.edit().clear();
+        for (Map.Entry<String, ?> entry : mSavedPreferences.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                editor.putString(entry.getKey(), (String) value);
+            } else if (value instanceof Long) {
+                editor.putLong(entry.getKey(), (Long) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(entry.getKey(), (Boolean) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(entry.getKey(), (Integer) value);
+            } else if (value instanceof Float) {
+                editor.putFloat(entry.getKey(), (Float) value);
+            }
+        }
+        editor.commit();
+        SunshinePreferences.reloadSnapshot(mContext);
+    }
+
+    @Test
+    public void testDefaults() {
+        PreferencesSnapshot snapshot = SunshinePreferences.getSnapshot(mContext);
+
+        assertEquals(mContext.getString(R.string.pref_location_default),
+                snapshot.getPreferredWeatherLocation());
+        assertTrue(snapshot.isMetric());
+        assertFalse(snapshot.isLocationLatLonAvailable());
+        assertEquals(mContext.getResources().getBoolean(R.bool.show_notifications_by_default),
+                snapshot.areNotificationsEnabled());
+        assertEquals(0, snapshot.getLastNotificationTimeInMillis());
+        assertEquals(Integer.parseInt(mContext.getString(R.string.pref_archive_retention_year)),
+                snapshot.getArchiveRetentionDays());
+        assertEquals(0, snapshot.getSavedLocations().size());
+    }
+
+    @Test
+    public void testSnapshotIsReusedUntilPreferencesChange() {
+        PreferencesSnapshot snapshot = SunshinePreferences.getSnapshot(mContext);
+        assertSame(snapshot, SunshinePreferences.getSnapshot(mContext));
+    }
+
+    @Test
+    public void testSettersReplaceSnapshotRightAway() {
+        SunshinePreferences.setLocationDetails(mContext, 37.4, -122.1);
+        assertTrue(SunshinePreferences.isLocationLatLonAvailable(mContext));
+        double[] coordinates = SunshinePreferences.getLocationCoordinates(mContext);
+        assertEquals(37.4, coordinates[0], 0);
+        assertEquals(-122.1, coordinates[1], 0);
+
+        SunshinePreferences.setSavedLocations(mContext, Arrays.asList("London", "Tokyo"));
+        assertEquals(Arrays.asList("London", "Tokyo"),
+                SunshinePreferences.getSavedLocations(mContext));
+
+        SunshinePreferences.saveLastNotificationTime(mContext, 1234);
+        assertEquals(1234, SunshinePreferences.getLastNotificationTimeInMillis(mContext));
+
+        SunshinePreferences.resetLocationCoordinates(mContext);
+        assertFalse(SunshinePreferences.isLocationLatLonAvailable(mContext));
+    }
+
+    @Test
+    public void testOutsideChangeReplacesSnapshot() throws Exception {
+        /* What the SettingsFragment does when the user picks imperial units */
+        mPreferences.edit().putString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_imperial)).commit();
+
+        /* The change listener runs on the main thread */
+        PollingCheck.check("The snapshot was never replaced", LISTENER_TIMEOUT_MILLIS,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return !SunshinePreferences.isMetric(mContext);
+                    }
+                });
+    }
+
+    @Test
+    public void testDisplayListenersOnlyHearOfUnitChanges() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        SunshinePreferences.OnDisplayPreferencesChangeListener listener =
+                new SunshinePreferences.OnDisplayPreferencesChangeListener() {
+                    @Override
+                    public void onDisplayPreferencesChanged() {
+                        calls.incrementAndGet();
+                    }
+                };
+        SunshinePreferences.registerOnDisplayPreferencesChangeListener(listener);
+        try {
+            mPreferences.edit().putString(mContext.getString(R.string.pref_units_key),
+                    mContext.getString(R.string.pref_units_imperial)).commit();
+            SunshinePreferences.reloadSnapshot(mContext);
+
+            /* The listeners are called on the main thread */
+            PollingCheck.check("The display listener was never called", LISTENER_TIMEOUT_MILLIS,
+                    new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws Exception {
+                            return calls.get() == 1;
+                        }
+                    });
+
+            /* Nothing on screen depends on notifications, so the listener isn't called again */
+            mPreferences.edit().putBoolean(
+                    mContext.getString(R.string.pref_enable_notifications_key), false).commit();
+            SunshinePreferences.reloadSnapshot(mContext);
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+            assertEquals(1, calls.get());
+        } finally {
+            SunshinePreferences.unregisterOnDisplayPreferencesChangeListener(listener);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.DetailActivity;
+import com.example.android.sunshine.MainActivity;
+import com.example.android.sunshine.data.WeatherContract.ArchiveEntry;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.NotificationUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on every statement WeatherProvider runs against the weather table, and
+ * fails if SQLite would answer any of them by scanning the whole table instead of using an index.
+ * <p>
+ * Each test builds its statement from the same projections and selections the app uses, so a
+ * change to a projection (or to the schema) that takes a query off its index shows up here. When
+ * you add a query to WeatherProvider, add a test for it here as well.
+ * <p>
+ * WeatherProvider scopes every statement on the weather table to one location, so the tests do
+ * too (see {@link #scoped(String)}); the location is always the first argument.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestQueryPlans {
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private final String mToday = Long.toString(
+            SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+
+    private static final String LOCATION = WeatherEntry.PRIMARY_LOCATION;
+
+    private WeatherDbHelper mDbHelper;
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mDbHelper = new WeatherDbHelper(mContext);
+        mDatabase = mDbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    /**
+     * The forecast list in MainActivity should be answered from the covering index alone, and
+     * already be in date order.
+     */
+    @Test
+    public void testForecastListQueryUsesCoveringIndex() {
+        List<String> plan = assertNoTableScan(buildQuery(
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                scoped(WeatherEntry.getSqlSelectForTodayOnwards()),
+                WeatherEntry.COLUMN_DATE + " ASC"),
+                LOCATION);
+
+        assertPlanContains(plan, "COVERING INDEX " + WeatherEntry.INDEX_FORECAST);
+        assertPlanDoesNotContain(plan, "TEMP B-TREE");
+    }
+
+    /** The query DetailActivity runs through WeatherEntry.buildWeatherUriWithDate */
+    @Test
+    public void testDetailQueryUsesIndex() {
+        assertNoTableScan(buildQuery(
+                DetailActivity.WEATHER_DETAIL_PROJECTION,
+                scoped(WeatherEntry.COLUMN_DATE + " = ? "),
+                null),
+                LOCATION, mToday);
+    }
+
+    /** The query NotificationUtils runs through WeatherEntry.buildWeatherUriWithDate */
+    @Test
+    public void testNotificationQueryUsesIndex() {
+        assertNoTableScan(buildQuery(
+                NotificationUtils.WEATHER_NOTIFICATION_PROJECTION,
+                scoped(WeatherEntry.COLUMN_DATE + " = ? "),
+                null),
+                LOCATION, mToday);
+    }
+
+    /** The query SunshineSyncUtils runs to find out whether we have any weather at all */
+    @Test
+    public void testSyncEmptyCheckQueryUsesCoveringIndex() {
+        List<String> plan = assertNoTableScan(buildQuery(
+                new String[]{WeatherEntry._ID},
+                scoped(WeatherEntry.getSqlSelectForTodayOnwards()),
+                null),
+                LOCATION);
+
+        assertPlanContains(plan, "COVERING INDEX");
+    }
+
+    /** The statements WeatherProvider#mergeWeather runs */
+    @Test
+    public void testMergeStatementsUseIndex() {
+        assertNoTableScan("DELETE FROM " + WeatherEntry.TABLE_NAME
+                + " WHERE " + scoped(WeatherEntry.COLUMN_DATE + " < ?"), LOCATION, mToday);
+
+        assertNoTableScan(buildQuery(
+                null,
+                scoped(WeatherEntry.COLUMN_DATE + " >= ?"),
+                null),
+                LOCATION, mToday);
+
+        assertNoTableScan("UPDATE " + WeatherEntry.TABLE_NAME
+                + " SET " + WeatherEntry.COLUMN_MAX_TEMP + " = ?"
+                + " WHERE " + scoped(WeatherEntry.COLUMN_DATE + " = ?"), "0", LOCATION, mToday);
+
+        /* The SELECT half of the statement that moves the past days into the archive */
+        assertNoTableScan(buildQuery(
+                null,
+                WeatherEntry.COLUMN_LOCATION + " = ? AND " + WeatherEntry.COLUMN_DATE + " < ?",
+                null),
+                LOCATION, mToday);
+    }
+
+    /**
+     * The forecast of a saved location is read through the same statements as the preferred
+     * location's, and should stay on the same index however many locations there are.
+     */
+    @Test
+    public void testSavedLocationQueryUsesCoveringIndex() {
+        List<String> plan = assertNoTableScan(buildQuery(
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                scoped(WeatherEntry.getSqlSelectForTodayOnwards()),
+                WeatherEntry.COLUMN_DATE + " ASC"),
+                "Berlin");
+
+        assertPlanContains(plan, "COVERING INDEX " + WeatherEntry.INDEX_FORECAST);
+        assertPlanDoesNotContain(plan, "TEMP B-TREE");
+    }
+
+    /**
+     * Reading a range of the archive, such as a year for a trend view, and deleting the days
+     * beyond its age limit should both be a search on the date order the archive is stored in.
+     */
+    @Test
+    public void testArchiveStatementsUseDateOrder() {
+        String yearAgo = Long.toString(SunshineDateUtils.normalizeDate(System.currentTimeMillis())
+                - 365 * SunshineDateUtils.DAY_IN_MILLIS);
+
+        List<String> plan = assertNoTableScan(SQLiteQueryBuilder.buildQueryString(false,
+                ArchiveEntry.TABLE_NAME,
+                null,
+                WeatherEntry.COLUMN_DATE + " >= ? AND " + WeatherEntry.COLUMN_DATE + " < ?",
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC",
+                null),
+                yearAgo, mToday);
+        assertPlanContains(plan, "INTEGER PRIMARY KEY");
+        assertPlanDoesNotContain(plan, "TEMP B-TREE");
+
+        plan = assertNoTableScan("DELETE FROM " + ArchiveEntry.TABLE_NAME
+                + " WHERE " + ArchiveEntry.getSqlSelectOlderThan(0));
+        assertPlanContains(plan, "INTEGER PRIMARY KEY");
+    }
+
+    /**
+     * @param selection A selection on the weather table
+     * @return The selection, scoped to one location the way WeatherProvider does it
+     */
+    private static String scoped(String selection) {
+        return WeatherEntry.COLUMN_LOCATION + " = ? AND (" + selection + ")";
+    }
+
+    private static String buildQuery(String[] projection, String selection, String sortOrder) {
+        return SQLiteQueryBuilder.buildQueryString(false, WeatherEntry.TABLE_NAME, projection,
+                selection, null, null, sortOrder, null);
+    }
+
+    /**
+     * Asks SQLite how it would run a statement, and fails if any step of the plan scans the
+     * weather table itself. Scanning an index is fine; that's only ever a range of it.
+     *
+     * @param sql  The statement
+     * @param args The arguments for the statement's placeholders
+     * @return The details of each step of the plan, to check further
+     */
+    private List<String> assertNoTableScan(String sql, String... args) {
+        List<String> plan = explainQueryPlan(sql, args);
+        assertFalse("No query plan for " + sql, plan.isEmpty());
+
+        for (String step : plan) {
+            if (step.startsWith("SCAN") && !step.contains("INDEX")) {
+                fail("Full table scan (" + step + ") in the plan for: " + sql
+                        + "\nPlan: " + plan);
+            }
+        }
+        return plan;
+    }
+
+    private List<String> explainQueryPlan(String sql, String[] args) {
+        List<String> plan = new ArrayList<>();
+        Cursor cursor = mDatabase.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detailIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan;
+    }
+
+    private static void assertPlanContains(List<String> plan, String expected) {
+        for (String step : plan) {
+            if (step.contains(expected)) return;
+        }
+        fail("Expected \"" + expected + "\" in the plan: " + plan);
+    }
+
+    private static void assertPlanDoesNotContain(List<String> plan, String unexpected) {
+        for (String step : plan) {
+            assertTrue("Unexpected \"" + unexpected + "\" in the plan: " + plan,
+                    !step.contains(unexpected));
+        }
+    }
+}
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.provider.BaseColumns;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
@@ -32,6 +33,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 
 import static com.example.android.sunshine.data.TestUtilities.getConstantNameByStringValue;
@@ -193,7 +195,7 @@ public class TestSunshineDatabase {
 
     @Test
     public void testDatabaseVersionWasIncremented() {
-        int expectedDatabaseVersion = 3;
+        int expectedDatabaseVersion = 6;
         String databaseVersionShouldBe1 = "Database version should be "
                 + expectedDatabaseVersion + " but isn't."
                 + "\n Database version: ";
@@ -456,6 +458,7 @@ public class TestSunshineDatabase {
 
         /* Here, we add the name of our only table in this particular database */
         tableNameHashSet.add(REFLECTED_TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.ArchiveEntry.TABLE_NAME);
         /* Students, here is where you would add any other table names if you had them */
 //        tableNameHashSet.add(MyAwesomeSuperCoolTableName);
 //        tableNameHashSet.add(MyOtherCoolTableNameThatContainsOtherCoolData);
@@ -500,6 +503,25 @@ public class TestSunshineDatabase {
         tableNameCursor.close();
     }
 
+    /**
+     * This method tests that the database uses write-ahead logging where the platform supports
+     * it, so that the UI can keep reading while a sync writes. See WeatherDbHelper.
+     */
+    @Test
+    public void testWriteAheadLoggingIsEnabled() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) return;
+
+        Cursor journalModeCursor = database.rawQuery("PRAGMA journal_mode", null);
+        assertTrue(journalModeCursor.moveToFirst());
+
+        String journalModeShouldBeWal = "Error: The database should use write-ahead logging";
+        assertEquals(journalModeShouldBeWal,
+                "wal",
+                journalModeCursor.getString(0).toLowerCase(Locale.US));
+
+        journalModeCursor.close();
+    }
+
     /**
      * This method tests inserting a single record into an empty table from a brand new database.
      * It will fail for the following reasons:
@@ -37,6 +37,14 @@ public class TestUriMatcher {
     private static final Uri TEST_WEATHER_DIR = WeatherContract.WeatherEntry.CONTENT_URI;
     private static final Uri TEST_WEATHER_WITH_DATE_DIR = WeatherContract.WeatherEntry
             .buildWeatherUriWithDate(TestUtilities.DATE_NORMALIZED);
+    private static final Uri TEST_ARCHIVE_DIR = WeatherContract.ArchiveEntry.CONTENT_URI;
+
+    /* A saved location with characters that have to be escaped in a URI */
+    private static final String TEST_LOCATION = "Mountain View, CA/94043";
+    private static final Uri TEST_LOCATION_DIR =
+            WeatherContract.WeatherEntry.buildLocationUri(TEST_LOCATION);
+    private static final Uri TEST_LOCATION_WITH_DATE_DIR = WeatherContract.WeatherEntry
+            .buildLocationUriWithDate(TEST_LOCATION, TestUtilities.DATE_NORMALIZED);
 
     private static final String weatherCodeVariableName = "CODE_WEATHER";
     private static int REFLECTED_WEATHER_CODE;
@@ -44,6 +52,15 @@ public class TestUriMatcher {
     private static final String weatherCodeWithDateVariableName = "CODE_WEATHER_WITH_DATE";
     private static int REFLECTED_WEATHER_WITH_DATE_CODE;
 
+    private static final String archiveCodeVariableName = "CODE_ARCHIVE";
+    private static int REFLECTED_ARCHIVE_CODE;
+
+    private static final String locationCodeVariableName = "CODE_LOCATION";
+    private static int REFLECTED_LOCATION_CODE;
+
+    private static final String locationCodeWithDateVariableName = "CODE_LOCATION_WITH_DATE";
+    private static int REFLECTED_LOCATION_WITH_DATE_CODE;
+
     private UriMatcher testMatcher;
 
     @Before
@@ -61,6 +78,18 @@ public class TestUriMatcher {
                     WeatherProvider.class,
                     weatherCodeWithDateVariableName);
 
+            REFLECTED_ARCHIVE_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    archiveCodeVariableName);
+
+            REFLECTED_LOCATION_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    locationCodeVariableName);
+
+            REFLECTED_LOCATION_WITH_DATE_CODE = getStaticIntegerField(
+                    WeatherProvider.class,
+                    locationCodeWithDateVariableName);
+
         } catch (NoSuchFieldException e) {
             fail(studentReadableNoSuchField(e));
         } catch (IllegalAccessException e) {
@@ -101,5 +130,40 @@ public class TestUriMatcher {
         assertEquals(weatherWithDateUriCodeDoesNotMatch,
                 expectedWeatherWithDateCode,
                 actualWeatherWithDateCode);
+
+        /* Test that the code returned from our matcher matches the expected archive code */
+        String archiveUriDoesNotMatch = "Error: The CODE_ARCHIVE URI was matched incorrectly.";
+        int actualArchiveCode = testMatcher.match(TEST_ARCHIVE_DIR);
+        assertEquals(archiveUriDoesNotMatch,
+                REFLECTED_ARCHIVE_CODE,
+                actualArchiveCode);
+
+        /* Test that the URIs of a saved location match the location codes */
+        String locationUriDoesNotMatch = "Error: The CODE_LOCATION URI was matched incorrectly.";
+        assertEquals(locationUriDoesNotMatch,
+                REFLECTED_LOCATION_CODE,
+                testMatcher.match(TEST_LOCATION_DIR));
+
+        String locationWithDateUriDoesNotMatch =
+                "Error: The CODE_LOCATION_WITH_DATE URI was matched incorrectly.";
+        assertEquals(locationWithDateUriDoesNotMatch,
+                REFLECTED_LOCATION_WITH_DATE_CODE,
+                testMatcher.match(TEST_LOCATION_WITH_DATE_DIR));
+    }
+
+    /**
+     * Tests that the location can be read back from the URIs of a saved location, however many
+     * characters it has that need escaping.
+     */
+    @Test
+    public void testLocationFromUri() {
+        assertEquals("Error: The location of a CODE_LOCATION URI was read back incorrectly.",
+                TEST_LOCATION,
+                WeatherContract.WeatherEntry.getLocationFromUri(TEST_LOCATION_DIR));
+
+        assertEquals("Error: The location of a CODE_LOCATION_WITH_DATE URI was read back "
+                        + "incorrectly.",
+                TEST_LOCATION,
+                WeatherContract.WeatherEntry.getLocationFromUri(TEST_LOCATION_WITH_DATE_DIR));
     }
 }
@@ -19,22 +19,38 @@ import android.content.ComponentName;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.sync.SunshineSyncTask;
+import com.example.android.sunshine.utilities.HttpCache;
+import com.example.android.sunshine.utilities.NetworkUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.net.URL;
+
 import static com.example.android.sunshine.data.TestUtilities.BULK_INSERT_RECORDS_TO_INSERT;
 import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
+import static com.example.android.sunshine.data.WeatherContract.WeatherEntry.COLUMN_DATE;
+import static com.example.android.sunshine.data.WeatherContract.WeatherEntry.COLUMN_MAX_TEMP;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
@@ -81,6 +97,12 @@ public class TestWeatherProvider {
         deleteAllRecordsFromWeatherTable();
     }
 
+    /* Some tests change how much weather history is kept; put it back to the default */
+    @After
+    public void tearDown() {
+        setArchiveRetention(null);
+    }
+
     /**
      * This test checks to make sure that the content provider is registered correctly in the
      * AndroidManifest file. If it fails, you should check the AndroidManifest to see if you've
@@ -423,6 +445,592 @@ public class TestWeatherProvider {
         shouldBeEmptyCursor.close();
     }
 
+    /**
+     * This test inserts a {@link ForecastBatch} and checks that it ends up in the database
+     * exactly like the same days inserted as ContentValues would, and that observers are notified.
+     */
+    @Test
+    public void testBulkInsertForecastBatch() {
+        ContentValues[] expectedValues = createBulkInsertTestWeatherValues();
+
+        ForecastBatch batch = ForecastBatch.fromContentValues(expectedValues);
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        int insertCount = batch.bulkInsert(contentResolver);
+
+        weatherObserver.waitForNotificationOrFail();
+        contentResolver.unregisterContentObserver(weatherObserver);
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                COLUMN_DATE + " ASC");
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testBulkInsertForecastBatch. Error validating WeatherEntry " + i,
+                    cursor,
+                    expectedValues[i]);
+        }
+        cursor.close();
+    }
+
+    /**
+     * This test merges a forecast into the weather we already have. It checks that days which
+     * changed are updated, new days are inserted, days that have passed are deleted, days the
+     * server didn't send are kept, and that observers are notified exactly once.
+     */
+    @Test
+    public void testMergeUpdatesOnlyChangedDays() throws Exception {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        long day = SunshineDateUtils.DAY_IN_MILLIS;
+
+        /* Yesterday through three days from now */
+        ContentValues[] stored = createMergeTestWeatherValues(today - day, 5);
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, stored);
+
+        /* Today through four days from now, with a new high for tomorrow */
+        ContentValues[] merged = createMergeTestWeatherValues(today, 5);
+        merged[1].put(COLUMN_MAX_TEMP, 99.5);
+        /* The server doesn't send the day after tomorrow this time */
+        ContentValues[] fetched = {merged[0], merged[1], merged[3], merged[4]};
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        int changedCount = contentResolver.bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_MERGE_URI, fetched);
+
+        weatherObserver.waitForNotificationOrFail();
+        contentResolver.unregisterContentObserver(weatherObserver);
+
+        /* Tomorrow was updated and four days from now was inserted; nothing else was written */
+        assertEquals("Merge should only write the days that changed", 2, changedCount);
+        assertEquals("Merge should notify observers exactly once",
+                1, weatherObserver.mChangeCount);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                COLUMN_DATE + " ASC");
+
+        /* Yesterday is gone; today through four days from now remain */
+        assertEquals(5, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < 5; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testMergeUpdatesOnlyChangedDays. Error validating day " + i,
+                    cursor,
+                    merged[i]);
+        }
+        cursor.close();
+    }
+
+    /**
+     * Merging a forecast identical to the one we already have should write nothing and shouldn't
+     * make anyone requery.
+     */
+    @Test
+    public void testMergeWithoutChangesDoesNotNotify() throws Exception {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ContentValues[] values = createMergeTestWeatherValues(today, 14);
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_MERGE_URI, values);
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        int changedCount = contentResolver.bulkInsert(
+                WeatherContract.WeatherEntry.CONTENT_MERGE_URI,
+                createMergeTestWeatherValues(today, 14));
+
+        /* Give a notification, if one was (wrongly) sent, time to arrive */
+        Thread.sleep(500);
+        contentResolver.unregisterContentObserver(weatherObserver);
+        weatherObserver.mHT.quit();
+
+        assertEquals("Nothing changed, so nothing should have been written", 0, changedCount);
+        assertFalse("Nothing changed, so observers shouldn't have been notified",
+                weatherObserver.mContentChanged);
+    }
+
+    /**
+     * Merging a {@link ForecastBatch} should write exactly what merging the same days as
+     * ContentValues does: only the days that changed, into the right location.
+     */
+    @Test
+    public void testMergeForecastBatch() {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ContentResolver contentResolver = mContext.getContentResolver();
+
+        ForecastBatch batch = ForecastBatch.fromContentValues(
+                createMergeTestWeatherValues(today, 14));
+        assertEquals("Every day should be new", 14,
+                batch.merge(contentResolver, WeatherContract.WeatherEntry.PRIMARY_LOCATION));
+        assertEquals("Nothing changed, so nothing should have been written", 0,
+                batch.merge(contentResolver, WeatherContract.WeatherEntry.PRIMARY_LOCATION));
+
+        /* A new high for tomorrow */
+        ContentValues[] changed = createMergeTestWeatherValues(today, 14);
+        changed[1].put(COLUMN_MAX_TEMP, 99.5);
+        assertEquals("Only tomorrow should have been written", 1,
+                ForecastBatch.fromContentValues(changed).merge(contentResolver,
+                        WeatherContract.WeatherEntry.PRIMARY_LOCATION));
+
+        TestUtilities.validateThenCloseCursor("testMergeForecastBatch. Error validating tomorrow",
+                contentResolver.query(WeatherContract.WeatherEntry.buildWeatherUriWithDate(
+                        today + SunshineDateUtils.DAY_IN_MILLIS), null, null, null, null),
+                changed[1]);
+
+        /* The same days for a saved location are stored apart from the preferred location's */
+        assertEquals("Every day of the saved location should be new", 14,
+                batch.merge(contentResolver, "Berlin, DE"));
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.buildLocationUri("Berlin, DE"),
+                null, null, null, null);
+        assertEquals(14, cursor.getCount());
+        cursor.close();
+    }
+
+    /**
+     * With weather history turned on, merging a forecast should move the days that have passed
+     * into the archive, rather than delete them, and tell the archive's observers.
+     */
+    @Test
+    public void testMergeMovesPastDaysIntoArchive() throws Exception {
+        setArchiveRetention(mContext.getString(R.string.pref_archive_retention_year));
+
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        long day = SunshineDateUtils.DAY_IN_MILLIS;
+
+        /* Two days ago through two days from now */
+        ContentValues[] stored = createMergeTestWeatherValues(today - 2 * day, 5);
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, stored);
+
+        TestUtilities.TestContentObserver archiveObserver = TestUtilities.getTestContentObserver();
+        contentResolver.registerContentObserver(
+                WeatherContract.ArchiveEntry.CONTENT_URI, true, archiveObserver);
+
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_MERGE_URI,
+                createMergeTestWeatherValues(today, 3));
+
+        archiveObserver.waitForNotificationOrFail();
+        contentResolver.unregisterContentObserver(archiveObserver);
+
+        Cursor archived = contentResolver.query(
+                WeatherContract.ArchiveEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                COLUMN_DATE + " ASC");
+
+        assertEquals("The two days that have passed should be archived", 2, archived.getCount());
+        archived.moveToFirst();
+        for (int i = 0; i < 2; i++, archived.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testMergeMovesPastDaysIntoArchive. Error validating archived day " + i,
+                    archived,
+                    stored[i]);
+        }
+        archived.close();
+
+        Cursor current = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " < " + today,
+                null,
+                null);
+        assertEquals("Archived days should be gone from the weather table", 0, current.getCount());
+        current.close();
+    }
+
+    /**
+     * With weather history turned off, days that have passed are simply deleted.
+     */
+    @Test
+    public void testMergeWithoutArchiveDeletesPastDays() {
+        setArchiveRetention(mContext.getString(R.string.pref_archive_retention_off));
+
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                createMergeTestWeatherValues(today - 2 * SunshineDateUtils.DAY_IN_MILLIS, 5));
+
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_MERGE_URI,
+                createMergeTestWeatherValues(today, 3));
+
+        Cursor archived = contentResolver.query(
+                WeatherContract.ArchiveEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Nothing should be archived with history turned off",
+                0, archived.getCount());
+        archived.close();
+    }
+
+    /**
+     * When the server answers 304 Not Modified, the sync merges an empty forecast, which should
+     * still delete the days that have passed and leave the rest alone.
+     */
+    @Test
+    public void testMergeOfEmptyForecastDeletesPastDays() {
+        setArchiveRetention(mContext.getString(R.string.pref_archive_retention_off));
+
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                createMergeTestWeatherValues(today - 2 * SunshineDateUtils.DAY_IN_MILLIS, 5));
+
+        int changedCount = new ForecastBatch(0).merge(contentResolver,
+                WeatherContract.WeatherEntry.PRIMARY_LOCATION);
+        assertEquals("An empty forecast shouldn't write anything", 0, changedCount);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Only today and the days after it should be left", 3, cursor.getCount());
+        cursor.close();
+    }
+
+    /**
+     * Compacting the archive should delete the days older than the retention the user chose, and
+     * the oldest days beyond a size limit.
+     */
+    @Test
+    public void testCompactArchive() {
+        setArchiveRetention(mContext.getString(R.string.pref_archive_retention_month));
+
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        long day = SunshineDateUtils.DAY_IN_MILLIS;
+
+        /* The 100 days before today */
+        ContentResolver contentResolver = mContext.getContentResolver();
+        int inserted = contentResolver.bulkInsert(WeatherContract.ArchiveEntry.CONTENT_URI,
+                createMergeTestWeatherValues(today - 100 * day, 100));
+        assertEquals(100, inserted);
+
+        /* Retention is 30 days, so the 70 days before that go */
+        int deleted = SunshineSyncTask.compactArchive(mContext);
+        assertEquals("Days older than the retention should be deleted", 70, deleted);
+
+        /* Keep only the newest 10 days */
+        deleted = contentResolver.delete(WeatherContract.ArchiveEntry.CONTENT_URI,
+                WeatherContract.ArchiveEntry.getSqlSelectBeyondNewest(10),
+                null);
+        assertEquals("All but the newest 10 days should be deleted", 20, deleted);
+
+        Cursor archived = contentResolver.query(
+                WeatherContract.ArchiveEntry.CONTENT_URI,
+                new String[]{COLUMN_DATE},
+                null,
+                null,
+                COLUMN_DATE + " ASC");
+        assertEquals(10, archived.getCount());
+        archived.moveToFirst();
+        assertEquals("The oldest day left should be 10 days ago",
+                today - 10 * day, archived.getLong(0));
+        archived.close();
+
+        /* Turning history off empties the archive */
+        setArchiveRetention(mContext.getString(R.string.pref_archive_retention_off));
+        assertEquals(10, SunshineSyncTask.compactArchive(mContext));
+    }
+
+    /**
+     * The forecast of a saved location lives next to the preferred location's: each is read,
+     * merged and deleted through its own URI without touching the other, and writing a saved
+     * location doesn't make the forecast list requery.
+     */
+    @Test
+    public void testLocationsAreStoredSeparately() throws Exception {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        String location = "Berlin, DE";
+
+        ContentValues[] primary = createMergeTestWeatherValues(today, 14);
+        ContentValues[] saved = createMergeTestWeatherValues(today, 14);
+        for (ContentValues value : saved) {
+            value.put(COLUMN_MAX_TEMP, value.getAsDouble(COLUMN_MAX_TEMP) + 10);
+        }
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_MERGE_URI, primary);
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        int changedCount = contentResolver.bulkInsert(
+                WeatherContract.WeatherEntry.buildLocationMergeUri(location), saved);
+        assertEquals("Every day of the saved location should be new", 14, changedCount);
+
+        /* Give a notification, if one was (wrongly) sent, time to arrive */
+        Thread.sleep(500);
+        contentResolver.unregisterContentObserver(weatherObserver);
+        weatherObserver.mHT.quit();
+        assertFalse("Writing a saved location shouldn't notify the preferred location's observers",
+                weatherObserver.mContentChanged);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, COLUMN_DATE + " ASC");
+        assertEquals(14, cursor.getCount());
+        cursor.moveToFirst();
+        TestUtilities.validateCurrentRecord("testLocationsAreStoredSeparately. Error validating "
+                + "the preferred location", cursor, primary[0]);
+        cursor.close();
+
+        cursor = contentResolver.query(WeatherContract.WeatherEntry.buildLocationUri(location),
+                null, null, null, COLUMN_DATE + " ASC");
+        assertEquals(14, cursor.getCount());
+        cursor.moveToFirst();
+        TestUtilities.validateCurrentRecord("testLocationsAreStoredSeparately. Error validating "
+                + "the saved location", cursor, saved[0]);
+        cursor.close();
+
+        cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.buildLocationUriWithDate(location, today),
+                null, null, null, null);
+        TestUtilities.validateThenCloseCursor("testLocationsAreStoredSeparately. Error validating "
+                + "a day of the saved location", cursor, saved[0]);
+
+        int deleted = contentResolver.delete(
+                WeatherContract.WeatherEntry.buildLocationUri(location), null, null);
+        assertEquals("Only the saved location's days should be deleted", 14, deleted);
+
+        cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("The preferred location should be untouched", 14, cursor.getCount());
+        cursor.close();
+    }
+
+    /**
+     * A bulk insert through a location's URI should only ever write that location's rows, even
+     * if the values name another location.
+     */
+    @Test
+    public void testBulkInsertIgnoresLocationInValues() {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ContentValues[] values = createMergeTestWeatherValues(today, 3);
+        for (ContentValues value : values) {
+            value.put(WeatherContract.WeatherEntry.COLUMN_LOCATION, "Elsewhere, XX");
+        }
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(
+                WeatherContract.WeatherEntry.buildLocationUri("Berlin, DE"), values);
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.buildLocationUri("Berlin, DE"),
+                null, null, null, null);
+        assertEquals("The rows should belong to the URI's location", 3, cursor.getCount());
+        cursor.close();
+
+        cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.buildLocationUri("Elsewhere, XX"),
+                null, null, null, null);
+        assertEquals("No rows should be written for another location", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /**
+     * Removing a saved location should delete its forecast, and only its forecast, along with
+     * the validators of its last response.
+     */
+    @Test
+    public void testRemovingSavedLocationDeletesItsForecast() {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        String location = "Test Location, XX";
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                createMergeTestWeatherValues(today, 3));
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.buildLocationUri(location),
+                createMergeTestWeatherValues(today, 3));
+
+        URL url = NetworkUtils.getUrlForLocation(location);
+        HttpCache httpCache = HttpCache.getInstance(mContext);
+        httpCache.put(location, url, new HttpCache.Entry("\"forecast-1\"", null));
+
+        SunshinePreferences.addSavedLocation(mContext, location);
+        SunshinePreferences.removeSavedLocation(mContext, location);
+
+        assertFalse(SunshinePreferences.getSavedLocations(mContext).contains(location));
+        assertNull("Adding the location back should download its forecast again",
+                httpCache.get(location, url));
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.buildLocationUri(location), null, null, null, null);
+        assertEquals("The removed location's forecast should be gone", 0, cursor.getCount());
+        cursor.close();
+
+        cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("The preferred location should be untouched", 3, cursor.getCount());
+        cursor.close();
+    }
+
+    /**
+     * Only the preferred location has weather history; when a saved location is merged, its days
+     * that have passed are simply deleted.
+     */
+    @Test
+    public void testMergeOfSavedLocationDoesNotArchive() {
+        setArchiveRetention(mContext.getString(R.string.pref_archive_retention_year));
+
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        Uri locationUri = WeatherContract.WeatherEntry.buildLocationUri("Berlin, DE");
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(locationUri,
+                createMergeTestWeatherValues(today - 2 * SunshineDateUtils.DAY_IN_MILLIS, 5));
+
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.buildLocationMergeUri("Berlin, DE"),
+                createMergeTestWeatherValues(today, 3));
+
+        Cursor archived = contentResolver.query(
+                WeatherContract.ArchiveEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("A saved location shouldn't be archived", 0, archived.getCount());
+        archived.close();
+
+        Cursor current = contentResolver.query(locationUri, null, null, null, null);
+        assertEquals("The days that have passed should be gone", 3, current.getCount());
+        current.close();
+    }
+
+    /**
+     * Asking the same question twice, as a CursorLoader does after a rotation, should be
+     * answered from memory the second time, with the same result. Once the forecast changes,
+     * the next query should go to the database again and see the change.
+     */
+    @Test
+    public void testRepeatedQueryIsAnsweredFromCache() {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ContentValues[] values = createMergeTestWeatherValues(today, 14);
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_MERGE_URI, values);
+
+        Uri detailUri = WeatherContract.WeatherEntry.buildWeatherUriWithDate(today);
+        Bundle before = getQueryCacheStats();
+
+        TestUtilities.validateThenCloseCursor("testRepeatedQueryIsAnsweredFromCache. First query",
+                contentResolver.query(detailUri, null, null, null, null), values[0]);
+        TestUtilities.validateThenCloseCursor("testRepeatedQueryIsAnsweredFromCache. Second query",
+                contentResolver.query(detailUri, null, null, null, null), values[0]);
+
+        Bundle after = getQueryCacheStats();
+        assertEquals("Only the first query should go to the database",
+                1, getStatDelta(before, after, WeatherContract.EXTRA_CACHE_MISSES));
+        assertEquals("The second query should be answered from the cache",
+                1, getStatDelta(before, after, WeatherContract.EXTRA_CACHE_HITS));
+
+        /* A new high for today; the cached result must not survive that */
+        ContentValues[] changed = createMergeTestWeatherValues(today, 14);
+        changed[0].put(COLUMN_MAX_TEMP, 99.5);
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_MERGE_URI, changed);
+
+        TestUtilities.validateThenCloseCursor("testRepeatedQueryIsAnsweredFromCache. Query after "
+                + "the forecast changed",
+                contentResolver.query(detailUri, null, null, null, null), changed[0]);
+
+        Bundle afterChange = getQueryCacheStats();
+        assertEquals("The query after the change should go to the database",
+                1, getStatDelta(after, afterChange, WeatherContract.EXTRA_CACHE_MISSES));
+    }
+
+    /**
+     * A change to one location's forecast should only drop the cached results of that location.
+     */
+    @Test
+    public void testCacheInvalidationIsScopedToLocation() {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_MERGE_URI,
+                createMergeTestWeatherValues(today, 14));
+
+        /* Cache the preferred location's forecast */
+        contentResolver.query(WeatherContract.WeatherEntry.CONTENT_URI,
+                null, null, null, null).close();
+
+        assertEquals(14, contentResolver.bulkInsert(
+                WeatherContract.WeatherEntry.buildLocationMergeUri("Berlin, DE"),
+                createMergeTestWeatherValues(today, 14)));
+
+        Bundle before = getQueryCacheStats();
+        Cursor cursor = contentResolver.query(WeatherContract.WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(14, cursor.getCount());
+        cursor.close();
+
+        assertEquals("Writing another location shouldn't drop the preferred location's results",
+                1, getStatDelta(before, getQueryCacheStats(), WeatherContract.EXTRA_CACHE_HITS));
+    }
+
+    private Bundle getQueryCacheStats() {
+        Bundle stats = mContext.getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_GET_QUERY_CACHE_STATS, null, null);
+        assertNotNull("The provider should report its query cache statistics", stats);
+        return stats;
+    }
+
+    private static int getStatDelta(Bundle before, Bundle after, String key) {
+        return after.getInt(key) - before.getInt(key);
+    }
+
+    /**
+     * Sets how many days of weather history to keep, as the SettingsFragment would.
+     *
+     * @param days The number of days, as a String, or null for the default
+     */
+    private void setArchiveRetention(String days) {
+        String key = mContext.getString(R.string.pref_archive_retention_key);
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(mContext).edit();
+        if (days == null) {
+            editor.remove(key);
+        } else {
+            editor.putString(key, days);
+        }
+        editor.commit();
+        /* The provider reads the retention right away, before the change listener has run */
+        SunshinePreferences.reloadSnapshot(mContext);
+    }
+
+    /**
+     * Creates a forecast for the given number of consecutive days. Any two forecasts created by
+     * this method agree on the weather for the days they have in common.
+     *
+     * @param firstDate The normalized date of the first day
+     * @param days      The number of days
+     * @return The forecast, one set of ContentValues per day
+     */
+    private static ContentValues[] createMergeTestWeatherValues(long firstDate, int days) {
+        ContentValues[] values = createBulkInsertTestWeatherValues();
+        ContentValues[] forecast = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            long date = firstDate + i * SunshineDateUtils.DAY_IN_MILLIS;
+            /* Pick the values by date, so the same day always gets the same weather */
+            int index = (int) ((date / SunshineDateUtils.DAY_IN_MILLIS) % values.length);
+            forecast[i] = new ContentValues(values[index]);
+            forecast[i].put(COLUMN_DATE, date);
+        }
+        return forecast;
+    }
+
     /**
      * This method will clear all rows from the weather table in our database.
      * <p>
@@ -442,8 +1050,13 @@ public class TestWeatherProvider {
 
         /* The delete method deletes all of the desired rows from the table, not the table itself */
         database.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+        database.delete(WeatherContract.ArchiveEntry.TABLE_NAME, null, null);
 
         /* Always close the database when you're through with it */
         database.close();
+
+        /* We went behind the provider's back, so it can't know its cached results are stale */
+        mContext.getContentResolver().call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_CLEAR_QUERY_CACHE, null, null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+import com.example.android.sunshine.utils.FakeForecastJson;
+import com.example.android.sunshine.utils.LocalHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Measures a full sync of N saved locations (see {@link MultiLocationSync}) against a local
+ * stand-in for the weather server, fetching one location at a time and
+ * {@link MultiLocationSync#DEFAULT_PARALLELISM} at a time.
+ * <p>
+ * The server holds every response back for a moment, like the round trip to a real server would.
+ * That wait is what fetching in parallel hides, so with one location both should take about as
+ * long, and with 20 the parallel sync should be several times faster. Results are logged; see
+ * {@link Benchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+@BenchmarkTest
+public class MultiLocationSyncBenchmark {
+
+    /* Roughly the round trip to the weather server on a good mobile connection */
+    private static final long SERVER_LATENCY_MILLIS = 100;
+
+    private static final int FORECAST_DAYS = 14;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private final ContentResolver mContentResolver = mContext.getContentResolver();
+
+    private LocalHttpServer mServer;
+    private Map<String, URL> mLocationUrls;
+
+    @Before
+    public void setUp() throws Exception {
+        final String forecastJson = FakeForecastJson.createForecastJson(FORECAST_DAYS);
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(Map<String, String> requestHeaders) {
+                try {
+                    Thread.sleep(SERVER_LATENCY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK, forecastJson);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteLocations();
+    }
+
+    @Test
+    public void benchmark1Location() throws Exception {
+        benchmarkSync(1);
+    }
+
+    @Test
+    public void benchmark5Locations() throws Exception {
+        benchmarkSync(5);
+    }
+
+    @Test
+    public void benchmark20Locations() throws Exception {
+        benchmarkSync(20);
+    }
+
+    private void benchmarkSync(final int locations) throws Exception {
+        deleteLocations();
+        mLocationUrls = new LinkedHashMap<>();
+        for (int i = 0; i < locations; i++) {
+            /* The server answers every path the same, but each location needs a URL of its own */
+            mLocationUrls.put("Benchmark City " + i, mServer.getUrl("/weather?q=city" + i));
+        }
+
+        measureSync(locations, 1);
+        measureSync(locations, MultiLocationSync.DEFAULT_PARALLELISM);
+
+        for (String location : mLocationUrls.keySet()) {
+            Cursor cursor = mContentResolver.query(WeatherEntry.buildLocationUri(location),
+                    null, null, null, null);
+            assertEquals("Wrong number of days for " + location,
+                    FORECAST_DAYS, cursor.getCount());
+            cursor.close();
+        }
+    }
+
+    private void measureSync(int locations, int parallelism) throws Exception {
+        final MultiLocationSync sync = new MultiLocationSync(mContext, parallelism);
+
+        Benchmark.measure(
+                "Sync " + locations + " locations, " + parallelism + " at a time",
+                1, 5,
+                new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        MultiLocationSync.Result result =
+                                sync.sync(mLocationUrls, new CancellationSignal());
+                        assertEquals("No location should fail: " + result, 0, result.failed);
+                    }
+                });
+    }
+
+    private void deleteLocations() {
+        if (mLocationUrls == null) return;
+        for (String location : mLocationUrls.keySet()) {
+            mContentResolver.delete(WeatherEntry.buildLocationUri(location), null, null);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.utilities.HttpCache;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.LocalHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Exercises {@link MultiLocationSync} against a local stand-in for the weather server.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestMultiLocationSync {
+
+    private static final String LOCATION = "Test Location, XX";
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+    private final ContentResolver mContentResolver = mContext.getContentResolver();
+
+    private LocalHttpServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mContentResolver.delete(WeatherEntry.buildLocationUri(LOCATION), null, null);
+
+        /* Behaves like a server whose forecast hasn't changed since the last sync */
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(Map<String, String> requestHeaders) {
+                return new LocalHttpServer.Response(HttpURLConnection.HTTP_NOT_MODIFIED);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+        mContentResolver.delete(WeatherEntry.buildLocationUri(LOCATION), null, null);
+    }
+
+    /**
+     * When the server has nothing new for a location, its days that have passed should still be
+     * deleted, while the rest of its forecast is kept.
+     */
+    @Test
+    public void testNotModifiedDeletesPastDays() throws Exception {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        /* Two days ago through two days from now */
+        ForecastBatch stored = new ForecastBatch(5);
+        for (int i = -2; i <= 2; i++) {
+            stored.add(today + i * SunshineDateUtils.DAY_IN_MILLIS, 800, 10, 20, 50, 1000, 2, 90);
+        }
+        /* A plain insert, as merging would leave out the days that have passed */
+        mContentResolver.bulkInsert(WeatherEntry.buildLocationUri(LOCATION),
+                stored.toContentValues());
+
+        URL url = mServer.getUrl("/weather");
+        HttpCache.getInstance(mContext)
+                .put(LOCATION, url, new HttpCache.Entry("\"forecast-1\"", null));
+
+        MultiLocationSync.Result result = new MultiLocationSync(mContext)
+                .sync(Collections.singletonMap(LOCATION, url), new CancellationSignal());
+        assertEquals("The location should be unchanged: " + result, 1, result.unchanged);
+
+        Cursor cursor = mContentResolver.query(WeatherEntry.buildLocationUri(LOCATION),
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Only today and the days after should be left", 3, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(today, cursor.getLong(0));
+        cursor.close();
+
+        HttpCache.getInstance(mContext).put(LOCATION, url, null);
+    }
+}
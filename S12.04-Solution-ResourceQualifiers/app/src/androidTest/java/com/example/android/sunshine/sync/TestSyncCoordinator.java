@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that {@link SyncCoordinator} folds sync requests together: requests made before a sync
+ * starts are covered by it, and requests made while it runs add exactly one follow-up sync, which
+ * outlives the running sync being canceled.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSyncCoordinator {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /**
+     * Counts the syncs it runs. Each sync waits for a permit, so a test can hold it "in flight".
+     * Dispatched syncs are only counted; the test runs them itself.
+     */
+    private static final class BlockingSyncAction implements SyncCoordinator.SyncAction {
+        final AtomicInteger mSyncCount = new AtomicInteger();
+        final AtomicInteger mDispatchCount = new AtomicInteger();
+        final Semaphore mPermits = new Semaphore(0);
+        final Semaphore mStarted = new Semaphore(0);
+
+        @Override
+        public void sync(Context context, CancellationSignal cancellationSignal) {
+            mSyncCount.incrementAndGet();
+            mStarted.release();
+            mPermits.acquireUninterruptibly();
+        }
+
+        @Override
+        public void dispatch(Context context) {
+            mDispatchCount.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testRequestsBeforeStartAreCoveredBySameSync() {
+        BlockingSyncAction action = new BlockingSyncAction();
+        action.mPermits.release(10);
+        SyncCoordinator coordinator = new SyncCoordinator(action);
+
+        assertTrue("The first request should start a sync", coordinator.requestSync());
+        for (int i = 0; i < 4; i++) {
+            assertFalse("A sync is already scheduled", coordinator.requestSync());
+        }
+
+        coordinator.runRequestedSyncs(mContext);
+
+        assertEquals(1, action.mSyncCount.get());
+        assertEquals(5, coordinator.getRequestedCount());
+        assertEquals(1, coordinator.getExecutedCount());
+    }
+
+    @Test
+    public void testRequestsDuringSyncCoalesceIntoOneFollowUp() throws Exception {
+        final BlockingSyncAction action = new BlockingSyncAction();
+        final SyncCoordinator coordinator = new SyncCoordinator(action);
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                coordinator.sync(mContext);
+                finished.countDown();
+            }
+        }).start();
+
+        /* Wait for the first sync to be under way, then pile on requests from other threads */
+        assertTrue(action.mStarted.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        Thread[] callers = new Thread[8];
+        for (int i = 0; i < callers.length; i++) {
+            callers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    /* Returns right away, as the running sync takes the request on */
+                    coordinator.sync(mContext);
+                }
+            });
+            callers[i].start();
+        }
+        for (Thread caller : callers) {
+            caller.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            assertFalse("A request blocked behind the running sync", caller.isAlive());
+        }
+
+        /* Let the first sync finish; the follow-up starts on the same thread */
+        action.mPermits.release();
+        assertTrue(action.mStarted.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        action.mPermits.release();
+
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals("Requests during a sync should add exactly one follow-up",
+                2, action.mSyncCount.get());
+        assertEquals(9, coordinator.getRequestedCount());
+        assertEquals(2, coordinator.getExecutedCount());
+
+        /* Once idle, the next request starts a sync again */
+        assertTrue(coordinator.requestSync());
+    }
+
+    @Test
+    public void testCancelWithoutFollowUpGoesIdle() {
+        final BlockingSyncAction action = new BlockingSyncAction();
+        final SyncCoordinator coordinator = new SyncCoordinator(action);
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+
+        assertTrue(coordinator.requestSync());
+        cancellationSignal.cancel();
+        action.mPermits.release();
+        coordinator.runRequestedSyncs(mContext, cancellationSignal);
+
+        assertEquals("Nothing was queued, so nothing should be dispatched",
+                0, action.mDispatchCount.get());
+        assertTrue("After a cancel, the next request should start a sync again",
+                coordinator.requestSync());
+    }
+
+    @Test
+    public void testCancelDispatchesFollowUp() throws Exception {
+        final BlockingSyncAction action = new BlockingSyncAction();
+        final SyncCoordinator coordinator = new SyncCoordinator(action);
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                coordinator.sync(mContext, cancellationSignal);
+                finished.countDown();
+            }
+        }).start();
+
+        assertTrue(action.mStarted.tryAcquire(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse("The request should queue a follow-up", coordinator.requestSync());
+
+        /* Cancel while the first sync is still running */
+        cancellationSignal.cancel();
+        action.mPermits.release();
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals("A canceled sync shouldn't run its follow-up under its own signal",
+                1, action.mSyncCount.get());
+        assertEquals("The follow-up should be dispatched instead of dropped",
+                1, action.mDispatchCount.get());
+        assertFalse("The dispatched follow-up should cover further requests",
+                coordinator.requestSync());
+
+        /* What the dispatched sync does once it starts */
+        action.mPermits.release();
+        coordinator.runRequestedSyncs(mContext);
+
+        assertEquals(2, action.mSyncCount.get());
+        assertTrue("Once the follow-up has run, the next request should start a sync again",
+                coordinator.requestSync());
+    }
+}
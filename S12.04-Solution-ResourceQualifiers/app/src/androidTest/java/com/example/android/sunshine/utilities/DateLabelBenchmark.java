@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares formatting friendly date labels on every call with looking them up in
+ * {@link DateLabelCache}, for the 14 days of a forecast, with and without the full date. Results
+ * (time and allocations per round of 28 labels) are logged; see {@link Benchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+@BenchmarkTest
+public class DateLabelBenchmark {
+
+    private static final int DAYS = 14;
+
+    private static final int ITERATIONS = 500;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /* Keeps the labels alive, so they can't be optimized away */
+    private long mSink;
+
+    @Test
+    public void benchmarkFriendlyDateStrings() throws Exception {
+        final long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        Benchmark.measure("Formatted, 14 days of labels", ITERATIONS, new Benchmark.Block() {
+            @Override
+            public void run() throws Exception {
+                long sum = 0;
+                for (int day = 0; day < DAYS; day++) {
+                    long date = today + day * SunshineDateUtils.DAY_IN_MILLIS;
+                    sum += SunshineDateUtils
+                            .formatFriendlyDateString(mContext, date, false).length();
+                    sum += SunshineDateUtils
+                            .formatFriendlyDateString(mContext, date, true).length();
+                }
+                mSink += sum;
+            }
+        });
+
+        Benchmark.measure("Cached, 14 days of labels", ITERATIONS, new Benchmark.Block() {
+            @Override
+            public void run() throws Exception {
+                long sum = 0;
+                for (int day = 0; day < DAYS; day++) {
+                    long date = today + day * SunshineDateUtils.DAY_IN_MILLIS;
+                    sum += SunshineDateUtils
+                            .getFriendlyDateString(mContext, date, false).length();
+                    sum += SunshineDateUtils
+                            .getFriendlyDateString(mContext, date, true).length();
+                }
+                mSink += sum;
+            }
+        });
+    }
+}
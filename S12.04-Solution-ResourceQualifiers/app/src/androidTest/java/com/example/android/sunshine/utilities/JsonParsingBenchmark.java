@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+import com.example.android.sunshine.utils.FakeForecastJson;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+
+/**
+ * Compares parse latency and allocations of the JSONObject (DOM) parser against the streaming
+ * parser in {@link OpenWeatherJsonUtils}. Results are logged; see {@link Benchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+@BenchmarkTest
+public class JsonParsingBenchmark {
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void benchmark14Days() throws Exception {
+        compareParsers(14, 200);
+    }
+
+    @Test
+    public void benchmark365Days() throws Exception {
+        compareParsers(365, 20);
+    }
+
+    private void compareParsers(int days, int iterations) throws Exception {
+        final String json = FakeForecastJson.createForecastJson(days);
+
+        Benchmark.measure("DOM parse, " + days + " days", iterations, new Benchmark.Block() {
+            @Override
+            public void run() throws Exception {
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, json);
+            }
+        });
+
+        Benchmark.measure("Streaming parse, " + days + " days", iterations, new Benchmark.Block() {
+            @Override
+            public void run() throws Exception {
+                OpenWeatherJsonUtils
+                        .getWeatherContentValuesFromJson(mContext, new StringReader(json));
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+/**
+ * Measures what {@link SyncTrace} adds to a sync: recording the dozen or so spans of one sync,
+ * the way SunshineSyncTask does. A sync spends hundreds of milliseconds on the network and in
+ * SQLite, so this has to stay well below 1% of that, a few milliseconds. Results are logged; see
+ * {@link Benchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+@BenchmarkTest
+public class SyncTraceBenchmark {
+
+    private static final int SYNCS = 10000;
+
+    /* A sync that takes this long is on the fast side; most take longer */
+    private static final double FAST_SYNC_MILLIS = 200;
+
+    @Test
+    public void benchmarkRecordSync() throws Exception {
+        final SyncTrace trace = new SyncTrace(256);
+
+        Benchmark.Result result = Benchmark.measure("Record the spans of 10,000 syncs", 3, 10,
+                new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        for (int i = 0; i < SYNCS; i++) {
+                            recordSync(trace);
+                        }
+                    }
+                });
+
+        double nanosPerSync = result.nanosPerIteration / SYNCS;
+        Log.i(Benchmark.TAG, String.format(Locale.US,
+                "Tracing a sync: %.1f us, %.4f%% of a %.0f ms sync", nanosPerSync / 1e3,
+                100 * nanosPerSync / (FAST_SYNC_MILLIS * 1e6), FAST_SYNC_MILLIS));
+    }
+
+    /**
+     * Records the same spans a successful sync with a notification does.
+     */
+    private static void recordSync(SyncTrace trace) {
+        SyncTrace.Recorder recorder = trace.startSync();
+        recorder.begin(SyncTrace.STAGE_COMPACT_ARCHIVE);
+        recorder.end(0);
+        recorder.begin(SyncTrace.STAGE_BUILD_URL);
+        recorder.end(0);
+        recorder.begin(SyncTrace.STAGE_CONNECT);
+        recorder.end(200);
+        recorder.begin(SyncTrace.STAGE_PARSE);
+        recorder.record(SyncTrace.STAGE_READ_BODY, 0, 1000, 4096);
+        recorder.end(14, 1000);
+        recorder.begin(SyncTrace.STAGE_WRITE);
+        recorder.end(14);
+        recorder.begin(SyncTrace.STAGE_WRITE_SNAPSHOT);
+        recorder.end(0);
+        recorder.begin(SyncTrace.STAGE_NOTIFY);
+        recorder.end(1);
+        recorder.begin(SyncTrace.STAGE_SAVED_LOCATIONS);
+        recorder.end(0);
+        recorder.finish(SyncTrace.OUTCOME_OK);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+/**
+ * Checks that {@link SunshineDateUtils#getFriendlyDateString(Context, long, boolean)} returns the
+ * same labels with {@link DateLabelCache} as without it, and that the cached labels are thrown
+ * away when the locale or time zone changes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestDateLabelCache {
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private TimeZone mSavedTimeZone;
+    private Locale mSavedLocale;
+
+    @Before
+    public void setUp() {
+        mSavedTimeZone = TimeZone.getDefault();
+        mSavedLocale = Locale.getDefault();
+        DateLabelCache.invalidate();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mSavedTimeZone);
+        Locale.setDefault(mSavedLocale);
+        DateLabelCache.invalidate();
+    }
+
+    /**
+     * Compares the labels of the days around today, twice, so the second round is read from the
+     * cache.
+     */
+    private void assertLabelsMatchFormattedLabels() {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        for (int round = 0; round < 2; round++) {
+            for (int day = -10; day <= 40; day++) {
+                long date = today + day * SunshineDateUtils.DAY_IN_MILLIS;
+                for (boolean showFullDate : new boolean[]{false, true}) {
+                    assertEquals("Wrong label for day " + day,
+                            SunshineDateUtils.formatFriendlyDateString(
+                                    mContext, date, showFullDate),
+                            SunshineDateUtils.getFriendlyDateString(
+                                    mContext, date, showFullDate));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCachedLabelsMatchFormattedLabels() {
+        assertLabelsMatchFormattedLabels();
+    }
+
+    @Test
+    public void testLabelsAreReusedUntilInvalidated() {
+        DateLabelCache.Labels labels = DateLabelCache.getLabels(mContext);
+        assertSame(labels, DateLabelCache.getLabels(mContext));
+
+        /* What the receiver does when the time zone or the clock changes */
+        DateLabelCache.invalidate();
+        assertNotSame(labels, DateLabelCache.getLabels(mContext));
+    }
+
+    @Test
+    public void testLocaleChangeStartsNewLabels() {
+        DateLabelCache.Labels labels = DateLabelCache.getLabels(mContext);
+
+        Locale.setDefault(Locale.GERMANY.equals(mSavedLocale) ? Locale.FRANCE : Locale.GERMANY);
+        assertNotSame(labels, DateLabelCache.getLabels(mContext));
+    }
+
+    @Test
+    public void testTimeZoneChangeFormatsNewLabels() {
+        TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Kiritimati"));
+        DateLabelCache.invalidate();
+        assertLabelsMatchFormattedLabels();
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Pago_Pago"));
+        DateLabelCache.invalidate();
+        assertLabelsMatchFormattedLabels();
+    }
+
+    @Test
+    public void testOnlyNormalizedDatesAroundTodayAreStored() {
+        DateLabelCache.Labels labels = DateLabelCache.getLabels(mContext);
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        labels.put(today + 1, false, "Not normalized");
+        assertNull(labels.get(today + 1, false));
+
+        long farAway = today + 365 * SunshineDateUtils.DAY_IN_MILLIS;
+        labels.put(farAway, false, "Next year");
+        assertNull(labels.get(farAway, false));
+
+        labels.put(today, true, "Today");
+        assertEquals("Today", labels.get(today, true));
+        assertNull(labels.get(today, false));
+    }
+}
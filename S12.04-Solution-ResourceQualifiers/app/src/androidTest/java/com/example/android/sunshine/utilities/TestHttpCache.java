@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utils.FakeForecastJson;
+import com.example.android.sunshine.utils.LocalHttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Exercises {@link HttpCache} and the conditional requests made through
+ * {@link NetworkUtils#openResponse(URL, HttpCache, String)} against a local stand-in for the
+ * weather server.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestHttpCache {
+
+    private static final String ETAG = "\"forecast-1\"";
+    private static final String LAST_MODIFIED = "Tue, 20 Sep 2016 18:30:00 GMT";
+
+    private static final String LOCATION = "Mountain View, CA";
+
+    private final String mForecastJson = FakeForecastJson.createForecastJson(14);
+
+    private File mCacheDirectory;
+    private HttpCache mCache;
+    private LocalHttpServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mCacheDirectory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "test-http-cache");
+        mCache = new HttpCache(mCacheDirectory);
+        mCache.clear();
+
+        /* Behaves like a server that honours both kinds of validators */
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(Map<String, String> requestHeaders) {
+                boolean eTagMatches = ETAG.equals(requestHeaders.get("if-none-match"));
+                boolean notModifiedSince =
+                        LAST_MODIFIED.equals(requestHeaders.get("if-modified-since"));
+
+                if (eTagMatches || notModifiedSince) {
+                    return new LocalHttpServer.Response(HttpURLConnection.HTTP_NOT_MODIFIED);
+                }
+                return new LocalHttpServer.Response(HttpURLConnection.HTTP_OK, mForecastJson)
+                        .header("ETag", ETAG)
+                        .header("Last-Modified", LAST_MODIFIED);
+            }
+        });
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+        mCache.clear();
+    }
+
+    @Test
+    public void testFirstRequestIsUnconditionalMiss() throws Exception {
+        URL url = mServer.getUrl("/weather");
+
+        NetworkResponse response = NetworkUtils.openResponse(url, mCache, LOCATION);
+        try {
+            assertFalse(response.isNotModified());
+            assertEquals(mForecastJson, response.readBody());
+        } finally {
+            response.close();
+        }
+
+        Map<String, String> request = mServer.getRequests().get(0);
+        assertNull("No validators should be sent without a cache entry",
+                request.get("if-none-match"));
+        assertNull("No validators should be sent without a cache entry",
+                request.get("if-modified-since"));
+
+        assertEquals(0, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    @Test
+    public void testStoredValidatorsProduceNotModified() throws Exception {
+        URL url = mServer.getUrl("/weather");
+
+        NetworkResponse first = NetworkUtils.openResponse(url, mCache, LOCATION);
+        HttpCache.Entry validators;
+        try {
+            first.readBody();
+            validators = HttpCache.Entry.from(first);
+        } finally {
+            first.close();
+        }
+        mCache.put(LOCATION, url, validators);
+
+        NetworkResponse second = NetworkUtils.openResponse(url, mCache, LOCATION);
+        try {
+            assertTrue("Server should have answered 304 Not Modified", second.isNotModified());
+        } finally {
+            second.close();
+        }
+
+        List<Map<String, String>> requests = mServer.getRequests();
+        assertEquals(2, requests.size());
+        assertEquals(ETAG, requests.get(1).get("if-none-match"));
+        assertEquals(LAST_MODIFIED, requests.get(1).get("if-modified-since"));
+
+        assertEquals(1, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    @Test
+    public void testValidatorsSurviveNewCacheInstance() throws Exception {
+        URL url = mServer.getUrl("/weather");
+        mCache.put(LOCATION, url, new HttpCache.Entry(ETAG, null));
+
+        /* A fresh instance over the same directory, as after the app process was restarted */
+        HttpCache reopened = new HttpCache(mCacheDirectory);
+        HttpCache.Entry entry = reopened.get(LOCATION, url);
+
+        assertEquals(ETAG, entry.eTag);
+        assertNull(entry.lastModified);
+        assertNull("Entries are per URL", reopened.get(LOCATION, mServer.getUrl("/other")));
+    }
+
+    @Test
+    public void testValidatorsArePerLocation() throws Exception {
+        URL url = mServer.getUrl("/weather");
+        mCache.put(LOCATION, url, new HttpCache.Entry(ETAG, LAST_MODIFIED));
+
+        /*
+         * The same URL, but the rows would be stored under another location that has never
+         * been synced, so the server must send the full response.
+         */
+        NetworkResponse response = NetworkUtils.openResponse(url, mCache, "");
+        try {
+            assertFalse(response.isNotModified());
+        } finally {
+            response.close();
+        }
+
+        assertNull(mServer.getRequests().get(0).get("if-none-match"));
+        assertNull(mServer.getRequests().get(0).get("if-modified-since"));
+    }
+
+    @Test
+    public void testPuttingNullRemovesEntry() throws Exception {
+        URL url = mServer.getUrl("/weather");
+        mCache.put(LOCATION, url, new HttpCache.Entry(ETAG, LAST_MODIFIED));
+        mCache.put(LOCATION, url, null);
+
+        assertNull(mCache.get(LOCATION, url));
+    }
+
+    @Test
+    public void testClearForcesFullResponse() throws Exception {
+        URL url = mServer.getUrl("/weather");
+        mCache.put(LOCATION, url, new HttpCache.Entry(ETAG, LAST_MODIFIED));
+        mCache.clear();
+
+        NetworkResponse response = NetworkUtils.openResponse(url, mCache, LOCATION);
+        try {
+            assertFalse(response.isNotModified());
+        } finally {
+            response.close();
+        }
+
+        assertNull(mServer.getRequests().get(0).get("if-none-match"));
+        assertEquals(0, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.R;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that {@link LargeIconCache} loads every weather art, no larger than a notification
+ * icon, and hands out the same bitmap every time it is asked for the same art.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestLargeIconCache {
+
+    private static final int[] ART_RESOURCE_IDS = {
+            R.drawable.art_clear,
+            R.drawable.art_clouds,
+            R.drawable.art_fog,
+            R.drawable.art_light_clouds,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_storm,
+    };
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Before
+    public void setUp() {
+        LargeIconCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        LargeIconCache.clear();
+    }
+
+    @Test
+    public void testIconsAreSizedForNotifications() {
+        Resources resources = mContext.getResources();
+        /* Before Honeycomb there is no resource for the size, so allow for a generous one */
+        int maxWidth = Math.round(96 * resources.getDisplayMetrics().density);
+        int maxHeight = maxWidth;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            maxWidth = resources.getDimensionPixelSize(
+                    android.R.dimen.notification_large_icon_width);
+            maxHeight = resources.getDimensionPixelSize(
+                    android.R.dimen.notification_large_icon_height);
+        }
+
+        for (int resourceId : ART_RESOURCE_IDS) {
+            String name = resources.getResourceEntryName(resourceId);
+            Bitmap icon = LargeIconCache.getLargeIcon(mContext, resourceId);
+
+            assertNotNull("No icon for " + name, icon);
+            assertTrue("Icon for " + name + " is " + icon.getWidth() + " pixels wide",
+                    icon.getWidth() > 0 && icon.getWidth() <= maxWidth);
+            assertTrue("Icon for " + name + " is " + icon.getHeight() + " pixels high",
+                    icon.getHeight() > 0 && icon.getHeight() <= maxHeight);
+        }
+    }
+
+    @Test
+    public void testIconsAreCached() {
+        for (int resourceId : ART_RESOURCE_IDS) {
+            Bitmap icon = LargeIconCache.getLargeIcon(mContext, resourceId);
+            assertSame(icon, LargeIconCache.getLargeIcon(mContext, resourceId));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.JsonReader;
+
+import com.example.android.sunshine.utils.FakeForecastJson;
+import com.example.android.sunshine.utils.LocalHttpServer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Verifies that {@link NetworkResponse} asks for compressed bodies, decompresses them while they
+ * are read and reports both the wire and the decoded byte counts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestNetworkResponse {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mForecastJson = FakeForecastJson.createForecastJson(14);
+
+    private LocalHttpServer mServer;
+
+    @After
+    public void tearDown() throws Exception {
+        if (mServer != null) {
+            mServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testAdvertisesCompression() throws Exception {
+        startServer(null, mForecastJson.getBytes(UTF_8));
+
+        NetworkResponse response = NetworkUtils.openResponse(mServer.getUrl("/weather"));
+        try {
+            response.readBody();
+        } finally {
+            response.close();
+        }
+
+        String acceptEncoding = mServer.getRequests().get(0).get("accept-encoding");
+        assertTrue("gzip not advertised: " + acceptEncoding, acceptEncoding.contains("gzip"));
+        assertTrue("deflate not advertised: " + acceptEncoding, acceptEncoding.contains("deflate"));
+    }
+
+    @Test
+    public void testUncompressedBody() throws Exception {
+        byte[] body = mForecastJson.getBytes(UTF_8);
+        startServer(null, body);
+
+        NetworkResponse response = NetworkUtils.openResponse(mServer.getUrl("/weather"));
+        try {
+            assertEquals(mForecastJson, response.readBody());
+            assertNull(response.getContentEncoding());
+            assertEquals(body.length, response.getBytesRead());
+            assertEquals(body.length, response.getWireBytesRead());
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void testGzipBody() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(compressed));
+        assertDecodes("gzip", compressed.toByteArray());
+    }
+
+    @Test
+    public void testZlibDeflateBody() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        write(new DeflaterOutputStream(compressed));
+        assertDecodes("deflate", compressed.toByteArray());
+    }
+
+    @Test
+    public void testRawDeflateBody() throws Exception {
+        /* Some servers send "deflate" bodies without the zlib wrapper */
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Deflater rawDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        write(new DeflaterOutputStream(compressed, rawDeflater));
+        rawDeflater.end();
+        assertDecodes("deflate", compressed.toByteArray());
+    }
+
+    @Test
+    public void testGzipBodyStreamsIntoParser() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(compressed));
+        startServer("gzip", compressed.toByteArray());
+
+        NetworkResponse response = NetworkUtils.openResponse(mServer.getUrl("/weather"));
+        try {
+            JsonReader reader = new JsonReader(response.getReader());
+            reader.beginObject();
+            while (reader.hasNext()) {
+                reader.nextName();
+                reader.skipValue();
+            }
+            reader.endObject();
+
+            /*
+             * The parser stops at the closing brace, so it may leave the gzip trailer unread.
+             * All we can rely on is that fewer bytes crossed the wire than were parsed.
+             */
+            assertTrue(response.getWireBytesRead() > 0);
+            assertTrue(response.getWireBytesRead() <= compressed.size());
+            assertTrue(response.getWireBytesRead() < response.getBytesRead());
+        } finally {
+            response.close();
+        }
+    }
+
+    private void assertDecodes(String encoding, byte[] compressed) throws Exception {
+        startServer(encoding, compressed);
+
+        NetworkResponse response = NetworkUtils.openResponse(mServer.getUrl("/weather"));
+        try {
+            assertEquals(mForecastJson, response.readBody());
+            assertEquals(encoding, response.getContentEncoding());
+            assertEquals(mForecastJson.getBytes(UTF_8).length, response.getBytesRead());
+            assertEquals(compressed.length, response.getWireBytesRead());
+            assertTrue("Compressed body should be smaller than the decoded one",
+                    response.getWireBytesRead() < response.getBytesRead());
+        } finally {
+            response.close();
+        }
+    }
+
+    private void write(OutputStream out) throws IOException {
+        out.write(mForecastJson.getBytes(UTF_8));
+        out.close();
+    }
+
+    private void startServer(final String contentEncoding, final byte[] body) throws IOException {
+        mServer = new LocalHttpServer(new LocalHttpServer.Handler() {
+            @Override
+            public LocalHttpServer.Response handle(Map<String, String> requestHeaders) {
+                LocalHttpServer.Response response =
+                        new LocalHttpServer.Response(HttpURLConnection.HTTP_OK, body);
+                if (contentEncoding != null) {
+                    response.header("Content-Encoding", contentEncoding);
+                }
+                return response;
+            }
+        });
+        mServer.start();
+    }
+}
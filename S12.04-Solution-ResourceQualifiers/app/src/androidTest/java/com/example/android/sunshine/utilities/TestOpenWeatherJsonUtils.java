@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utils.FakeForecastJson;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.StringReader;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+/**
+ * Verifies that the streaming parser in {@link OpenWeatherJsonUtils} produces exactly the same
+ * values as the JSONObject based parser it replaces.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestOpenWeatherJsonUtils {
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void testStreamingParserMatchesDomParser() throws Exception {
+        String json = FakeForecastJson.createForecastJson(14);
+
+        ContentValues[] domValues =
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, json);
+        ContentValues[] streamValues =
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, new StringReader(json));
+
+        assertNotNull("DOM parser returned null for a valid forecast", domValues);
+        assertNotNull("Streaming parser returned null for a valid forecast", streamValues);
+        assertEquals("Parsers returned a different number of days",
+                domValues.length, streamValues.length);
+
+        for (int i = 0; i < domValues.length; i++) {
+            assertEquals("Parsers disagree on day " + i, domValues[i], streamValues[i]);
+        }
+    }
+
+    /**
+     * JSONObject#getInt truncates a fractional value, so the streaming parser must too, rather
+     * than fail on it.
+     */
+    @Test
+    public void testStreamingParserTruncatesFractionalIntegers() throws Exception {
+        String json = FakeForecastJson.createForecastJson(3)
+                .replaceAll("\"humidity\":(\\d+),", "\"humidity\":$1.5,")
+                .replaceAll("\"id\":(\\d+),\"main\"", "\"id\":$1.9,\"main\"");
+
+        ContentValues[] domValues =
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, json);
+        ContentValues[] streamValues = OpenWeatherJsonUtils
+                .getWeatherContentValuesFromJson(mContext, new StringReader(json));
+
+        assertNotNull("Streaming parser returned null for fractional values", streamValues);
+        assertEquals(domValues.length, streamValues.length);
+        for (int i = 0; i < domValues.length; i++) {
+            assertEquals("Parsers disagree on day " + i, domValues[i], streamValues[i]);
+        }
+
+        /* FakeForecastJson gives the first day a humidity of 40, now sent as 40.5 */
+        assertEquals(40.0,
+                streamValues[0].getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY));
+    }
+
+    @Test
+    public void testStreamingParserDoesNotDependOnKeyOrder() throws Exception {
+        String json = FakeForecastJson.createForecastJson(3);
+
+        /* Move the "city" object after the "list" array */
+        int listStart = json.indexOf("\"cod\"");
+        String city = json.substring(1, listStart - 1);
+        String reordered = "{" + json.substring(listStart, json.length() - 1) + "," + city + "}";
+
+        ContentValues[] expected =
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, json);
+        ContentValues[] actual = OpenWeatherJsonUtils
+                .getWeatherContentValuesFromJson(mContext, new StringReader(reordered));
+
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Parsers disagree on day " + i, expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void testStreamingParserReturnsNullForErrorCode() throws Exception {
+        ContentValues[] values = OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext,
+                new StringReader(FakeForecastJson.createErrorJson()));
+
+        assertNull("An error response should not produce any weather values", values);
+    }
+}
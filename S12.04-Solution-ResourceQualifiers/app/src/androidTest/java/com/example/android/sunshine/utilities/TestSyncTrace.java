@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.database.Cursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.data.WeatherContract;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that {@link SyncTrace} keeps the newest spans in the order they were recorded, never
+ * hands out a span that is half overwritten, and is served by the provider in debug builds.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSyncTrace {
+
+    @Test
+    public void testSpansAreKeptInOrder() {
+        SyncTrace trace = new SyncTrace(16);
+        for (int i = 0; i < 5; i++) {
+            trace.record(7, SyncTrace.STAGE_PARSE, SyncTrace.OUTCOME_OK, i, 10 * i, 100 * i);
+        }
+
+        List<SyncTrace.Span> spans = trace.getSpans();
+
+        assertEquals(5, spans.size());
+        for (int i = 0; i < 5; i++) {
+            SyncTrace.Span span = spans.get(i);
+            assertEquals(i, span.sequence);
+            assertEquals(7, span.syncId);
+            assertEquals(SyncTrace.STAGE_PARSE, span.stage);
+            assertEquals(SyncTrace.OUTCOME_OK, span.outcome);
+            assertEquals(i, span.startNanos);
+            assertEquals(10 * i, span.durationNanos);
+            assertEquals(100 * i, span.detail);
+        }
+    }
+
+    @Test
+    public void testOldestSpansAreOverwritten() {
+        SyncTrace trace = new SyncTrace(4);
+        for (int i = 0; i < 10; i++) {
+            trace.record(1, SyncTrace.STAGE_CONNECT, SyncTrace.OUTCOME_OK, i, i, i);
+        }
+
+        List<SyncTrace.Span> spans = trace.getSpans();
+
+        assertEquals(4, spans.size());
+        assertEquals(6, spans.get(0).sequence);
+        assertEquals(9, spans.get(3).detail);
+    }
+
+    @Test
+    public void testRecorderRecordsStagesAndSync() {
+        SyncTrace trace = new SyncTrace(16);
+        SyncTrace.Recorder recorder = trace.startSync();
+
+        recorder.begin(SyncTrace.STAGE_CONNECT);
+        recorder.end(200);
+        recorder.record(SyncTrace.STAGE_READ_BODY, 0, 1000, 4096);
+        recorder.begin(SyncTrace.STAGE_PARSE);
+        recorder.finish(SyncTrace.OUTCOME_FAILED);
+
+        List<SyncTrace.Span> spans = trace.getSpans();
+
+        assertEquals(4, spans.size());
+        assertEquals(SyncTrace.STAGE_CONNECT, spans.get(0).stage);
+        assertEquals(200, spans.get(0).detail);
+        assertEquals(SyncTrace.STAGE_READ_BODY, spans.get(1).stage);
+        assertEquals(1000, spans.get(1).durationNanos);
+
+        /* The stage that was running when the sync failed is recorded as failed */
+        assertEquals(SyncTrace.STAGE_PARSE, spans.get(2).stage);
+        assertEquals(SyncTrace.OUTCOME_FAILED, spans.get(2).outcome);
+
+        SyncTrace.Span sync = spans.get(3);
+        assertEquals(SyncTrace.STAGE_SYNC, sync.stage);
+        assertEquals(SyncTrace.OUTCOME_FAILED, sync.outcome);
+        assertTrue(sync.durationNanos >= spans.get(0).durationNanos);
+        for (SyncTrace.Span span : spans) {
+            assertEquals(sync.syncId, span.syncId);
+        }
+    }
+
+    @Test
+    public void testExcludedTimeIsLeftOut() throws Exception {
+        SyncTrace trace = new SyncTrace(4);
+        SyncTrace.Recorder recorder = trace.startSync();
+
+        long startNanos = System.nanoTime();
+        recorder.begin(SyncTrace.STAGE_PARSE);
+        Thread.sleep(20);
+        recorder.end(14, 15000000);
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        long durationNanos = trace.getSpans().get(0).durationNanos;
+        assertTrue("Parse took " + durationNanos + " ns", durationNanos >= 5000000);
+        assertTrue("Parse took " + durationNanos + " ns of " + elapsedNanos,
+                durationNanos <= elapsedNanos - 15000000);
+    }
+
+    /**
+     * Writers race each other and a reader around a small ring, so that slots are overwritten
+     * all the time. Every span a writer records has the same value in all of its fields, so a
+     * span that mixes two writes would stand out.
+     */
+    @Test
+    public void testConcurrentWritersNeverTearSpans() throws Exception {
+        final SyncTrace trace = new SyncTrace(8);
+        final int writers = 4;
+        final int spansPerWriter = 20000;
+        final CountDownLatch done = new CountDownLatch(writers);
+        final AtomicBoolean torn = new AtomicBoolean();
+
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < spansPerWriter; i++) {
+                        long value = writer * spansPerWriter + i;
+                        trace.record(writer, writer, SyncTrace.OUTCOME_OK, value, value, value);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        while (done.getCount() > 0) {
+            for (SyncTrace.Span span : trace.getSpans()) {
+                if (span.startNanos != span.durationNanos || span.startNanos != span.detail
+                        || span.syncId != span.stage
+                        || span.startNanos / spansPerWriter != span.syncId) {
+                    torn.set(true);
+                }
+            }
+        }
+
+        assertFalse("A span was read half overwritten", torn.get());
+        assertEquals(8, trace.getSpans().size());
+        assertEquals(writers * spansPerWriter - 1,
+                trace.getSpans().get(7).sequence);
+    }
+
+    @Test
+    public void testProviderServesTrace() {
+        SyncTrace.Recorder recorder = SyncTrace.getInstance().startSync();
+        recorder.begin(SyncTrace.STAGE_NOTIFY);
+        recorder.end(1);
+        recorder.finish(SyncTrace.OUTCOME_OK);
+
+        Cursor cursor = InstrumentationRegistry.getTargetContext().getContentResolver().query(
+                WeatherContract.SyncTraceEntry.CONTENT_URI, null, null, null, null);
+        try {
+            assertTrue(cursor.moveToLast());
+            assertEquals("sync", cursor.getString(
+                    cursor.getColumnIndex(WeatherContract.SyncTraceEntry.COLUMN_STAGE)));
+            assertEquals("ok", cursor.getString(
+                    cursor.getColumnIndex(WeatherContract.SyncTraceEntry.COLUMN_OUTCOME)));
+
+            assertTrue(cursor.moveToPrevious());
+            assertEquals("notify", cursor.getString(
+                    cursor.getColumnIndex(WeatherContract.SyncTraceEntry.COLUMN_STAGE)));
+            assertEquals(1, cursor.getLong(
+                    cursor.getColumnIndex(WeatherContract.SyncTraceEntry.COLUMN_DETAIL)));
+        } finally {
+            cursor.close();
+        }
+    }
+}
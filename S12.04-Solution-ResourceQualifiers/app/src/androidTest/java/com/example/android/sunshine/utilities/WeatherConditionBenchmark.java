@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.utils.Benchmark;
+import com.example.android.sunshine.utils.BenchmarkTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compares looking weather conditions up in {@link WeatherConditionTable} with running the range
+ * checks and switch statements it is built from, over every ID from 200 to 962. Results are
+ * logged; see {@link Benchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherConditionBenchmark {
+
+    private static final int ITERATIONS = 200;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /* Keeps the results of the lookups alive, so they can't be optimized away */
+    private long mSink;
+
+    @Test
+    public void testTableMatchesMapping() {
+        for (int weatherId = WeatherConditionTable.MIN_WEATHER_ID;
+             weatherId <= WeatherConditionTable.MAX_WEATHER_ID; weatherId++) {
+            assertEquals(WeatherConditionTable.mapDescriptionResourceId(weatherId),
+                    WeatherConditionTable.getDescriptionResourceId(weatherId));
+            assertEquals(WeatherConditionTable.mapSmallArtResourceId(weatherId),
+                    WeatherConditionTable.getSmallArtResourceId(weatherId));
+            assertEquals(WeatherConditionTable.mapLargeArtResourceId(weatherId),
+                    WeatherConditionTable.getLargeArtResourceId(weatherId));
+
+            int stringId = WeatherConditionTable.mapDescriptionResourceId(weatherId);
+            String expected = stringId != WeatherConditionTable.NO_RESOURCE
+                    ? mContext.getString(stringId)
+                    : mContext.getString(R.string.condition_unknown, weatherId);
+            assertEquals(expected,
+                    SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId));
+        }
+
+        /* IDs outside of the table are unknown, just as before */
+        assertEquals(mContext.getString(R.string.condition_unknown, 1000),
+                SunshineWeatherUtils.getStringForWeatherCondition(mContext, 1000));
+        assertEquals(R.drawable.ic_storm,
+                SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(100));
+        assertEquals(R.drawable.art_storm,
+                SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(100));
+    }
+
+    @Test
+    @BenchmarkTest
+    public void benchmarkResourceIds() throws Exception {
+        Benchmark.measure("Switch, resource IDs of 763 conditions", ITERATIONS,
+                new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        long sum = 0;
+                        for (int weatherId = WeatherConditionTable.MIN_WEATHER_ID;
+                             weatherId <= WeatherConditionTable.MAX_WEATHER_ID; weatherId++) {
+                            sum += WeatherConditionTable.mapDescriptionResourceId(weatherId);
+                            sum += WeatherConditionTable.mapSmallArtResourceId(weatherId);
+                            sum += WeatherConditionTable.mapLargeArtResourceId(weatherId);
+                        }
+                        mSink += sum;
+                    }
+                });
+
+        Benchmark.measure("Table, resource IDs of 763 conditions", ITERATIONS,
+                new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        long sum = 0;
+                        for (int weatherId = WeatherConditionTable.MIN_WEATHER_ID;
+                             weatherId <= WeatherConditionTable.MAX_WEATHER_ID; weatherId++) {
+                            sum += WeatherConditionTable.getDescriptionResourceId(weatherId);
+                            sum += WeatherConditionTable.getSmallArtResourceId(weatherId);
+                            sum += WeatherConditionTable.getLargeArtResourceId(weatherId);
+                        }
+                        mSink += sum;
+                    }
+                });
+    }
+
+    @Test
+    @BenchmarkTest
+    public void benchmarkDescriptions() throws Exception {
+        Benchmark.measure("Switch and getString, descriptions of 763 conditions", ITERATIONS,
+                new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        long sum = 0;
+                        for (int weatherId = WeatherConditionTable.MIN_WEATHER_ID;
+                             weatherId <= WeatherConditionTable.MAX_WEATHER_ID; weatherId++) {
+                            int stringId =
+                                    WeatherConditionTable.mapDescriptionResourceId(weatherId);
+                            String description = stringId != WeatherConditionTable.NO_RESOURCE
+                                    ? mContext.getString(stringId)
+                                    : mContext.getString(R.string.condition_unknown, weatherId);
+                            sum += description.length();
+                        }
+                        mSink += sum;
+                    }
+                });
+
+        Benchmark.measure("Cached, descriptions of 763 conditions", ITERATIONS,
+                new Benchmark.Block() {
+                    @Override
+                    public void run() throws Exception {
+                        long sum = 0;
+                        for (int weatherId = WeatherConditionTable.MIN_WEATHER_ID;
+                             weatherId <= WeatherConditionTable.MAX_WEATHER_ID; weatherId++) {
+                            sum += SunshineWeatherUtils
+                                    .getStringForWeatherCondition(mContext, weatherId).length();
+                        }
+                        mSink += sum;
+                    }
+                });
+    }
+}
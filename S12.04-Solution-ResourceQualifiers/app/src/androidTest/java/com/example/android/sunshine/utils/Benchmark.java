@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import android.os.Build;
+import android.os.Debug;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * A very small harness for the instrumented benchmarks. It runs a block of code a number of
+ * times after warming it up, and measures both the time taken and the number of objects (and
+ * bytes) allocated by the calling thread. From Marshmallow on, it also counts the garbage
+ * collections that ran meanwhile.
+ * <p>
+ * Results are logged under the "SunshineBenchmark" tag so they can be collected with
+ * <code>adb logcat -s SunshineBenchmark</code>.
+ */
+public final class Benchmark {
+
+    public static final String TAG = "SunshineBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 5;
+
+    /**
+     * The code being measured.
+     */
+    public interface Block {
+        void run() throws Exception;
+    }
+
+    /**
+     * The averaged result of a measurement.
+     */
+    public static final class Result {
+        public final String name;
+        public final int iterations;
+        public final double nanosPerIteration;
+        public final double allocationsPerIteration;
+        public final double bytesPerIteration;
+        /* Over all measured runs together, or -1 if the platform can't tell */
+        public final long gcCount;
+
+        Result(String name, int iterations, double nanosPerIteration,
+               double allocationsPerIteration, double bytesPerIteration, long gcCount) {
+            this.name = name;
+            this.iterations = iterations;
+            this.nanosPerIteration = nanosPerIteration;
+            this.allocationsPerIteration = allocationsPerIteration;
+            this.bytesPerIteration = bytesPerIteration;
+            this.gcCount = gcCount;
+        }
+
+        @Override
+        public String toString() {
+            String result = String.format(Locale.US,
+                    "%s: %.3f ms/op, %.1f allocations/op, %.1f KB/op (%d iterations)",
+                    name, nanosPerIteration / 1e6, allocationsPerIteration,
+                    bytesPerIteration / 1024, iterations);
+            return gcCount < 0 ? result : result + ", " + gcCount + " GCs";
+        }
+    }
+
+    private Benchmark() {
+    }
+
+    /**
+     * Measures the given block and logs the result.
+     *
+     * @param name       Label to log the result with
+     * @param iterations Number of measured runs
+     * @param block      The code to measure
+     * @return The averaged result
+     */
+    public static Result measure(String name, int iterations, Block block) throws Exception {
+        return measure(name, WARMUP_ITERATIONS, iterations, block);
+    }
+
+    /**
+     * Measures the given block and logs the result. Use this for blocks so slow that the default
+     * number of warmup runs would take too long.
+     *
+     * @param name              Label to log the result with
+     * @param warmupIterations  Number of unmeasured runs before the measured ones
+     * @param iterations        Number of measured runs
+     * @param block             The code to measure
+     * @return The averaged result
+     */
+    @SuppressWarnings("deprecation")
+    public static Result measure(String name, int warmupIterations, int iterations, Block block)
+            throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            block.run();
+        }
+
+        /* Start from a clean heap so a collection doesn't land in the middle of our runs */
+        Runtime.getRuntime().gc();
+
+        long gcCountBefore = getGcCount();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            block.run();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+        int bytes = Debug.getThreadAllocSize();
+        long gcCountAfter = getGcCount();
+
+        Result result = new Result(name, iterations,
+                (double) elapsed / iterations,
+                (double) allocations / iterations,
+                (double) bytes / iterations,
+                gcCountBefore < 0 || gcCountAfter < 0 ? -1 : gcCountAfter - gcCountBefore);
+
+        Log.i(TAG, result.toString());
+        return result;
+    }
+
+    /**
+     * @return The number of garbage collections the runtime ran so far, or -1 before Marshmallow
+     */
+    private static long getGcCount() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return -1;
+        }
+        String count = Debug.getRuntimeStat("art.gc.gc-count");
+        return count == null ? -1 : Long.parseLong(count);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a benchmark, as opposed to a test: it takes long, and mostly logs its results (see
+ * {@link Benchmark}) rather than asserting anything about them.
+ * <p>
+ * connectedAndroidTest leaves out whatever carries this annotation, through the runner's
+ * notAnnotation argument (see app/build.gradle), so that running the tests doesn't mean inserting
+ * a hundred thousand rows several times over. To run the benchmarks as well, pass the
+ * withBenchmarks property:
+ * <p>
+ * <code>./gradlew -PwithBenchmarks connectedAndroidTest</code>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface BenchmarkTest {
+}
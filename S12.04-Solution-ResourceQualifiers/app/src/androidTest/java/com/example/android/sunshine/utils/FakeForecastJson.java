@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import java.util.Locale;
+
+/**
+ * Builds forecast responses in the same shape as the ones returned by the weather server, so
+ * tests and benchmarks can parse as many days as they like without touching the network.
+ */
+public final class FakeForecastJson {
+
+    public static final double LATITUDE = 37.4234;
+    public static final double LONGITUDE = -122.0891;
+
+    private static final int[] WEATHER_IDS = {200, 300, 500, 511, 600, 711, 800, 801, 803, 962};
+
+    private FakeForecastJson() {
+    }
+
+    /**
+     * Creates a successful response containing the given number of days.
+     *
+     * @param days Number of elements in the "list" array
+     * @return The JSON response as a String
+     */
+    public static String createForecastJson(int days) {
+        StringBuilder json = new StringBuilder(128 + days * 320);
+
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",\"coord\":{")
+                .append("\"lon\":").append(LONGITUDE)
+                .append(",\"lat\":").append(LATITUDE)
+                .append("},\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0143,\"cnt\":").append(days)
+                .append(",\"list\":[");
+
+        for (int i = 0; i < days; i++) {
+            if (i > 0) json.append(',');
+            json.append(createDayJson(i));
+        }
+
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Creates the response the server sends back for an unknown location.
+     *
+     * @return The JSON response as a String
+     */
+    public static String createErrorJson() {
+        return "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+    }
+
+    /**
+     * Values are derived from the index so that every day is different, but the same day always
+     * has the same values.
+     */
+    private static String createDayJson(int i) {
+        int weatherId = WEATHER_IDS[i % WEATHER_IDS.length];
+        double max = 20 + (i % 7) * 1.5;
+        double min = max - 8.25;
+
+        return String.format(Locale.US,
+                "{\"dt\":%d,"
+                        + "\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,\"night\":%.2f,"
+                        + "\"eve\":%.2f,\"morn\":%.2f},"
+                        + "\"pressure\":%.2f,\"humidity\":%d,"
+                        + "\"weather\":[{\"id\":%d,\"main\":\"Clear\","
+                        + "\"description\":\"sky is clear\",\"icon\":\"01d\"}],"
+                        + "\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                1475280000L + i * 86400L,
+                max - 2, min, max, min + 1, max - 3, min + 2,
+                1000 + (i % 30) * 0.75, 40 + (i % 50),
+                weatherId,
+                1.5 + (i % 10) * 0.25, (i * 37) % 360, i % 100);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A tiny HTTP/1.1 server that stands in for the weather server in tests. It listens on the
+ * loopback interface, answers every request with the response produced by its {@link Handler}
+ * and remembers the headers of every request it receives, so tests can check what was sent.
+ * <p>
+ * It only understands what our tests need: GET requests without a body, one request per
+ * connection. Each connection is served on a thread of its own, so clients that fetch in parallel
+ * are answered in parallel, as a real server would; the Handler must be safe to call from several
+ * threads at once.
+ */
+public class LocalHttpServer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Decides how to answer a request.
+     */
+    public interface Handler {
+        /**
+         * @param requestHeaders The headers of the request, with lower case names
+         * @return The response to send
+         */
+        Response handle(Map<String, String> requestHeaders);
+    }
+
+    /**
+     * A response to send back to the client.
+     */
+    public static class Response {
+
+        final int code;
+        final byte[] body;
+        final Map<String, String> headers = new LinkedHashMap<>();
+
+        public Response(int code) {
+            this(code, (byte[]) null);
+        }
+
+        public Response(int code, String body) {
+            this(code, body.getBytes(UTF_8));
+        }
+
+        public Response(int code, byte[] body) {
+            this.code = code;
+            this.body = body;
+        }
+
+        public Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+
+    private final Handler mHandler;
+    private final List<Map<String, String>> mRequests =
+            Collections.synchronizedList(new ArrayList<Map<String, String>>());
+
+    private ServerSocket mServerSocket;
+    private Thread mThread;
+
+    public LocalHttpServer(Handler handler) {
+        mHandler = handler;
+    }
+
+    /**
+     * Starts listening on a free port of the loopback interface.
+     */
+    public void start() throws IOException {
+        mServerSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServerSocket.isClosed()) {
+                    try {
+                        final Socket socket = mServerSocket.accept();
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    try {
+                                        serve(socket);
+                                    } finally {
+                                        socket.close();
+                                    }
+                                } catch (IOException e) {
+                                    /* The client went away */
+                                }
+                            }
+                        }, "LocalHttpServer-Connection").start();
+                    } catch (IOException e) {
+                        /* The server socket was closed by shutdown() */
+                    }
+                }
+            }
+        }, "LocalHttpServer");
+        mThread.start();
+    }
+
+    /**
+     * Stops the server and waits for it to finish.
+     */
+    public void shutdown() throws IOException, InterruptedException {
+        mServerSocket.close();
+        mThread.join();
+    }
+
+    /**
+     * @param path The path of the URL, starting with a slash
+     * @return A URL pointing at this server
+     */
+    public URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", mServerSocket.getLocalPort(), path);
+    }
+
+    /**
+     * @return The headers of every request received so far, in order, with lower case names
+     */
+    public List<Map<String, String>> getRequests() {
+        synchronized (mRequests) {
+            return new ArrayList<>(mRequests);
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), UTF_8));
+
+        /* The request line, such as "GET /weather HTTP/1.1". We answer every path the same. */
+        if (in.readLine() == null) return;
+
+        Map<String, String> requestHeaders = new HashMap<>();
+        String line;
+        while ((line = in.readLine()) != null && line.length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                requestHeaders.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        mRequests.add(requestHeaders);
+
+        Response response = mHandler.handle(requestHeaders);
+        byte[] body = response.body == null ? new byte[0] : response.body;
+
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(response.code).append(" Status\r\n");
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        head.append("Connection: close\r\n\r\n");
+
+        OutputStream out = socket.getOutputStream();
+        out.write(head.toString().getBytes(UTF_8));
+        out.write(body);
+        out.flush();
+    }
+}
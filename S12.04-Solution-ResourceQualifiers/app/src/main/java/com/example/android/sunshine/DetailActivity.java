@@ -29,13 +29,15 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 
+import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.databinding.ActivityDetailBinding;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 import com.example.android.sunshine.utilities.SunshineWeatherUtils;
 
 public class DetailActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor> {
+        LoaderManager.LoaderCallbacks<Cursor>,
+        SunshinePreferences.OnDisplayPreferencesChangeListener {
 
     /*
      * In this Activity, you can share the selected day's forecast. No social sharing is complete
@@ -87,6 +89,8 @@ public class DetailActivity extends AppCompatActivity implements
     /* The URI that is used to access the chosen day's weather details */
     private Uri mUri;
 
+    /* The cursor last delivered by the loader, kept to bind it again when the units change */
+    private Cursor mWeatherData;
 
     /*
      * This field is used for data binding. Normally, we would have to call findViewById many
@@ -109,6 +113,26 @@ public class DetailActivity extends AppCompatActivity implements
 
         /* This connects our Activity into the loader lifecycle. */
         getSupportLoaderManager().initLoader(ID_DETAIL_LOADER, null, this);
+
+        SunshinePreferences.registerOnDisplayPreferencesChangeListener(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        SunshinePreferences.unregisterOnDisplayPreferencesChangeListener(this);
+    }
+
+    /**
+     * Called when the user picks other units. The temperatures in the database are always in
+     * Celsius, so rather than loading the day again, we bind the cursor we already have, which
+     * formats the temperatures in the new units.
+     */
+    @Override
+    public void onDisplayPreferencesChanged() {
+        if (mWeatherData != null && !mWeatherData.isClosed()) {
+            bindWeatherData(mWeatherData);
+        }
     }
 
     /**
@@ -217,6 +241,17 @@ public class DetailActivity extends AppCompatActivity implements
      */
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mWeatherData = data;
+        bindWeatherData(data);
+    }
+
+    /**
+     * Binds the weather of the day in the cursor to our views, formatted according to the
+     * user's preferences.
+     *
+     * @param data The cursor holding the details of the day's weather
+     */
+    private void bindWeatherData(Cursor data) {
 
         /*
          * Before we bind the data to the UI that will display that data, we need to check the
@@ -382,11 +417,12 @@ public class DetailActivity extends AppCompatActivity implements
     /**
      * Called when a previously created loader is being reset, thus making its data unavailable.
      * The application should at this point remove any references it has to the Loader's data.
-     * Since we don't store any of this cursor's data, there are no references we need to remove.
+     * We keep a reference to the cursor itself (see onDisplayPreferencesChanged), so we drop it.
      *
      * @param loader The Loader that is being reset.
      */
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        mWeatherData = null;
     }
 }
\ No newline at end of file
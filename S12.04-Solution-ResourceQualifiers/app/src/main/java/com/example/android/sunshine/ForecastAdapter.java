@@ -17,7 +17,11 @@ package com.example.android.sunshine;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.support.annotation.NonNull;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -25,12 +29,21 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.example.android.sunshine.utilities.SunshineDateUtils;
-import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.example.android.sunshine.data.ForecastBatch;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * <p>
+ * When new data arrives, the adapter works out on a background thread which days were added,
+ * removed or changed, and tells the RecyclerView about exactly those. Rows that didn't change are
+ * left alone instead of all rows being bound and laid out again.
  */
 class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -63,7 +76,29 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     private boolean mUseTodayLayout;
 
-    private Cursor mCursor;
+    /*
+     * The formatting and DiffUtil work of all adapters runs on one background thread. Data
+     * changes are rare (a sync, a change of units), so the thread goes away when it has been idle
+     * for a while.
+     */
+    private static final long DIFF_THREAD_KEEP_ALIVE_SECONDS = 10;
+
+    private static final Executor sDiffExecutor = createDiffExecutor();
+
+    /* Results of the background diffs are handed back to the main thread through this Handler */
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /* The rows currently displayed, built from the last Cursor that was swapped in */
+    private ForecastRows mRows = ForecastRows.EMPTY;
+
+    /* The values copied from the last Cursor, kept to format the rows again if need be */
+    private ForecastRows.Values mValues = ForecastRows.Values.fromCursor(null);
+
+    /*
+     * Counts the updates of the rows. A diff that finishes after a newer update was started is
+     * out of date, and is dropped instead of being applied.
+     */
+    private int mUpdateGeneration;
 
     /**
      * Creates a ForecastAdapter.
@@ -78,6 +113,26 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         mUseTodayLayout = mContext.getResources().getBoolean(R.bool.use_today_layout);
     }
 
+    private static Executor createDiffExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                DIFF_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "ForecastDiff");
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * This gets called when each new ViewHolder is created. This happens when the RecyclerView
      * is laid out. Enough ViewHolders will be created to fill the screen and allow for scrolling.
@@ -122,6 +177,9 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      * position. In this method, we update the contents of the ViewHolder to display the weather
      * details for this particular position, using the "position" argument that is conveniently
      * passed into us.
+     * <p>
+     * Everything a row displays was formatted when the data was loaded (see {@link ForecastRow}),
+     * so all that is left to do here is hand it to the views.
      *
      * @param forecastAdapterViewHolder The ViewHolder which should be updated to represent the
      *                                  contents of the item at the given position in the data set.
@@ -129,90 +187,22 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-
-        /****************
-         * Weather Icon *
-         ****************/
-        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
-        int weatherImageId;
+        ForecastRow row = mRows.get(position);
 
-        int viewType = getItemViewType(position);
-
-        switch (viewType) {
+        /* The large or small artwork was picked to match the view type of the position */
+        forecastAdapterViewHolder.iconView.setImageResource(row.iconResourceId);
 
-            case VIEW_TYPE_TODAY:
-                weatherImageId = SunshineWeatherUtils
-                        .getLargeArtResourceIdForWeatherCondition(weatherId);
-                break;
+        forecastAdapterViewHolder.dateView.setText(row.dateText);
 
-            case VIEW_TYPE_FUTURE_DAY:
-                weatherImageId = SunshineWeatherUtils
-                        .getSmallArtResourceIdForWeatherCondition(weatherId);
-                break;
+        /* Set the text and content description (for accessibility purposes) */
+        forecastAdapterViewHolder.descriptionView.setText(row.description);
+        forecastAdapterViewHolder.descriptionView.setContentDescription(row.descriptionA11y);
 
-            default:
-                throw new IllegalArgumentException("Invalid view type, value of " + viewType);
-        }
+        forecastAdapterViewHolder.highTempView.setText(row.highText);
+        forecastAdapterViewHolder.highTempView.setContentDescription(row.highA11y);
 
-        forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
-
-        /****************
-         * Weather Date *
-         ****************/
-         /* Read date from the cursor */
-        long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-         /* Get human readable string using our utility method */
-        String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
-
-         /* Display friendly date string */
-        forecastAdapterViewHolder.dateView.setText(dateString);
-
-        /***********************
-         * Weather Description *
-         ***********************/
-        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
-         /* Create the accessibility (a11y) String from the weather description */
-        String descriptionA11y = mContext.getString(R.string.a11y_forecast, description);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.descriptionView.setText(description);
-        forecastAdapterViewHolder.descriptionView.setContentDescription(descriptionA11y);
-
-        /**************************
-         * High (max) temperature *
-         **************************/
-         /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String highString = SunshineWeatherUtils.formatTemperature(mContext, highInCelsius);
-         /* Create the accessibility (a11y) String from the weather description */
-        String highA11y = mContext.getString(R.string.a11y_high_temp, highString);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.highTempView.setText(highString);
-        forecastAdapterViewHolder.highTempView.setContentDescription(highA11y);
-
-        /*************************
-         * Low (min) temperature *
-         *************************/
-         /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String lowString = SunshineWeatherUtils.formatTemperature(mContext, lowInCelsius);
-        String lowA11y = mContext.getString(R.string.a11y_low_temp, lowString);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.lowTempView.setText(lowString);
-        forecastAdapterViewHolder.lowTempView.setContentDescription(lowA11y);
+        forecastAdapterViewHolder.lowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.lowTempView.setContentDescription(row.lowA11y);
     }
 
     /**
@@ -223,8 +213,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        return mRows.getCount();
     }
 
     /**
@@ -249,14 +238,105 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     /**
      * Swaps the cursor used by the ForecastAdapter for its weather data. This method is called by
      * MainActivity after a load has finished, as well as when the Loader responsible for loading
-     * the weather data is reset. When this method is called, we assume we have a completely new
-     * set of data, so we call notifyDataSetChanged to tell the RecyclerView to update.
+     * the weather data is reset.
+     * <p>
+     * The rows of the cursor are copied right away, so the adapter doesn't hold on to the cursor,
+     * which the Loader closes when it delivers the next one. On a background thread, the copy is
+     * then formatted into display-ready rows and compared with the rows on screen. Once that is
+     * done, only the rows that were added, removed or changed are passed on to the RecyclerView.
+     * Until then, the rows on screen keep being displayed.
+     * <p>
+     * A sync usually changes a few days at most, and a requery that returns the same data doesn't
+     * rebind any rows at all.
      *
      * @param newCursor the new cursor to use as ForecastAdapter's data source
      */
     void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
+        mValues = ForecastRows.Values.fromCursor(newCursor);
+        updateRows(mValues);
+    }
+
+    /**
+     * Shows the days of the forecast snapshot while the first Cursor is being loaded. Unlike
+     * swapCursor, the rows are formatted right here on the main thread: the point is to have
+     * rows for the very first frame, and formatting two weeks of days takes far less time than
+     * handing them to a background thread and back. Once the Cursor arrives, swapCursor compares
+     * its rows with these as usual, so if the snapshot was up to date, no row is bound again.
+     * <p>
+     * Does nothing once the adapter has been given data of its own, as that is always newer.
+     *
+     * @param snapshot The days of the forecast snapshot, sorted by date
+     * @return true if the rows of the snapshot are being shown
+     */
+    boolean showSnapshot(ForecastBatch snapshot) {
+        if (mUpdateGeneration != 0 || mRows.getCount() != 0 || snapshot.size() == 0) {
+            return false;
+        }
+
+        mValues = ForecastRows.Values.fromBatch(snapshot);
+        mRows = ForecastRows.build(mContext, mValues, mUseTodayLayout);
+        notifyItemRangeInserted(0, mRows.getCount());
+        return true;
+    }
+
+    /**
+     * Formats the rows again from the data the adapter already has, for when the way they are
+     * displayed changed but the data didn't, such as when the user picks other units. Nothing is
+     * queried: the rows are formatted and compared with the rows on screen on a background
+     * thread, just as after swapCursor, and the rows that now look different are bound again.
+     */
+    void reformatRows() {
+        updateRows(mValues);
+    }
+
+    /**
+     * Builds the rows to display from the values on a background thread, compares them with the
+     * rows on screen, and passes the differences on to the RecyclerView.
+     *
+     * @param newValues The values copied from a Cursor
+     */
+    private void updateRows(final ForecastRows.Values newValues) {
+        final ForecastRows oldRows = mRows;
+        final int generation = ++mUpdateGeneration;
+
+        /* With no new rows, there is nothing to format or compare, every row is simply removed */
+        if (newValues.getCount() == 0) {
+            mRows = ForecastRows.EMPTY;
+            if (oldRows.getCount() != 0) {
+                notifyItemRangeRemoved(0, oldRows.getCount());
+            }
+            return;
+        }
+
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ForecastRows newRows =
+                        ForecastRows.build(mContext, newValues, mUseTodayLayout);
+
+                /* The rows are sorted by date, so there are no moves to look for */
+                final DiffUtil.DiffResult diffResult = oldRows.getCount() == 0 ? null
+                        : DiffUtil.calculateDiff(
+                                new ForecastRows.DiffCallback(oldRows, newRows, mUseTodayLayout),
+                                false);
+
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mUpdateGeneration) {
+                            /* Newer rows are being worked on already */
+                            return;
+                        }
+                        mRows = newRows;
+                        if (diffResult == null) {
+                            notifyItemRangeInserted(0, newRows.getCount());
+                        } else {
+                            diffResult.dispatchUpdatesTo(ForecastAdapter.this);
+                        }
+                    }
+                });
+            }
+        });
     }
 
     /**
@@ -294,8 +374,9 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+            /* The row may have just been removed, with the RecyclerView not laid out yet */
+            if (adapterPosition == RecyclerView.NO_POSITION) return;
+            long dateInMillis = mRows.get(adapterPosition).date;
             mClickHandler.onClick(dateInMillis);
         }
     }
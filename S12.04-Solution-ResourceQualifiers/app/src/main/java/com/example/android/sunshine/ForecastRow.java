@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+/**
+ * One row of the forecast list, ready to be displayed: every String the row shows, including the
+ * ones for accessibility, has been formatted ahead of time. Binding a row to its views then comes
+ * down to handing these fields over, which keeps scrolling free of date formatting, resource
+ * lookups and String building.
+ * <p>
+ * Rows are created off the main thread whenever the data changes (see {@link ForecastRows}) and
+ * never change afterwards, so they can be handed between threads freely.
+ */
+final class ForecastRow {
+
+    /* Normalized UTC date of the day, the same as in the database */
+    final long date;
+
+    final int iconResourceId;
+
+    final String dateText;
+
+    final String description;
+    final String descriptionA11y;
+
+    final String highText;
+    final String highA11y;
+
+    final String lowText;
+    final String lowA11y;
+
+    private ForecastRow(long date, int iconResourceId, String dateText,
+                        String description, String descriptionA11y,
+                        String highText, String highA11y,
+                        String lowText, String lowA11y) {
+        this.date = date;
+        this.iconResourceId = iconResourceId;
+        this.dateText = dateText;
+        this.description = description;
+        this.descriptionA11y = descriptionA11y;
+        this.highText = highText;
+        this.highA11y = highA11y;
+        this.lowText = lowText;
+        this.lowA11y = lowA11y;
+    }
+
+    /**
+     * Formats the weather of one day the way the forecast list displays it. Safe to call from
+     * any thread.
+     *
+     * @param context       Used to access app resources and preferences
+     * @param date          Normalized UTC date of the day
+     * @param weatherId     The weather condition ID of the day
+     * @param highInCelsius High (max) temperature, in degrees celsius
+     * @param lowInCelsius  Low (min) temperature, in degrees celsius
+     * @param largeArt      Whether the row uses the large artwork of the "today" layout
+     * @return The row to display
+     */
+    static ForecastRow create(Context context, long date, int weatherId,
+                              double highInCelsius, double lowInCelsius, boolean largeArt) {
+
+        /****************
+         * Weather Icon *
+         ****************/
+        int iconResourceId = largeArt
+                ? SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId)
+                : SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId);
+
+        /****************
+         * Weather Date *
+         ****************/
+         /* Get human readable string using our utility method */
+        String dateText = SunshineDateUtils.getFriendlyDateString(context, date, false);
+
+        /***********************
+         * Weather Description *
+         ***********************/
+        String description = SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+         /* Create the accessibility (a11y) String from the weather description */
+        String descriptionA11y = context.getString(R.string.a11y_forecast, description);
+
+        /**************************
+         * High (max) temperature *
+         **************************/
+         /*
+          * If the user's preference for weather is fahrenheit, formatTemperature will convert
+          * the temperature. This method will also append either °C or °F to the temperature
+          * String.
+          */
+        String highText = SunshineWeatherUtils.formatTemperature(context, highInCelsius);
+        String highA11y = context.getString(R.string.a11y_high_temp, highText);
+
+        /*************************
+         * Low (min) temperature *
+         *************************/
+        String lowText = SunshineWeatherUtils.formatTemperature(context, lowInCelsius);
+        String lowA11y = context.getString(R.string.a11y_low_temp, lowText);
+
+        return new ForecastRow(date, iconResourceId, dateText,
+                description, descriptionA11y,
+                highText, highA11y,
+                lowText, lowA11y);
+    }
+
+    /**
+     * @param other Another row
+     * @return true if both rows would be displayed exactly the same
+     */
+    boolean looksTheSame(ForecastRow other) {
+        return date == other.date
+                && iconResourceId == other.iconResourceId
+                && dateText.equals(other.dateText)
+                && description.equals(other.description)
+                && descriptionA11y.equals(other.descriptionA11y)
+                && highText.equals(other.highText)
+                && highA11y.equals(other.highA11y)
+                && lowText.equals(other.lowText)
+                && lowA11y.equals(other.lowA11y);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+
+import com.example.android.sunshine.data.ForecastBatch;
+
+/**
+ * The rows {@link ForecastAdapter} displays, built from the Cursor the forecast loader delivers.
+ * Getting from a Cursor to the rows takes two steps:
+ * <p>
+ * 1) On the main thread, {@link Values#fromCursor(Cursor)} copies the columns the list shows.
+ * That is cheap (a few weeks of days, four columns), and it has to happen there, as the Loader
+ * closes the Cursor as soon as it delivers a newer one.
+ * 2) On a background thread, {@link #build(Context, Values, boolean)} formats every row into a
+ * display-ready {@link ForecastRow}, and {@link DiffCallback} compares the result with the rows
+ * on screen, so only the rows that look different have to be bound again.
+ * <p>
+ * Before the first load, the values can also come from the forecast snapshot (see
+ * {@link Values#fromBatch(ForecastBatch)}), so that the list has rows to show right away.
+ */
+final class ForecastRows {
+
+    /* No rows at all, what the adapter shows before the first load and after a reset */
+    static final ForecastRows EMPTY = new ForecastRows(new ForecastRow[0]);
+
+    private final ForecastRow[] mRows;
+
+    private ForecastRows(ForecastRow[] rows) {
+        mRows = rows;
+    }
+
+    /**
+     * Formats the copied values into the rows to display. Safe to call from any thread.
+     *
+     * @param context        Used to access app resources and preferences
+     * @param values         The values copied from the Cursor
+     * @param useTodayLayout Whether the first row has a layout of its own (see
+     *                       ForecastAdapter#getItemViewType)
+     * @return The rows to display
+     */
+    static ForecastRows build(Context context, Values values, boolean useTodayLayout) {
+        ForecastRow[] rows = new ForecastRow[values.getCount()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = ForecastRow.create(context,
+                    values.mDates[i],
+                    values.mWeatherIds[i],
+                    values.mMaxTemps[i],
+                    values.mMinTemps[i],
+                    useTodayLayout && i == 0);
+        }
+        return new ForecastRows(rows);
+    }
+
+    int getCount() {
+        return mRows.length;
+    }
+
+    ForecastRow get(int position) {
+        return mRows[position];
+    }
+
+    /**
+     * A copy of the columns of a forecast Cursor (or forecast snapshot) the list displays, in
+     * parallel arrays.
+     */
+    static final class Values {
+
+        private final long[] mDates;
+        private final double[] mMaxTemps;
+        private final double[] mMinTemps;
+        private final int[] mWeatherIds;
+
+        private Values(int count) {
+            mDates = new long[count];
+            mMaxTemps = new double[count];
+            mMinTemps = new double[count];
+            mWeatherIds = new int[count];
+        }
+
+        /**
+         * Copies the rows of a Cursor with the columns of
+         * {@link MainActivity#MAIN_FORECAST_PROJECTION}. The position of the Cursor is left after
+         * the last row.
+         *
+         * @param cursor The rows to copy, may be null
+         * @return A copy of the rows
+         */
+        static Values fromCursor(Cursor cursor) {
+            if (cursor == null) {
+                return new Values(0);
+            }
+
+            Values values = new Values(cursor.getCount());
+            cursor.moveToPosition(-1);
+            for (int i = 0; cursor.moveToNext(); i++) {
+                values.mDates[i] = cursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+                values.mMaxTemps[i] = cursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
+                values.mMinTemps[i] = cursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
+                values.mWeatherIds[i] = cursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+            }
+            return values;
+        }
+
+        /**
+         * Copies the columns the list displays from a batch of days, such as the forecast
+         * snapshot MainActivity shows before its loader has delivered the first Cursor.
+         *
+         * @param forecast The days to copy, sorted by date
+         * @return A copy of the days
+         */
+        static Values fromBatch(ForecastBatch forecast) {
+            Values values = new Values(forecast.size());
+            for (int i = 0; i < forecast.size(); i++) {
+                values.mDates[i] = forecast.getDate(i);
+                values.mMaxTemps[i] = forecast.getMaxTemp(i);
+                values.mMinTemps[i] = forecast.getMinTemp(i);
+                values.mWeatherIds[i] = forecast.getWeatherId(i);
+            }
+            return values;
+        }
+
+        int getCount() {
+            return mDates.length;
+        }
+    }
+
+    /**
+     * Tells DiffUtil how the rows before a data change relate to the rows after it. A row stands
+     * for one day, so rows with the same date are the same item. An item only has to be bound
+     * again if it would be displayed differently, which also covers everything the formatting
+     * depends on: the preferred units, and which day is today ("Today", "Tomorrow", ...).
+     */
+    static final class DiffCallback extends DiffUtil.Callback {
+
+        private final ForecastRows mOldRows;
+        private final ForecastRows mNewRows;
+        private final boolean mUseTodayLayout;
+
+        /**
+         * @param oldRows        The rows currently displayed
+         * @param newRows        The rows to display instead
+         * @param useTodayLayout Whether the first row has a layout of its own (see
+         *                       ForecastAdapter#getItemViewType)
+         */
+        DiffCallback(ForecastRows oldRows, ForecastRows newRows, boolean useTodayLayout) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+            mUseTodayLayout = useTodayLayout;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.getCount();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.getCount();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.mRows[oldItemPosition].date == mNewRows.mRows[newItemPosition].date;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            /* A row that moves into or out of the first position changes its layout */
+            if (mUseTodayLayout && (oldItemPosition == 0) != (newItemPosition == 0)) {
+                return false;
+            }
+            return mOldRows.mRows[oldItemPosition].looksTheSame(mNewRows.mRows[newItemPosition]);
+        }
+    }
+}
@@ -19,6 +19,8 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
@@ -30,15 +32,20 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.ProgressBar;
 
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
 
 public class MainActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor>,
-        ForecastAdapter.ForecastAdapterOnClickHandler {
+        ForecastAdapter.ForecastAdapterOnClickHandler,
+        SunshinePreferences.OnDisplayPreferencesChangeListener {
 
     private final String TAG = MainActivity.class.getSimpleName();
 
@@ -79,9 +86,19 @@ public class MainActivity extends AppCompatActivity implements
 
     private ProgressBar mLoadingIndicator;
 
+    /*
+     * For the startup trace: when onCreate was called, whether the first rows came from the
+     * forecast snapshot rather than the database, and how long it took until the first row was
+     * about to be drawn (-1 until then).
+     */
+    private long mCreateUptimeMillis;
+    private boolean mShowingSnapshot;
+    private long mTimeToFirstRowMillis = -1;
+
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mCreateUptimeMillis = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_forecast);
         getSupportActionBar().setElevation(0f);
@@ -145,6 +162,13 @@ public class MainActivity extends AppCompatActivity implements
 
         showLoading();
 
+        /*
+         * The database isn't open yet, and the loader will take a while to query it. Meanwhile,
+         * show the forecast the last sync left behind, if there is one.
+         */
+        showForecastSnapshot();
+        traceTimeToFirstRow();
+
         /*
          * Ensures a loader is initialized and active. If the loader doesn't already exist, one is
          * created and (if the activity/fragment is currently started) starts the loader. Otherwise
@@ -152,10 +176,87 @@ public class MainActivity extends AppCompatActivity implements
          */
         getSupportLoaderManager().initLoader(ID_FORECAST_LOADER, null, this);
 
+        /* Re-formats the forecast when the user picks other units (onDisplayPreferencesChanged) */
+        SunshinePreferences.registerOnDisplayPreferencesChangeListener(this);
+
         SunshineSyncUtils.initialize(this);
 
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        SunshinePreferences.unregisterOnDisplayPreferencesChangeListener(this);
+    }
+
+    /**
+     * Shows the forecast snapshot the last sync wrote (see ForecastSnapshot), so that the first
+     * frame already has the forecast in it. The snapshot is memory-mapped, not queried, so this
+     * is quick enough for onCreate. When the loader delivers the forecast from the database, the
+     * adapter compares it with the rows of the snapshot, and only the days that differ change.
+     */
+    private void showForecastSnapshot() {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        ForecastBatch snapshot = ForecastSnapshot.read(this,
+                SunshinePreferences.getPreferredWeatherLocation(this), today);
+        if (snapshot != null && mForecastAdapter.showSnapshot(snapshot)) {
+            mShowingSnapshot = true;
+            showWeatherDataView();
+        }
+    }
+
+    /**
+     * Logs the time from onCreate until the first row of the forecast is about to be drawn, and
+     * whether that row came from the snapshot or the database. Compare the two with
+     * "adb logcat -s MainActivity" after launching the app with and without a snapshot, or run
+     * ColdStartBenchmark.
+     */
+    private void traceTimeToFirstRow() {
+        final ViewTreeObserver observer = mRecyclerView.getViewTreeObserver();
+        observer.addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (mRecyclerView.getChildCount() == 0) return true;
+
+                mTimeToFirstRowMillis = SystemClock.uptimeMillis() - mCreateUptimeMillis;
+                Log.i(TAG, "Time to first row: " + mTimeToFirstRowMillis + " ms, from the "
+                        + (mShowingSnapshot ? "snapshot" : "database"));
+
+                /* The observer we registered with may have been replaced by now */
+                ViewTreeObserver current = mRecyclerView.getViewTreeObserver();
+                if (current.isAlive()) current.removeOnPreDrawListener(this);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return The time, in milliseconds, from onCreate until the first row of the forecast was
+     * about to be drawn, or -1 if no row has been drawn yet
+     */
+    @VisibleForTesting
+    long getTimeToFirstRowMillis() {
+        return mTimeToFirstRowMillis;
+    }
+
+    /**
+     * @return true if the first rows shown came from the forecast snapshot
+     */
+    @VisibleForTesting
+    boolean isShowingSnapshot() {
+        return mShowingSnapshot;
+    }
+
+    /**
+     * Called when the user picks other units. The temperatures in the database are always in
+     * Celsius, so the data we have is still good: rather than querying it again, the adapter
+     * formats the rows it has anew, and only the rows that now look different are bound again.
+     */
+    @Override
+    public void onDisplayPreferencesChanged() {
+        mForecastAdapter.reformatRows();
+    }
+
     /**
      * Uses the URI scheme for showing a location found on a map in conjunction with
      * an implicit Intent. This super-handy Intent is detailed in the "Common Intents" page of
@@ -239,7 +340,16 @@ public class MainActivity extends AppCompatActivity implements
         mForecastAdapter.swapCursor(data);
         if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
         mRecyclerView.smoothScrollToPosition(mPosition);
-        if (data.getCount() != 0) showWeatherDataView();
+        if (data.getCount() != 0) {
+            showWeatherDataView();
+        } else {
+            /*
+             * The forecast snapshot may have hidden the loading indicator already (see
+             * showForecastSnapshot). With no rows to show, bring it back until a sync fills the
+             * database, rather than leaving the user with an empty list.
+             */
+            showLoading();
+        }
     }
 
     /**
@@ -0,0 +1,401 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import java.util.Arrays;
+
+/**
+ * A batch of daily forecasts, stored column by column in arrays of primitives rather than as one
+ * ContentValues (a HashMap of boxed values) per day. Adding a day to a batch allocates nothing
+ * unless the arrays have to grow, and the provider can bind the values straight into a compiled
+ * insert statement.
+ * <p>
+ * Use {@link #bulkInsert(ContentResolver)} to insert a batch through the ContentProvider, or
+ * {@link #merge(ContentResolver, String)} to merge it with the forecast we already have. Because
+ * our provider lives in our own process, the arrays are handed over as they are, without being
+ * copied. Code that still speaks ContentValues can convert to and from a batch with
+ * {@link #toContentValues()} and {@link #fromContentValues(ContentValues[])}.
+ */
+public final class ForecastBatch {
+
+    /* The number of days a batch has room for before its arrays have to grow */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /* Bundle keys used to hand a batch over to the ContentProvider */
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_DATE = WeatherContract.WeatherEntry.COLUMN_DATE;
+    private static final String KEY_WEATHER_ID = WeatherContract.WeatherEntry.COLUMN_WEATHER_ID;
+    private static final String KEY_MIN_TEMP = WeatherContract.WeatherEntry.COLUMN_MIN_TEMP;
+    private static final String KEY_MAX_TEMP = WeatherContract.WeatherEntry.COLUMN_MAX_TEMP;
+    private static final String KEY_HUMIDITY = WeatherContract.WeatherEntry.COLUMN_HUMIDITY;
+    private static final String KEY_PRESSURE = WeatherContract.WeatherEntry.COLUMN_PRESSURE;
+    private static final String KEY_WIND_SPEED = WeatherContract.WeatherEntry.COLUMN_WIND_SPEED;
+    private static final String KEY_DEGREES = WeatherContract.WeatherEntry.COLUMN_DEGREES;
+
+    /**
+     * The columns of a day, in the order {@link #fromCursor(Cursor)} reads them. Use this as the
+     * projection of the query.
+     */
+    public static final String[] PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+    };
+
+    private int mSize;
+
+    private long[] mDate;
+    private int[] mWeatherId;
+    private double[] mMinTemp;
+    private double[] mMaxTemp;
+    private double[] mHumidity;
+    private double[] mPressure;
+    private double[] mWindSpeed;
+    private double[] mDegrees;
+
+    /**
+     * Creates an empty batch with room for a 14 day forecast.
+     */
+    public ForecastBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param capacity The number of days to make room for up front
+     */
+    public ForecastBatch(int capacity) {
+        mDate = new long[capacity];
+        mWeatherId = new int[capacity];
+        mMinTemp = new double[capacity];
+        mMaxTemp = new double[capacity];
+        mHumidity = new double[capacity];
+        mPressure = new double[capacity];
+        mWindSpeed = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    /**
+     * Adds one day to the end of the batch.
+     *
+     * @param date      Normalized UTC date of the day, in milliseconds
+     * @param weatherId Weather condition ID as returned by the API
+     * @param minTemp   Low temperature in °C
+     * @param maxTemp   High temperature in °C
+     * @param humidity  Humidity in percent
+     * @param pressure  Pressure in hPa
+     * @param windSpeed Wind speed
+     * @param degrees   Wind direction in meteorological degrees
+     */
+    public void add(long date, int weatherId, double minTemp, double maxTemp,
+                    double humidity, double pressure, double windSpeed, double degrees) {
+        if (mSize == mDate.length) {
+            grow();
+        }
+
+        int i = mSize++;
+        mDate[i] = date;
+        mWeatherId[i] = weatherId;
+        mMinTemp[i] = minTemp;
+        mMaxTemp[i] = maxTemp;
+        mHumidity[i] = humidity;
+        mPressure[i] = pressure;
+        mWindSpeed[i] = windSpeed;
+        mDegrees[i] = degrees;
+    }
+
+    /**
+     * @return The number of days in the batch
+     */
+    public int size() {
+        return mSize;
+    }
+
+    public long getDate(int index) {
+        return mDate[index];
+    }
+
+    public int getWeatherId(int index) {
+        return mWeatherId[index];
+    }
+
+    public double getMinTemp(int index) {
+        return mMinTemp[index];
+    }
+
+    public double getMaxTemp(int index) {
+        return mMaxTemp[index];
+    }
+
+    public double getHumidity(int index) {
+        return mHumidity[index];
+    }
+
+    public double getPressure(int index) {
+        return mPressure[index];
+    }
+
+    public double getWindSpeed(int index) {
+        return mWindSpeed[index];
+    }
+
+    public double getDegrees(int index) {
+        return mDegrees[index];
+    }
+
+    /**
+     * @param date Normalized UTC date, in milliseconds
+     * @return The index of the day with the given date, or -1 if the batch doesn't have it
+     */
+    public int indexOfDate(long date) {
+        for (int i = 0; i < mSize; i++) {
+            if (mDate[i] == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param index The position of a day within the batch
+     * @return The day as a set of column_name/value pairs, as it would be inserted
+     */
+    public ContentValues toContentValues(int index) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.WeatherEntry.COLUMN_DATE, mDate[index]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, mHumidity[index]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, mPressure[index]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, mWindSpeed[index]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, mDegrees[index]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, mMaxTemp[index]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, mMinTemp[index]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, mWeatherId[index]);
+        return values;
+    }
+
+    /**
+     * @return Every day of the batch as a set of column_name/value pairs, in order
+     */
+    public ContentValues[] toContentValues() {
+        ContentValues[] values = new ContentValues[mSize];
+        for (int i = 0; i < mSize; i++) {
+            values[i] = toContentValues(i);
+        }
+        return values;
+    }
+
+    /**
+     * Creates a batch from days given as sets of column_name/value pairs. Columns other than
+     * those of a forecast (such as _ID) are ignored.
+     *
+     * @param values The days, one set of column_name/value pairs per day
+     * @return The batch
+     * @throws IllegalArgumentException If a day is missing one of the columns of a forecast
+     */
+    public static ForecastBatch fromContentValues(ContentValues[] values) {
+        ForecastBatch batch = new ForecastBatch(values.length);
+        for (ContentValues value : values) {
+            batch.add(getLong(value, WeatherContract.WeatherEntry.COLUMN_DATE),
+                    (int) getLong(value, WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                    getDouble(value, WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                    getDouble(value, WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                    getDouble(value, WeatherContract.WeatherEntry.COLUMN_HUMIDITY),
+                    getDouble(value, WeatherContract.WeatherEntry.COLUMN_PRESSURE),
+                    getDouble(value, WeatherContract.WeatherEntry.COLUMN_WIND_SPEED),
+                    getDouble(value, WeatherContract.WeatherEntry.COLUMN_DEGREES));
+        }
+        return batch;
+    }
+
+    /**
+     * Creates a batch from the rows of a query with {@link #PROJECTION} as its projection, such as
+     * the forecast as it is stored after a merge. The cursor is read from its first row to its
+     * last, and left open.
+     *
+     * @param cursor The rows, one per day
+     * @return The batch
+     */
+    public static ForecastBatch fromCursor(Cursor cursor) {
+        ForecastBatch batch = new ForecastBatch(cursor.getCount());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            batch.add(cursor.getLong(0),
+                    cursor.getInt(1),
+                    cursor.getDouble(2),
+                    cursor.getDouble(3),
+                    cursor.getDouble(4),
+                    cursor.getDouble(5),
+                    cursor.getDouble(6),
+                    cursor.getDouble(7));
+        }
+        return batch;
+    }
+
+    /**
+     * Inserts every day of the batch into the weather table through Sunshine's ContentProvider,
+     * in one transaction. Like bulkInsert, existing days are replaced.
+     * <p>
+     * ContentResolver#call came with Honeycomb. Before that, the batch is converted to
+     * ContentValues and inserted with bulkInsert.
+     *
+     * @param contentResolver Used to reach the ContentProvider
+     * @return The number of days that were inserted
+     */
+    public int bulkInsert(ContentResolver contentResolver) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return contentResolver.bulkInsert(
+                    WeatherContract.WeatherEntry.CONTENT_URI, toContentValues());
+        }
+
+        Bundle result = contentResolver.call(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_BULK_INSERT_BATCH,
+                null,
+                toBundle());
+        return result == null ? 0 : result.getInt(WeatherContract.EXTRA_ROW_COUNT);
+    }
+
+    /**
+     * Merges the batch with the forecast we already have for a location, through Sunshine's
+     * ContentProvider. This is the same as bulkInsert with
+     * {@link WeatherContract.WeatherEntry#CONTENT_MERGE_URI} (or the merge URI of the location),
+     * and falls back on it before Honeycomb.
+     *
+     * @param contentResolver Used to reach the ContentProvider
+     * @param location        The location the forecast is for, or
+     *                        {@link WeatherContract.WeatherEntry#PRIMARY_LOCATION}
+     * @return The number of days that were inserted or updated
+     */
+    public int merge(ContentResolver contentResolver, String location) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            Uri mergeUri = WeatherContract.WeatherEntry.PRIMARY_LOCATION.equals(location)
+                    ? WeatherContract.WeatherEntry.CONTENT_MERGE_URI
+                    : WeatherContract.WeatherEntry.buildLocationMergeUri(location);
+            return contentResolver.bulkInsert(mergeUri, toContentValues());
+        }
+
+        Bundle result = contentResolver.call(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_MERGE_BATCH,
+                location,
+                toBundle());
+        return result == null ? 0 : result.getInt(WeatherContract.EXTRA_ROW_COUNT);
+    }
+
+    /**
+     * Wraps the batch in a Bundle, so that it can be passed to the ContentProvider. The arrays
+     * are not copied.
+     */
+    Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putInt(KEY_SIZE, mSize);
+        bundle.putLongArray(KEY_DATE, mDate);
+        bundle.putIntArray(KEY_WEATHER_ID, mWeatherId);
+        bundle.putDoubleArray(KEY_MIN_TEMP, mMinTemp);
+        bundle.putDoubleArray(KEY_MAX_TEMP, mMaxTemp);
+        bundle.putDoubleArray(KEY_HUMIDITY, mHumidity);
+        bundle.putDoubleArray(KEY_PRESSURE, mPressure);
+        bundle.putDoubleArray(KEY_WIND_SPEED, mWindSpeed);
+        bundle.putDoubleArray(KEY_DEGREES, mDegrees);
+        return bundle;
+    }
+
+    /**
+     * Unwraps a batch created by {@link #toBundle()}. The arrays are not copied.
+     *
+     * @param bundle The Bundle holding the batch
+     * @return The batch
+     * @throws IllegalArgumentException If the Bundle doesn't hold a complete batch
+     */
+    static ForecastBatch fromBundle(Bundle bundle) {
+        if (bundle == null) {
+            throw new IllegalArgumentException("No forecast batch to insert");
+        }
+
+        ForecastBatch batch = new ForecastBatch(0);
+        batch.mSize = bundle.getInt(KEY_SIZE);
+        batch.mDate = bundle.getLongArray(KEY_DATE);
+        batch.mWeatherId = bundle.getIntArray(KEY_WEATHER_ID);
+        batch.mMinTemp = bundle.getDoubleArray(KEY_MIN_TEMP);
+        batch.mMaxTemp = bundle.getDoubleArray(KEY_MAX_TEMP);
+        batch.mHumidity = bundle.getDoubleArray(KEY_HUMIDITY);
+        batch.mPressure = bundle.getDoubleArray(KEY_PRESSURE);
+        batch.mWindSpeed = bundle.getDoubleArray(KEY_WIND_SPEED);
+        batch.mDegrees = bundle.getDoubleArray(KEY_DEGREES);
+
+        int size = batch.mSize;
+        if (!hasRoomFor(batch.mDate, size) || !hasRoomFor(batch.mWeatherId, size)
+                || !hasRoomFor(batch.mMinTemp, size) || !hasRoomFor(batch.mMaxTemp, size)
+                || !hasRoomFor(batch.mHumidity, size) || !hasRoomFor(batch.mPressure, size)
+                || !hasRoomFor(batch.mWindSpeed, size) || !hasRoomFor(batch.mDegrees, size)) {
+            throw new IllegalArgumentException("Incomplete forecast batch");
+        }
+        return batch;
+    }
+
+    private void grow() {
+        int capacity = Math.max(DEFAULT_CAPACITY, mDate.length * 2);
+        mDate = Arrays.copyOf(mDate, capacity);
+        mWeatherId = Arrays.copyOf(mWeatherId, capacity);
+        mMinTemp = Arrays.copyOf(mMinTemp, capacity);
+        mMaxTemp = Arrays.copyOf(mMaxTemp, capacity);
+        mHumidity = Arrays.copyOf(mHumidity, capacity);
+        mPressure = Arrays.copyOf(mPressure, capacity);
+        mWindSpeed = Arrays.copyOf(mWindSpeed, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    private static long getLong(ContentValues values, String column) {
+        Long value = values.getAsLong(column);
+        if (value == null) {
+            throw new IllegalArgumentException("No value for " + column);
+        }
+        return value;
+    }
+
+    private static double getDouble(ContentValues values, String column) {
+        Double value = values.getAsDouble(column);
+        if (value == null) {
+            throw new IllegalArgumentException("No value for " + column);
+        }
+        return value;
+    }
+
+    private static boolean hasRoomFor(long[] array, int size) {
+        return array != null && array.length >= size;
+    }
+
+    private static boolean hasRoomFor(int[] array, int size) {
+        return array != null && array.length >= size;
+    }
+
+    private static boolean hasRoomFor(double[] array, int size) {
+        return array != null && array.length >= size;
+    }
+}
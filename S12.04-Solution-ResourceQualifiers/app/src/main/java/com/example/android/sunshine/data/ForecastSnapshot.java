@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * A compact copy of the forecast on disk, so that MainActivity can show the forecast as soon as
+ * it starts, before the database has even been opened. The sync writes a new snapshot every time
+ * it stores a new forecast, and MainActivity reads it while it waits for its loader to query the
+ * ContentProvider. The loader always has the last word: the snapshot only fills the first frame.
+ * <p>
+ * The file is a short header followed by one fixed-size record per day, so it can be read
+ * straight out of a memory-mapped buffer without parsing anything:
+ * <pre>
+ *   header: int magic, int version, int day count, short location length, location (UTF-8)
+ *   record: long date, int weather ID, double min, max, humidity, pressure, wind speed, degrees
+ * </pre>
+ * A 14 day forecast takes less than a kilobyte. The snapshot is written to a temporary file that
+ * is synced to disk and then renamed, so a reader only ever sees a complete snapshot, the old one
+ * or the new one. A snapshot that is damaged, of another format version or of another location is
+ * ignored, as if there were none.
+ */
+public final class ForecastSnapshot {
+
+    private static final String TAG = ForecastSnapshot.class.getSimpleName();
+
+    /* The name of the snapshot file within the app's cache directory */
+    static final String FILE_NAME = "forecast.snapshot";
+
+    /* "SNAP", so that a file that isn't a snapshot at all is recognized right away */
+    private static final int MAGIC = 0x534E4150;
+
+    /* Bump this whenever the layout of the file changes; older snapshots are then ignored */
+    private static final int VERSION = 1;
+
+    /* magic, version and day count, followed by the length of the location */
+    private static final int HEADER_SIZE = 3 * 4 + 2;
+
+    /* date, weather ID and the six doubles of a day */
+    static final int RECORD_SIZE = 8 + 4 + 6 * 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ForecastSnapshot() {
+    }
+
+    /**
+     * Writes the forecast as the new snapshot, replacing the old one. Call this off the main
+     * thread, once the forecast has been stored in the database.
+     *
+     * @param context  Used to find the app's cache directory
+     * @param location The location the forecast is for, see
+     *                 SunshinePreferences#getPreferredWeatherLocation
+     * @param forecast The forecast, sorted by date
+     * @return true if the snapshot was written
+     */
+    public static boolean write(Context context, String location, ForecastBatch forecast) {
+        File file = getFile(context);
+        File temp = new File(file.getPath() + ".tmp");
+
+        byte[] locationBytes = location.getBytes(UTF_8);
+        int count = forecast.size();
+        ByteBuffer buffer = ByteBuffer.allocate(
+                HEADER_SIZE + locationBytes.length + count * RECORD_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(count)
+                .putShort((short) locationBytes.length).put(locationBytes);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(forecast.getDate(i))
+                    .putInt(forecast.getWeatherId(i))
+                    .putDouble(forecast.getMinTemp(i))
+                    .putDouble(forecast.getMaxTemp(i))
+                    .putDouble(forecast.getHumidity(i))
+                    .putDouble(forecast.getPressure(i))
+                    .putDouble(forecast.getWindSpeed(i))
+                    .putDouble(forecast.getDegrees(i));
+        }
+        buffer.flip();
+
+        /*
+         * Write to a temporary file first, make sure it has reached the disk, and only then
+         * rename it. A crash halfway through never leaves a truncated snapshot behind.
+         */
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "Unable to store the forecast snapshot");
+                temp.delete();
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to store the forecast snapshot", e);
+            temp.delete();
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Reads the days of the snapshot from the given date onwards. The file is mapped into memory
+     * rather than read through a stream, so this is quick enough to call on the main thread while
+     * an activity is being created.
+     *
+     * @param context   Used to find the app's cache directory
+     * @param location  The location the forecast should be for. A snapshot of any other location
+     *                  is ignored.
+     * @param firstDate The normalized UTC date of the first day to read, usually today
+     * @return The days of the snapshot, or null if there is no usable snapshot
+     */
+    public static ForecastBatch read(Context context, String location, long firstDate) {
+        File file = getFile(context);
+        if (!file.exists()) return null;
+
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < HEADER_SIZE
+                    || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION) {
+                return null;
+            }
+
+            int count = buffer.getInt();
+            byte[] locationBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(locationBytes);
+            if (!location.equals(new String(locationBytes, UTF_8))) return null;
+
+            if (count < 0 || buffer.remaining() != count * RECORD_SIZE) {
+                Log.w(TAG, "Ignoring a damaged forecast snapshot");
+                return null;
+            }
+
+            ForecastBatch forecast = new ForecastBatch(count);
+            for (int i = 0; i < count; i++) {
+                long date = buffer.getLong();
+                if (date < firstDate) {
+                    /* A day that has passed since the snapshot was written */
+                    buffer.position(buffer.position() + RECORD_SIZE - 8);
+                    continue;
+                }
+                forecast.add(date,
+                        buffer.getInt(),
+                        buffer.getDouble(),
+                        buffer.getDouble(),
+                        buffer.getDouble(),
+                        buffer.getDouble(),
+                        buffer.getDouble(),
+                        buffer.getDouble());
+            }
+            return forecast;
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read the forecast snapshot", e);
+            return null;
+        } catch (BufferUnderflowException e) {
+            /* The file ended before its header said it would */
+            Log.w(TAG, "Ignoring a damaged forecast snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Deletes the snapshot, for when the forecast it holds no longer applies, such as when the
+     * preferred location changes or the database turns out to be empty.
+     *
+     * @param context Used to find the app's cache directory
+     */
+    public static void delete(Context context) {
+        getFile(context).delete();
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getApplicationContext().getCacheDir(), FILE_NAME);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            /* Nothing useful to do here */
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.R;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The user's preferences as they were at one point in time, read once and never changed
+ * afterwards. SunshinePreferences keeps the current snapshot (see
+ * {@link SunshinePreferences#getSnapshot(Context)}) and replaces it whenever a preference changes,
+ * so reading a preference on a hot path, such as formatting every temperature in the forecast
+ * list, is a field read instead of a SharedPreferences lookup with resource Strings as keys.
+ * <p>
+ * As a snapshot is immutable, it can be shared between threads freely, and the preferences read
+ * from one snapshot always agree with each other.
+ */
+public final class PreferencesSnapshot {
+
+    private final String mPreferredWeatherLocation;
+    private final boolean mMetric;
+
+    private final boolean mLocationLatLonAvailable;
+    private final double mLatitude;
+    private final double mLongitude;
+
+    private final boolean mNotificationsEnabled;
+    private final long mLastNotificationTimeMillis;
+
+    private final int mArchiveRetentionDays;
+
+    private final List<String> mSavedLocations;
+
+    /**
+     * Reads every preference Sunshine has.
+     *
+     * @param context Used to access resources
+     * @param sp      The SharedPreferences to read the preferences from
+     */
+    PreferencesSnapshot(Context context, SharedPreferences sp) {
+        mPreferredWeatherLocation = sp.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metric = context.getString(R.string.pref_units_metric);
+        mMetric = metric.equals(sp.getString(context.getString(R.string.pref_units_key), metric));
+
+        mLocationLatLonAvailable = sp.contains(SunshinePreferences.PREF_COORD_LAT)
+                && sp.contains(SunshinePreferences.PREF_COORD_LONG);
+        /* Coordinates are stored as the bits of a double, see SunshinePreferences */
+        mLatitude = Double.longBitsToDouble(sp.getLong(SunshinePreferences.PREF_COORD_LAT,
+                Double.doubleToRawLongBits(0.0)));
+        mLongitude = Double.longBitsToDouble(sp.getLong(SunshinePreferences.PREF_COORD_LONG,
+                Double.doubleToRawLongBits(0.0)));
+
+        mNotificationsEnabled = sp.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                context.getResources().getBoolean(R.bool.show_notifications_by_default));
+        mLastNotificationTimeMillis =
+                sp.getLong(context.getString(R.string.pref_last_notification), 0);
+
+        String defaultRetention = context.getString(R.string.pref_archive_retention_year);
+        String retention = sp.getString(
+                context.getString(R.string.pref_archive_retention_key), defaultRetention);
+        int retentionDays;
+        try {
+            retentionDays = Math.max(0, Integer.parseInt(retention));
+        } catch (NumberFormatException e) {
+            retentionDays = Integer.parseInt(defaultRetention);
+        }
+        mArchiveRetentionDays = retentionDays;
+
+        String savedLocations = sp.getString(SunshinePreferences.PREF_SAVED_LOCATIONS, "");
+        mSavedLocations = savedLocations.length() == 0
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(Arrays.asList(TextUtils.split(
+                        savedLocations, SunshinePreferences.SAVED_LOCATIONS_SEPARATOR)));
+    }
+
+    /**
+     * @return The location the user set, "94043,USA" by default
+     */
+    public String getPreferredWeatherLocation() {
+        return mPreferredWeatherLocation;
+    }
+
+    /**
+     * @return true if metric display should be used, false if imperial display should be used
+     */
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return true if the latitude and longitude of the location are known
+     */
+    public boolean isLocationLatLonAvailable() {
+        return mLocationLatLonAvailable;
+    }
+
+    /**
+     * @return The latitude of the location, 0 if it isn't known
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * @return The longitude of the location, 0 if it isn't known
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * @return true if the user prefers to see notifications
+     */
+    public boolean areNotificationsEnabled() {
+        return mNotificationsEnabled;
+    }
+
+    /**
+     * @return UNIX time of when the last notification was shown, 0 if none was
+     */
+    public long getLastNotificationTimeInMillis() {
+        return mLastNotificationTimeMillis;
+    }
+
+    /**
+     * @return The number of days of weather history to keep, 0 if none
+     */
+    public int getArchiveRetentionDays() {
+        return mArchiveRetentionDays;
+    }
+
+    /**
+     * @return The locations the user follows besides their preferred one, in the order they were
+     * added. The list can't be modified.
+     */
+    public List<String> getSavedLocations() {
+        return mSavedLocations;
+    }
+}
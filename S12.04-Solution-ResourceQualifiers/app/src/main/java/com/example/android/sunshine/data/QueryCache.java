@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+import android.support.v4.util.LruCache;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the results of recent weather queries in memory, so that asking the same question again
+ * (a CursorLoader restarting after a rotation, the detail screen of a day that was opened before,
+ * the notification) is answered without going to SQLite at all.
+ * <p>
+ * Results are keyed on everything that makes up a query: the URI, projection, selection (with
+ * its arguments) and sort order. They are held as plain arrays and handed out as a fresh
+ * MatrixCursor every time, so callers can move and close their cursor as they please.
+ * <p>
+ * The weather only changes when WeatherProvider writes it, and every write ends with a
+ * notifyChange. The provider calls {@link #invalidate(Uri)} right before it, which drops every
+ * result that the notified URI covers, and nothing else. The cache is bounded by the total number
+ * of rows it holds; the least recently used results go first.
+ */
+final class QueryCache {
+
+    private final LruCache<Key, Snapshot> mCache;
+
+    /* Bumped by every invalidation; see getGeneration */
+    private long mGeneration;
+    private int mInvalidationCount;
+
+    /**
+     * @param maxRows The most rows to hold, over all results together
+     */
+    QueryCache(int maxRows) {
+        mCache = new LruCache<Key, Snapshot>(maxRows) {
+            @Override
+            protected int sizeOf(Key key, Snapshot snapshot) {
+                /* An empty result still takes a slot */
+                return Math.max(1, snapshot.rows.length);
+            }
+        };
+    }
+
+    /**
+     * @param key The query
+     * @return A cursor over the cached result of the query, or null if it isn't cached
+     */
+    Cursor get(Key key) {
+        Snapshot snapshot = mCache.get(key);
+        return snapshot == null ? null : snapshot.newCursor();
+    }
+
+    /**
+     * Returns the current generation of the cache. Take it before running a query whose result
+     * is to be cached, and pass it to {@link #put(Key, Cursor, long)}: if the data was
+     * invalidated meanwhile, the result may already be stale and isn't cached.
+     *
+     * @return The number of invalidations so far
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Reads a query result into memory, caches it and closes it.
+     *
+     * @param key        The query
+     * @param cursor     The result of the query, read from the database
+     * @param generation The generation of the cache from before the query was run
+     * @return A cursor over the same result, in memory
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    Cursor put(Key key, Cursor cursor, long generation) {
+        Snapshot snapshot;
+        try {
+            snapshot = Snapshot.of(cursor);
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mCache.put(key, snapshot);
+            }
+        }
+        return snapshot.newCursor();
+    }
+
+    /**
+     * Drops every cached result that a change to the given URI affects: the results of the URI
+     * itself, of the URIs below it, and of the URIs above it. A change to the weather
+     * invalidates the forecast list and every single day, for instance, while the forecasts of
+     * other locations stay cached.
+     *
+     * @param changedUri The URI that is about to be notified of a change
+     */
+    synchronized void invalidate(Uri changedUri) {
+        mGeneration++;
+        mInvalidationCount++;
+
+        List<String> changedPath = changedUri.getPathSegments();
+        for (Key key : mCache.snapshot().keySet()) {
+            if (isRelated(key.uri.getPathSegments(), changedPath)) {
+                mCache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drops every cached result. Needed after the database was written without going through
+     * WeatherProvider, which tests do.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mInvalidationCount++;
+        mCache.evictAll();
+    }
+
+    int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    int getMissCount() {
+        return mCache.missCount();
+    }
+
+    /**
+     * @return The number of results dropped to make room for others (but not invalidated ones)
+     */
+    int getEvictionCount() {
+        return mCache.evictionCount();
+    }
+
+    synchronized int getInvalidationCount() {
+        return mInvalidationCount;
+    }
+
+    /**
+     * @return true if one path is the same as the other, or an ancestor of it
+     */
+    private static boolean isRelated(List<String> path, List<String> otherPath) {
+        int common = Math.min(path.size(), otherPath.size());
+        return path.subList(0, common).equals(otherPath.subList(0, common));
+    }
+
+    /**
+     * Everything that makes up a query.
+     */
+    static final class Key {
+
+        final Uri uri;
+        private final String[] mProjection;
+        private final String mSelection;
+        private final String[] mSelectionArgs;
+        private final String mSortOrder;
+        private final int mHashCode;
+
+        Key(Uri uri, String[] projection, String selection, String[] selectionArgs,
+            String sortOrder) {
+            this.uri = uri;
+            mProjection = projection == null ? null : projection.clone();
+            mSelection = selection;
+            mSelectionArgs = selectionArgs == null ? null : selectionArgs.clone();
+            mSortOrder = sortOrder;
+
+            int hashCode = uri.hashCode();
+            hashCode = 31 * hashCode + Arrays.hashCode(mProjection);
+            hashCode = 31 * hashCode + (mSelection == null ? 0 : mSelection.hashCode());
+            hashCode = 31 * hashCode + Arrays.hashCode(mSelectionArgs);
+            hashCode = 31 * hashCode + (mSortOrder == null ? 0 : mSortOrder.hashCode());
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key other = (Key) o;
+            return mHashCode == other.mHashCode
+                    && uri.equals(other.uri)
+                    && Arrays.equals(mProjection, other.mProjection)
+                    && equal(mSelection, other.mSelection)
+                    && Arrays.equals(mSelectionArgs, other.mSelectionArgs)
+                    && equal(mSortOrder, other.mSortOrder);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * The result of a query, copied out of its cursor. It is never modified after it is created,
+     * so it can be shared by every cursor made from it.
+     */
+    private static final class Snapshot {
+
+        final String[] columnNames;
+        final Object[][] rows;
+
+        private Snapshot(String[] columnNames, Object[][] rows) {
+            this.columnNames = columnNames;
+            this.rows = rows;
+        }
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        static Snapshot of(Cursor cursor) {
+            String[] columnNames = cursor.getColumnNames();
+            Object[][] rows = new Object[cursor.getCount()][];
+
+            cursor.moveToPosition(-1);
+            for (int row = 0; cursor.moveToNext(); row++) {
+                Object[] values = new Object[columnNames.length];
+                for (int column = 0; column < columnNames.length; column++) {
+                    switch (cursor.getType(column)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            values[column] = cursor.getLong(column);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            values[column] = cursor.getDouble(column);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            values[column] = cursor.getString(column);
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            values[column] = cursor.getBlob(column);
+                            break;
+                        default:
+                            values[column] = null;
+                    }
+                }
+                rows[row] = values;
+            }
+            return new Snapshot(columnNames, rows);
+        }
+
+        Cursor newCursor() {
+            MatrixCursor cursor = new MatrixCursor(columnNames, rows.length);
+            for (Object[] row : rows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+    }
+}
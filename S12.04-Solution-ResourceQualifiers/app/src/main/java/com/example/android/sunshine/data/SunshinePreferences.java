@@ -17,9 +17,19 @@ package com.example.android.sunshine.data;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
+import android.text.TextUtils;
 
 import com.example.android.sunshine.R;
+import com.example.android.sunshine.utilities.HttpCache;
+import com.example.android.sunshine.utilities.NetworkUtils;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public final class SunshinePreferences {
 
@@ -31,6 +41,134 @@ public final class SunshinePreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    /*
+     * The locations the user follows besides their preferred one, one per line, in the order they
+     * were added. We don't use a string set, as those need API 11 and don't keep any order.
+     */
+    public static final String PREF_SAVED_LOCATIONS = "saved_locations";
+
+    static final String SAVED_LOCATIONS_SEPARATOR = "\n";
+
+    /*
+     * The preferences as they are now. Read on every call to a getter below (isMetric is called
+     * for every temperature the forecast list formats), so the getters don't have to look the
+     * preference up in SharedPreferences, with keys they first have to load from resources.
+     */
+    private static volatile PreferencesSnapshot sSnapshot;
+
+    /*
+     * Replaces the snapshot whenever a preference changes, whoever changes it. SharedPreferences
+     * only keeps a weak reference to its listeners, so we have to keep this one alive ourselves.
+     */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sChangeListener;
+
+    /* The screens to tell when the way weather is displayed changes, see below */
+    private static final List<OnDisplayPreferencesChangeListener> sDisplayListeners =
+            new CopyOnWriteArrayList<>();
+
+    /**
+     * Told when a preference changes that only affects how weather is displayed, such as the
+     * units temperatures are shown in. The weather data itself is stored in metric units and
+     * doesn't change, so there is no need to query it again: the screens showing it only have to
+     * format what they already have anew.
+     */
+    public interface OnDisplayPreferencesChangeListener {
+        /**
+         * Called on the main thread, once the new preferences can be read.
+         */
+        void onDisplayPreferencesChanged();
+    }
+
+    /**
+     * @param listener Told when the way weather is displayed changes, until it is unregistered
+     */
+    public static void registerOnDisplayPreferencesChangeListener(
+            OnDisplayPreferencesChangeListener listener) {
+        sDisplayListeners.add(listener);
+    }
+
+    /**
+     * @param listener A listener passed to registerOnDisplayPreferencesChangeListener
+     */
+    public static void unregisterOnDisplayPreferencesChangeListener(
+            OnDisplayPreferencesChangeListener listener) {
+        sDisplayListeners.remove(listener);
+    }
+
+    /**
+     * Returns the user's preferences as they are now. Reading them from the snapshot doesn't
+     * allocate or look anything up, so use this where preferences are read over and over, and
+     * to read several preferences that should agree with each other. Safe to call from any
+     * thread.
+     * <p>
+     * The snapshot is replaced when a preference changes, by a change listener that runs on the
+     * main thread. The setters of this class replace it right away.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The preferences
+     */
+    public static PreferencesSnapshot getSnapshot(Context context) {
+        PreferencesSnapshot snapshot = sSnapshot;
+        if (snapshot == null) {
+            snapshot = reloadSnapshot(context);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads the preferences into a new snapshot. Code that writes the preferences directly
+     * rather than through this class, such as tests, should call this if it needs the change to
+     * be seen before the change listener has run.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The new snapshot
+     */
+    public static synchronized PreferencesSnapshot reloadSnapshot(Context context) {
+        /* The snapshot lives as long as the process, so it mustn't keep an Activity alive */
+        Context appContext = context.getApplicationContext() != null
+                ? context.getApplicationContext()
+                : context;
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(appContext);
+
+        if (sChangeListener == null) {
+            final Context listenerContext = appContext;
+            sChangeListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    reloadSnapshot(listenerContext);
+                }
+            };
+            sp.registerOnSharedPreferenceChangeListener(sChangeListener);
+        }
+
+        PreferencesSnapshot previous = sSnapshot;
+        PreferencesSnapshot snapshot = new PreferencesSnapshot(appContext, sp);
+        sSnapshot = snapshot;
+
+        if (previous != null && previous.isMetric() != snapshot.isMetric()) {
+            notifyDisplayPreferencesChanged();
+        }
+        return snapshot;
+    }
+
+    private static void notifyDisplayPreferencesChanged() {
+        Runnable notifyListeners = new Runnable() {
+            @Override
+            public void run() {
+                for (OnDisplayPreferencesChangeListener listener : sDisplayListeners) {
+                    listener.onDisplayPreferencesChanged();
+                }
+            }
+        };
+
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            notifyListeners.run();
+        } else {
+            new Handler(Looper.getMainLooper()).post(notifyListeners);
+        }
+    }
+
     /**
      * Helper method to handle setting location details in Preferences (city name, latitude,
      * longitude)
@@ -48,6 +186,7 @@ public final class SunshinePreferences {
         editor.putLong(PREF_COORD_LAT, Double.doubleToRawLongBits(lat));
         editor.putLong(PREF_COORD_LONG, Double.doubleToRawLongBits(lon));
         editor.apply();
+        reloadSnapshot(context);
     }
 
     /**
@@ -62,6 +201,7 @@ public final class SunshinePreferences {
         editor.remove(PREF_COORD_LAT);
         editor.remove(PREF_COORD_LONG);
         editor.apply();
+        reloadSnapshot(context);
     }
 
     /**
@@ -74,12 +214,7 @@ public final class SunshinePreferences {
      * "94043,USA" if SharedPreferences have not been implemented yet.
      */
     public static String getPreferredWeatherLocation(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForLocation = context.getString(R.string.pref_location_key);
-        String defaultLocation = context.getString(R.string.pref_location_default);
-
-        return sp.getString(keyForLocation, defaultLocation);
+        return getSnapshot(context).getPreferredWeatherLocation();
     }
 
     /**
@@ -89,19 +224,7 @@ public final class SunshinePreferences {
      * @return true if metric display should be used, false if imperial display should be used
      */
     public static boolean isMetric(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForUnits = context.getString(R.string.pref_units_key);
-        String defaultUnits = context.getString(R.string.pref_units_metric);
-        String preferredUnits = sp.getString(keyForUnits, defaultUnits);
-        String metric = context.getString(R.string.pref_units_metric);
-
-        boolean userPrefersMetric = false;
-        if (metric.equals(preferredUnits)) {
-            userPrefersMetric = true;
-        }
-
-        return userPrefersMetric;
+        return getSnapshot(context).isMetric();
     }
 
     /**
@@ -113,23 +236,17 @@ public final class SunshinePreferences {
      * @return an array containing the two coordinate values for the user's preferred location
      */
     public static double[] getLocationCoordinates(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        double[] preferredCoordinates = new double[2];
-
         /*
-         * This is a hack we have to resort to since you can't store doubles in SharedPreferences.
-         *
-         * Double.doubleToLongBits returns an integer corresponding to the bits of the given
-         * IEEE 754 double precision value.
-         *
-         * Double.longBitsToDouble does the opposite, converting a long (that represents a double)
-         * into the double itself.
+         * The coordinates are stored with a hack we have to resort to since you can't store
+         * doubles in SharedPreferences: Double.doubleToRawLongBits returns an integer
+         * corresponding to the bits of the given IEEE 754 double precision value, and
+         * Double.longBitsToDouble (see PreferencesSnapshot) does the opposite.
          */
-        preferredCoordinates[0] = Double
-                 .longBitsToDouble(sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
-        preferredCoordinates[1] = Double
-                .longBitsToDouble(sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
+        PreferencesSnapshot snapshot = getSnapshot(context);
+
+        double[] preferredCoordinates = new double[2];
+        preferredCoordinates[0] = snapshot.getLatitude();
+        preferredCoordinates[1] = snapshot.getLongitude();
 
         return preferredCoordinates;
     }
@@ -142,17 +259,7 @@ public final class SunshinePreferences {
      * @return true if lat/long are saved in SharedPreferences
      */
     public static boolean isLocationLatLonAvailable(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        boolean spContainLatitude = sp.contains(PREF_COORD_LAT);
-        boolean spContainLongitude = sp.contains(PREF_COORD_LONG);
-
-        boolean spContainBothLatitudeAndLongitude = false;
-        if (spContainLatitude && spContainLongitude) {
-            spContainBothLatitudeAndLongitude = true;
-        }
-
-        return spContainBothLatitudeAndLongitude;
+        return getSnapshot(context).isLocationLatLonAvailable();
     }
 
     /**
@@ -163,26 +270,12 @@ public final class SunshinePreferences {
      * @return true if the user prefers to see notifications, false otherwise
      */
     public static boolean areNotificationsEnabled(Context context) {
-        /* Key for accessing the preference for showing notifications */
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-
         /*
-         * In Sunshine, the user has the ability to say whether she would like notifications
-         * enabled or not. If no preference has been chosen, we want to be able to determine
-         * whether or not to show them. To do this, we reference a bool stored in bools.xml.
+         * In Sunshine, the user has the ability to say whether they would like notifications
+         * enabled or not. If no preference has been chosen, the snapshot falls back on a bool
+         * stored in bools.xml.
          */
-        boolean shouldDisplayNotificationsByDefault = context
-                .getResources()
-                .getBoolean(R.bool.show_notifications_by_default);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        /* If a value is stored with the key, we extract it here. If not, use a default. */
-        boolean shouldDisplayNotifications = sp
-                .getBoolean(displayNotificationsKey, shouldDisplayNotificationsByDefault);
-
-        return shouldDisplayNotifications;
+        return getSnapshot(context).areNotificationsEnabled();
     }
 
     /**
@@ -192,25 +285,17 @@ public final class SunshinePreferences {
      * @return UNIX time of when the last notification was shown
      */
     public static long getLastNotificationTimeInMillis(Context context) {
-        /* Key for accessing the time at which Sunshine last displayed a notification */
-        String lastNotificationKey = context.getString(R.string.pref_last_notification);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
         /*
          * Here, we retrieve the time in milliseconds when the last notification was shown. If
-         * SharedPreferences doesn't have a value for lastNotificationKey, we return 0. The reason
-         * we return 0 is because we compare the value returned from this method to the current
-         * system time. If the difference between the last notification time and the current time
-         * is greater than one day, we will show a notification again. When we compare the two
-         * values, we subtract the last notification time from the current system time. If the
-         * time of the last notification was 0, the difference will always be greater than the
-         * number of milliseconds in a day and we will show another notification.
+         * SharedPreferences doesn't have a value for it, we return 0. The reason we return 0 is
+         * because we compare the value returned from this method to the current system time. If
+         * the difference between the last notification time and the current time is greater
+         * than one day, we will show a notification again. When we compare the two values, we
+         * subtract the last notification time from the current system time. If the time of the
+         * last notification was 0, the difference will always be greater than the number of
+         * milliseconds in a day and we will show another notification.
          */
-        long lastNotificationTime = sp.getLong(lastNotificationKey, 0);
-
-        return lastNotificationTime;
+        return getSnapshot(context).getLastNotificationTimeInMillis();
     }
 
     /**
@@ -241,5 +326,115 @@ public final class SunshinePreferences {
         String lastNotificationKey = context.getString(R.string.pref_last_notification);
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
+        reloadSnapshot(context);
+    }
+
+    /**
+     * Returns the number of days of weather history the user wants us to keep in the archive
+     * (see WeatherContract.ArchiveEntry). This preference can be changed by the user within the
+     * SettingsFragment.
+     *
+     * @param context Used to access SharedPreferences
+     * @return The number of days to keep, or 0 if the user doesn't want any history kept
+     */
+    public static int getArchiveRetentionDays(Context context) {
+        return getSnapshot(context).getArchiveRetentionDays();
+    }
+
+    /**
+     * Returns true if days that have passed should be moved into the weather archive, rather
+     * than deleted.
+     *
+     * @param context Used to access SharedPreferences
+     * @return true if the user wants weather history kept
+     */
+    public static boolean isArchiveEnabled(Context context) {
+        return getArchiveRetentionDays(context) > 0;
+    }
+
+    /**
+     * Returns the most days the weather archive may hold, whatever the retention the user chose.
+     * This bounds the size of the archive, and is set in integers.xml.
+     *
+     * @param context Used to access resources
+     * @return The maximum number of days in the archive
+     */
+    public static int getArchiveMaxDays(Context context) {
+        return context.getResources().getInteger(R.integer.archive_max_days);
+    }
+
+    /**
+     * Returns the locations the user follows besides their preferred one. Their forecasts are
+     * synced along with the preferred location's, and stored under the location (see
+     * WeatherContract.WeatherEntry#buildLocationUri).
+     *
+     * @param context Used to access SharedPreferences
+     * @return The saved locations, in the order they were added
+     */
+    public static List<String> getSavedLocations(Context context) {
+        /* A copy, as callers such as addSavedLocation change the list */
+        return new ArrayList<>(getSnapshot(context).getSavedLocations());
+    }
+
+    /**
+     * Replaces the locations the user follows besides their preferred one.
+     *
+     * @param context   Used to access SharedPreferences
+     * @param locations The saved locations, in order. Empty locations and duplicates are skipped.
+     */
+    public static void setSavedLocations(Context context, List<String> locations) {
+        List<String> distinct = new ArrayList<>(locations.size());
+        for (String location : locations) {
+            String trimmed = location.trim();
+            if (trimmed.length() > 0 && !distinct.contains(trimmed)) {
+                distinct.add(trimmed);
+            }
+        }
+
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putString(PREF_SAVED_LOCATIONS, TextUtils.join(SAVED_LOCATIONS_SEPARATOR, distinct));
+        editor.apply();
+        reloadSnapshot(context);
+    }
+
+    /**
+     * Adds a location to the ones the user follows, unless it is there already.
+     *
+     * @param context  Used to access SharedPreferences
+     * @param location The location, as it is passed to the weather server
+     */
+    public static void addSavedLocation(Context context, String location) {
+        List<String> locations = getSavedLocations(context);
+        locations.add(location);
+        setSavedLocations(context, locations);
+    }
+
+    /**
+     * Removes a location from the ones the user follows, and deletes its forecast from the
+     * database along with the validators of its last response. As that goes to the
+     * ContentProvider and the disk, call this off the main thread.
+     *
+     * @param context  Used to access SharedPreferences, the ContentResolver and the HttpCache
+     * @param location The location to remove
+     */
+    public static void removeSavedLocation(Context context, String location) {
+        String trimmed = location.trim();
+        List<String> locations = getSavedLocations(context);
+        locations.remove(trimmed);
+        setSavedLocations(context, locations);
+
+        /* No sync will ever touch these rows again, so nothing else would delete them */
+        context.getContentResolver().delete(
+                WeatherContract.WeatherEntry.buildLocationUri(trimmed), null, null);
+
+        /*
+         * Without its rows, the validators no longer describe anything we have. Should the user
+         * add the location back, the server must send its forecast again rather than a 304.
+         */
+        URL url = NetworkUtils.getUrlForLocation(trimmed);
+        if (url != null) {
+            HttpCache.getInstance(context).put(trimmed, url, null);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
+
+/**
+ * Inserts rows into the weather table through a single compiled INSERT statement.
+ * <p>
+ * SQLiteDatabase#insert builds the SQL for every row from the keys of its ContentValues and has
+ * SQLite compile it again each time. Here, the statement is compiled once and every row is just
+ * bound to it by position, straight from primitives. Create one inserter per transaction and
+ * close it when the transaction is done.
+ * <p>
+ * Every row an inserter writes belongs to the same location, which is bound once, up front.
+ */
+final class WeatherBulkInserter {
+
+    private static final String TAG = WeatherBulkInserter.class.getSimpleName();
+
+    /*
+     * The columns in the order they are bound, followed by the location. Like the table's UNIQUE
+     * constraint, this INSERT replaces any existing row for the same location and date.
+     */
+    private static final String[] COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+    };
+
+    /* Binding positions start at 1 */
+    private static final int BIND_DATE = 1;
+    private static final int BIND_WEATHER_ID = 2;
+    private static final int BIND_MIN_TEMP = 3;
+    private static final int BIND_MAX_TEMP = 4;
+    private static final int BIND_HUMIDITY = 5;
+    private static final int BIND_PRESSURE = 6;
+    private static final int BIND_WIND_SPEED = 7;
+    private static final int BIND_DEGREES = 8;
+    private static final int BIND_LOCATION = 9;
+
+    private static final String SQL_INSERT = buildInsertSql();
+
+    private final SQLiteDatabase mDatabase;
+    private final SQLiteStatement mStatement;
+    private final String mLocation;
+
+    WeatherBulkInserter(SQLiteDatabase database) {
+        this(database, WeatherEntry.PRIMARY_LOCATION);
+    }
+
+    /**
+     * @param database The database to insert into, in a transaction
+     * @param location The location every inserted row belongs to; see
+     *                 {@link WeatherEntry#COLUMN_LOCATION}
+     */
+    WeatherBulkInserter(SQLiteDatabase database, String location) {
+        mDatabase = database;
+        mLocation = location;
+        mStatement = database.compileStatement(SQL_INSERT);
+
+        /* Bindings stay in place from one execution to the next, so this is done only once */
+        mStatement.bindString(BIND_LOCATION, location);
+    }
+
+    /**
+     * Inserts one row. If the values don't hold exactly the columns we bind (which would be a
+     * mistake on the caller's part), we fall back to SQLiteDatabase#insert, so the row gets the
+     * same treatment it always did. Either way, the row belongs to the inserter's location, even
+     * if the values name another one.
+     *
+     * @param values The column_name/value pairs of the row
+     * @return The row ID of the new row, or -1 if it couldn't be inserted
+     */
+    long insert(ContentValues values) {
+        if (values.size() != COLUMNS.length || !hasAllColumns(values)) {
+            values = new ContentValues(values);
+            values.put(WeatherEntry.COLUMN_LOCATION, mLocation);
+            return mDatabase.insert(WeatherEntry.TABLE_NAME, null, values);
+        }
+
+        mStatement.bindLong(BIND_DATE, values.getAsLong(WeatherEntry.COLUMN_DATE));
+        mStatement.bindLong(BIND_WEATHER_ID, values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+        mStatement.bindDouble(BIND_MIN_TEMP, values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
+        mStatement.bindDouble(BIND_MAX_TEMP, values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP));
+        mStatement.bindDouble(BIND_HUMIDITY, values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY));
+        mStatement.bindDouble(BIND_PRESSURE, values.getAsDouble(WeatherEntry.COLUMN_PRESSURE));
+        mStatement.bindDouble(BIND_WIND_SPEED, values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED));
+        mStatement.bindDouble(BIND_DEGREES, values.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+        return execute();
+    }
+
+    /**
+     * Inserts one day of a batch.
+     *
+     * @param batch The batch holding the day
+     * @param index The position of the day within the batch
+     * @return The row ID of the new row, or -1 if it couldn't be inserted
+     */
+    long insert(ForecastBatch batch, int index) {
+        mStatement.bindLong(BIND_DATE, batch.getDate(index));
+        mStatement.bindLong(BIND_WEATHER_ID, batch.getWeatherId(index));
+        mStatement.bindDouble(BIND_MIN_TEMP, batch.getMinTemp(index));
+        mStatement.bindDouble(BIND_MAX_TEMP, batch.getMaxTemp(index));
+        mStatement.bindDouble(BIND_HUMIDITY, batch.getHumidity(index));
+        mStatement.bindDouble(BIND_PRESSURE, batch.getPressure(index));
+        mStatement.bindDouble(BIND_WIND_SPEED, batch.getWindSpeed(index));
+        mStatement.bindDouble(BIND_DEGREES, batch.getDegrees(index));
+        return execute();
+    }
+
+    /**
+     * Releases the compiled statement.
+     */
+    void close() {
+        mStatement.close();
+    }
+
+    private long execute() {
+        try {
+            return mStatement.executeInsert();
+        } catch (SQLException e) {
+            /* Just like SQLiteDatabase#insert, report a failed row rather than throwing */
+            Log.e(TAG, "Error inserting weather row", e);
+            return -1;
+        }
+    }
+
+    private static boolean hasAllColumns(ContentValues values) {
+        for (String column : COLUMNS) {
+            if (values.get(column) == null) return false;
+        }
+        return true;
+    }
+
+    private static String buildInsertSql() {
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+                .append(WeatherEntry.TABLE_NAME)
+                .append(" (");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(COLUMNS[i]);
+        }
+        sql.append(", ").append(WeatherEntry.COLUMN_LOCATION).append(") VALUES (");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        return sql.append(", ?)").toString();
+    }
+}
@@ -56,6 +56,63 @@ public class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
+    /*
+     * The path of the weather archive: the days that have passed. It is deliberately not below
+     * PATH_WEATHER, so that changes to the archive don't wake up every observer of the forecast.
+     */
+    public static final String PATH_ARCHIVE = "archive";
+
+    /*
+     * The path of the forecasts of the user's saved locations, other than their preferred one
+     * (see WeatherEntry#buildLocationUri). Like the archive, it is not below PATH_WEATHER, so that
+     * syncing a saved location doesn't wake up the forecast list of the preferred one.
+     */
+    public static final String PATH_LOCATION = "location";
+
+    /*
+     * The path of the sync trace: how long the stages of the last syncs took (see SyncTrace).
+     * Only served by debug builds.
+     */
+    public static final String PATH_SYNC_TRACE = "sync_trace";
+
+    /*
+     * The ContentProvider#call method used to insert a ForecastBatch. Passing a batch of
+     * primitive arrays in a Bundle spares us a ContentValues per row; see ForecastBatch.
+     */
+    public static final String METHOD_BULK_INSERT_BATCH = "bulkInsertBatch";
+
+    /*
+     * The ContentProvider#call method used to merge a ForecastBatch with the forecast we already
+     * have, like bulkInsert with a merge URI does. The argument of the call is the location.
+     */
+    public static final String METHOD_MERGE_BATCH = "mergeBatch";
+
+    /*
+     * The key of the number of rows inserted (or, when merging, inserted or updated), in the
+     * result of METHOD_BULK_INSERT_BATCH and METHOD_MERGE_BATCH
+     */
+    public static final String EXTRA_ROW_COUNT = "rowCount";
+
+    /*
+     * The ContentProvider#call method that reports how well the provider's in-memory cache of
+     * query results is doing, in the EXTRA_CACHE_* keys below.
+     */
+    public static final String METHOD_GET_QUERY_CACHE_STATS = "getQueryCacheStats";
+
+    /*
+     * The ContentProvider#call method that empties the provider's cache of query results. Only
+     * needed after writing to the database without going through the provider.
+     */
+    public static final String METHOD_CLEAR_QUERY_CACHE = "clearQueryCache";
+
+    /* Queries answered from the cache, and queries that had to go to the database */
+    public static final String EXTRA_CACHE_HITS = "cacheHits";
+    public static final String EXTRA_CACHE_MISSES = "cacheMisses";
+
+    /* Results dropped to make room for others, and invalidations because the data changed */
+    public static final String EXTRA_CACHE_EVICTIONS = "cacheEvictions";
+    public static final String EXTRA_CACHE_INVALIDATIONS = "cacheInvalidations";
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -64,9 +121,37 @@ public class WeatherContract {
                 .appendPath(PATH_WEATHER)
                 .build();
 
+        /*
+         * Appending this query parameter to CONTENT_URI turns a bulkInsert into a merge. Rather
+         * than adding every row as is, the ContentProvider compares the new forecast with what
+         * it already has: only days that changed are written, days that have passed are
+         * deleted, and observers are notified once, and only if something actually changed.
+         */
+        public static final String QUERY_PARAMETER_MERGE = "merge";
+
+        /* The URI to bulkInsert a new forecast into, merging it with the weather we already have */
+        public static final Uri CONTENT_MERGE_URI = CONTENT_URI.buildUpon()
+                .appendQueryParameter(QUERY_PARAMETER_MERGE, Boolean.TRUE.toString())
+                .build();
+
         /* Used internally as the name of our weather table. */
         public static final String TABLE_NAME = "weather";
 
+        /* Used internally as the name of the covering index for forecast queries */
+        public static final String INDEX_FORECAST = "weather_forecast_index";
+
+        /*
+         * The location a row is the forecast of, as the user typed it in (the same string we
+         * query the weather server with). The forecast of the preferred location, which is what
+         * CONTENT_URI and every screen of the app show, is stored under PRIMARY_LOCATION, so it
+         * doesn't have to be rewritten when the user changes their preferred location; the next
+         * sync simply replaces it. Each location has at most one row per date.
+         */
+        public static final String COLUMN_LOCATION = "location";
+
+        /* The value of COLUMN_LOCATION for the forecast of the preferred location */
+        public static final String PRIMARY_LOCATION = "";
+
         /*
          * The date column will store the UTC date that correlates to the local date for which
          * each particular weather row represents. For example, if you live in the Eastern
@@ -123,6 +208,65 @@ public class WeatherContract {
                     .build();
         }
 
+        /**
+         * Builds the URI of the forecast of one of the user's saved locations. It supports the
+         * same operations as CONTENT_URI, scoped to that location: query, delete and bulkInsert,
+         * including merging (see {@link #buildLocationMergeUri(String)}).
+         *
+         * @param location The saved location, as it is passed to the weather server
+         * @return Uri of the forecast of that location
+         */
+        public static Uri buildLocationUri(String location) {
+            return BASE_CONTENT_URI.buildUpon()
+                    .appendPath(PATH_LOCATION)
+                    .appendPath(location)
+                    .build();
+        }
+
+        /**
+         * Builds the URI of a single day of the forecast of one of the user's saved locations.
+         *
+         * @param location The saved location, as it is passed to the weather server
+         * @param date     Normalized date in milliseconds
+         * @return Uri to query details about a single weather entry of that location
+         */
+        public static Uri buildLocationUriWithDate(String location, long date) {
+            return buildLocationUri(location).buildUpon()
+                    .appendPath(Long.toString(date))
+                    .build();
+        }
+
+        /**
+         * @param location The saved location, as it is passed to the weather server
+         * @return The URI to bulkInsert a new forecast of that location into, merging it with
+         * the weather we already have for it
+         */
+        public static Uri buildLocationMergeUri(String location) {
+            return buildLocationUri(location).buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_MERGE, Boolean.TRUE.toString())
+                    .build();
+        }
+
+        /**
+         * @param uri A URI built by {@link #buildLocationUri(String)} or
+         *            {@link #buildLocationUriWithDate(String, long)}
+         * @return The saved location the URI is scoped to
+         */
+        public static String getLocationFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        /**
+         * Tells whether a URI asks for new weather data to be merged with the existing data.
+         * See {@link #CONTENT_MERGE_URI}.
+         *
+         * @param uri The URI of an insert request
+         * @return true if the new rows should be merged with the existing ones
+         */
+        public static boolean isMergeUri(Uri uri) {
+            return Boolean.TRUE.toString().equals(uri.getQueryParameter(QUERY_PARAMETER_MERGE));
+        }
+
         /**
          * Returns just the selection part of the weather query from a normalized today value.
          * This is used to get a weather forecast from today's date. To make this easy to use
@@ -135,4 +279,100 @@ public class WeatherContract {
             return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Inner class that defines the table contents of the weather archive. When a forecast is
+     * merged in (see WeatherEntry#CONTENT_MERGE_URI), the days that have passed are moved from
+     * the weather table into this table instead of being thrown away, so the app can show how
+     * the weather has been trending. How long they are kept is up to the user; see
+     * SunshinePreferences#getArchiveRetentionDays. Only the preferred location is archived; the
+     * past days of saved locations are simply deleted.
+     *
+     * The archive has the same columns as the weather table, with one difference: there is no
+     * _ID column. Instead, the date is the primary key, which makes SQLite store the rows in date
+     * order. A range of days, such as the last year for a trend view, is then read as one
+     * contiguous run of the table, no matter how many years the archive holds.
+     */
+    public static final class ArchiveEntry {
+
+        /* The base CONTENT_URI used to query the archive table from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_ARCHIVE)
+                .build();
+
+        /* Used internally as the name of our archive table. */
+        public static final String TABLE_NAME = "weather_archive";
+
+        /**
+         * Returns the selection for the archived days before a given date. Used to enforce the
+         * age limit of the archive.
+         *
+         * @param normalizedDate The oldest date to keep, normalized
+         * @return The selection part of an archive query or delete
+         */
+        public static String getSqlSelectOlderThan(long normalizedDate) {
+            return WeatherEntry.COLUMN_DATE + " < " + normalizedDate;
+        }
+
+        /**
+         * Returns the selection for every archived day but the newest ones. Used to enforce the
+         * size limit of the archive.
+         *
+         * @param days The number of days to keep
+         * @return The selection part of an archive query or delete
+         */
+        public static String getSqlSelectBeyondNewest(int days) {
+            return WeatherEntry.COLUMN_DATE + " <= ("
+                    + "SELECT " + WeatherEntry.COLUMN_DATE + " FROM " + TABLE_NAME
+                    + " ORDER BY " + WeatherEntry.COLUMN_DATE + " DESC"
+                    + " LIMIT 1 OFFSET " + days + ")";
+        }
+    }
+
+    /*
+     * Inner class that defines the columns of the sync trace, the spans SyncTrace recorded for
+     * the stages of the last syncs, oldest first. It is kept in memory rather than in a table, and
+     * only debug builds serve it. From a computer, it can be read with
+     *
+     *     adb shell content query --uri content://com.example.android.sunshine/sync_trace
+     *
+     * The projection, selection and sort order of a query are ignored: every column is returned.
+     */
+    public static final class SyncTraceEntry {
+
+        /* The CONTENT_URI used to query the sync trace from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_SYNC_TRACE)
+                .build();
+
+        /* The position of the span among all spans recorded since the app started */
+        public static final String COLUMN_SEQUENCE = "sequence";
+
+        /* The sync the span belongs to; the spans of one sync share it */
+        public static final String COLUMN_SYNC_ID = "sync_id";
+
+        /* The name of the stage, such as "connect" or "parse" */
+        public static final String COLUMN_STAGE = "stage";
+
+        /* "ok", "failed" or "canceled" */
+        public static final String COLUMN_OUTCOME = "outcome";
+
+        /* When the stage started and how long it took, in nanoseconds of the monotonic clock */
+        public static final String COLUMN_START_NANOS = "start_nanos";
+        public static final String COLUMN_DURATION_NANOS = "duration_nanos";
+
+        /* A stage-specific detail, such as the HTTP response code or the number of days parsed */
+        public static final String COLUMN_DETAIL = "detail";
+
+        /* Every column of the sync trace, in the order the provider returns them */
+        public static final String[] COLUMNS = {
+                COLUMN_SEQUENCE,
+                COLUMN_SYNC_ID,
+                COLUMN_STAGE,
+                COLUMN_OUTCOME,
+                COLUMN_START_NANOS,
+                COLUMN_DURATION_NANOS,
+                COLUMN_DETAIL,
+        };
+    }
+}
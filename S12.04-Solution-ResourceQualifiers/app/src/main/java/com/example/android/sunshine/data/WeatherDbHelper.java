@@ -15,17 +15,28 @@
  */
 package com.example.android.sunshine.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.text.TextUtils;
+import android.util.Log;
 
+import com.example.android.sunshine.data.WeatherContract.ArchiveEntry;
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
+    private static final String TAG = WeatherDbHelper.class.getSimpleName();
+
     /*
      * This is the name of our database. Database names should be descriptive and end with the
      * .db extension.
@@ -42,11 +53,115 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      * versions of Sunshine could cause everything to break. Although that is certainly a rare
      * use-case, we wanted to watch out for it and warn you what could happen if you mistakenly
      * version your databases.
+     *
+     * Version 4 added the covering index on the forecast columns, version 5 the weather archive
+     * and version 6 the location column. See onUpgrade for how older databases are brought up to
+     * date.
+     */
+    private static final int DATABASE_VERSION = 6;
+
+    /* The weather table is moved aside under this name while it is rebuilt */
+    private static final String LEGACY_WEATHER_TABLE_NAME = "weather_legacy";
+
+    /*
+     * The columns copied from an older weather table; every NOT NULL column of the current one
+     * that has no default.
+     */
+    private static final String[] MIGRATED_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+    };
+
+    /*
+     * By default, we use write-ahead logging (WAL) on the platforms that support it. With the
+     * default rollback journal, a sync writing into the weather table locks out every reader
+     * until its transaction is done, so the CursorLoaders in MainActivity and DetailActivity (and
+     * the notification's query) stall behind it. With WAL, readers keep reading the last
+     * committed data while the write goes on, each on a connection of its own.
+     *
+     * How many reader connections there are is decided by the platform (the framework sizes the
+     * connection pool for WAL databases itself); there is no public API to change it. What we can
+     * tune is the size of each connection's cache of compiled statements.
+     */
+    public static final boolean DEFAULT_WRITE_AHEAD_LOGGING = true;
+
+    /*
+     * The number of compiled SQL statements each connection keeps around. Our provider only uses
+     * a handful of distinct statements, so the platform's default of 25 is already plenty;
+     * tune this if that ever changes. The platform doesn't allow more than 100.
      */
-    private static final int DATABASE_VERSION = 3;
+    public static final int DEFAULT_MAX_SQL_CACHE_SIZE = 25;
+
+    private final boolean mWriteAheadLogging;
+    private final int mMaxSqlCacheSize;
 
     public WeatherDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, DEFAULT_WRITE_AHEAD_LOGGING, DEFAULT_MAX_SQL_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a helper with a specific journal mode and statement cache size.
+     *
+     * @param context           Used to open or create the database
+     * @param name              The name of the database file
+     * @param writeAheadLogging true to use write-ahead logging (on API 11 and above), false to
+     *                          use the default rollback journal
+     * @param maxSqlCacheSize   The number of compiled statements each connection keeps around
+     *                          (on API 11 and above)
+     */
+    public WeatherDbHelper(Context context, String name, boolean writeAheadLogging,
+                           int maxSqlCacheSize) {
+        super(context, name, null, DATABASE_VERSION);
+        mWriteAheadLogging = writeAheadLogging;
+        mMaxSqlCacheSize = maxSqlCacheSize;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            /* Applied when the database is opened, before any connection is handed out */
+            setWriteAheadLoggingEnabled(writeAheadLogging);
+        }
+    }
+
+    /**
+     * @return true if this helper opens the database with write-ahead logging
+     */
+    public boolean isWriteAheadLoggingEnabled() {
+        return mWriteAheadLogging
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    /**
+     * Called when the database has been opened. This is where we apply the settings that
+     * SQLiteOpenHelper can't apply for us on older platforms.
+     *
+     * @param db The database.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            configureConnections(db);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void configureConnections(SQLiteDatabase db) {
+        /*
+         * Before Jelly Bean, SQLiteOpenHelper#setWriteAheadLoggingEnabled didn't exist, so we
+         * switch the journal mode on the open database instead.
+         */
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                && mWriteAheadLogging && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+
+        db.setMaxSqlCacheSize(mMaxSqlCacheSize);
     }
 
     /**
@@ -57,6 +172,17 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        createWeatherTable(sqLiteDatabase);
+        createForecastIndex(sqLiteDatabase);
+        createArchiveTable(sqLiteDatabase);
+    }
+
+    /**
+     * Creates the weather table, as it has been since DATABASE_VERSION 6.
+     *
+     * @param sqLiteDatabase The database.
+     */
+    private static void createWeatherTable(SQLiteDatabase sqLiteDatabase) {
 
         /*
          * This String will contain a simple SQL statement that will create a table that will
@@ -87,12 +213,22 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 WeatherEntry.COLUMN_DEGREES    + " REAL NOT NULL, "                    +
 
                 /*
-                 * To ensure this table can only contain one weather entry per date, we declare
-                 * the date column to be unique. We also specify "ON CONFLICT REPLACE". This tells
-                 * SQLite that if we have a weather entry for a certain date and we attempt to
-                 * insert another weather entry with that date, we replace the old weather entry.
+                 * Rows that don't say which location they are for belong to the preferred one,
+                 * which is what every query through WeatherEntry.CONTENT_URI reads.
+                 */
+                WeatherEntry.COLUMN_LOCATION   + " TEXT NOT NULL DEFAULT '"
+                        + WeatherEntry.PRIMARY_LOCATION + "', "                        +
+
+                /*
+                 * To ensure this table can only contain one weather entry per date of each
+                 * location, we declare the location and date to be unique together. We also
+                 * specify "ON CONFLICT REPLACE". This tells SQLite that if we have a weather
+                 * entry for a certain date and we attempt to insert another weather entry with
+                 * that date, we replace the old weather entry. The location comes first, so the
+                 * index behind the constraint keeps each location's days together, in date order.
                  */
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+                " UNIQUE (" + WeatherEntry.COLUMN_LOCATION + ", " + WeatherEntry.COLUMN_DATE
+                        + ") ON CONFLICT REPLACE);";
 
         /*
          * After we've spelled out our SQLite table creation statement above, we actually execute
@@ -102,12 +238,88 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
     }
 
     /**
-     * This database is only a cache for online data, so its upgrade policy is simply to discard
-     * the data and call through to onCreate to recreate the table. Note that this only fires if
-     * you change the version number for your database (in our case, DATABASE_VERSION). It does NOT
-     * depend on the version number for your application found in your app/build.gradle file. If
-     * you want to update the schema without wiping data, commenting out the current body of this
-     * method should be your top priority before modifying this method.
+     * Creates the covering index for forecast queries, added in DATABASE_VERSION 4 and led by the
+     * location since DATABASE_VERSION 6.
+     *
+     * @param sqLiteDatabase The database.
+     */
+    private static void createForecastIndex(SQLiteDatabase sqLiteDatabase) {
+
+        /*
+         * The UNIQUE constraint on the weather table already gives SQLite an index on the date
+         * column, which it uses to find a single day (the detail screen) or the days from today
+         * onwards (the forecast list). However, it then still has to look up every matching row
+         * in the table itself to read the other columns.
+         *
+         * This index also holds the columns that the forecast list (see
+         * MainActivity.MAIN_FORECAST_PROJECTION) and the notification (see
+         * NotificationUtils.WEATHER_NOTIFICATION_PROJECTION) read, in date order within each
+         * location (every query is scoped to one location; see WeatherProvider). That makes it
+         * a "covering" index: those queries are answered from the index alone, without ever
+         * touching the table, and without sorting. If you add a column to either projection, add
+         * it here too (and bump DATABASE_VERSION), or TestQueryPlans will tell you.
+         */
+        final String SQL_CREATE_FORECAST_INDEX =
+
+                "CREATE INDEX " + WeatherEntry.INDEX_FORECAST +
+                " ON " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOCATION   + ", " +
+                WeatherEntry.COLUMN_DATE       + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP   + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP   + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ");";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_FORECAST_INDEX);
+    }
+
+    /**
+     * Creates the table of archived weather, added in DATABASE_VERSION 5.
+     *
+     * @param sqLiteDatabase The database.
+     */
+    private static void createArchiveTable(SQLiteDatabase sqLiteDatabase) {
+
+        /*
+         * The archive keeps the days that have passed, possibly for years, and is read a range
+         * of days at a time. SQLite doesn't partition tables, but declaring the date as the
+         * INTEGER PRIMARY KEY gets us the part that matters: the date becomes the key of the
+         * table's own B-tree, so the rows are stored in date order, and reading a year of them
+         * touches only the pages holding that year. There is no separate index to keep up to
+         * date either, which keeps moving days into the archive cheap.
+         *
+         * As in the weather table, archiving a day we already have replaces it.
+         */
+        final String SQL_CREATE_ARCHIVE_TABLE =
+
+                "CREATE TABLE " + ArchiveEntry.TABLE_NAME + " (" +
+
+                WeatherEntry.COLUMN_DATE       + " INTEGER PRIMARY KEY ON CONFLICT REPLACE, " +
+
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, "                        +
+
+                WeatherEntry.COLUMN_MIN_TEMP   + " REAL NOT NULL, "                           +
+                WeatherEntry.COLUMN_MAX_TEMP   + " REAL NOT NULL, "                           +
+
+                WeatherEntry.COLUMN_HUMIDITY   + " REAL NOT NULL, "                           +
+                WeatherEntry.COLUMN_PRESSURE   + " REAL NOT NULL, "                           +
+
+                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, "                           +
+                WeatherEntry.COLUMN_DEGREES    + " REAL NOT NULL);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_ARCHIVE_TABLE);
+    }
+
+    /**
+     * Upgrades the database from an older DATABASE_VERSION, keeping the weather it holds. The
+     * weather table is only a cache of online data, but throwing it away means the first launch
+     * after an app update shows an empty list until a sync has made a full round trip to the
+     * server. So instead, we migrate the data in place, one version at a time (see
+     * {@link #migrate(SQLiteDatabase, int)}). Note that this only fires if you change the version
+     * number for your database (in our case, DATABASE_VERSION). It does NOT depend on the version
+     * number for your application found in your app/build.gradle file.
+     * <p>
+     * SQLiteOpenHelper runs this method in a transaction, so if any step fails, the database is
+     * left exactly as it was.
      *
      * @param sqLiteDatabase Database that is being upgraded
      * @param oldVersion     The old database version
@@ -115,7 +327,160 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        for (int version = oldVersion; version < newVersion; version++) {
+            migrate(sqLiteDatabase, version);
+        }
+    }
+
+    /**
+     * Handles a database of a newer version than ours, which is left behind when the user goes
+     * back to an older build of the app. We can't know what a future schema looks like, so
+     * rather than failing to open the database (which is what SQLiteOpenHelper does by default),
+     * we drop everything and start over. That is always safe for a cache; the next sync fills it
+     * again.
+     *
+     * @param sqLiteDatabase Database that is being downgraded
+     * @param oldVersion     The newer version the database is at
+     * @param newVersion     Our DATABASE_VERSION
+     */
+    @Override
+    public void onDowngrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        Log.w(TAG, "Downgrading the database from version " + oldVersion + " to "
+                + newVersion + ", recreating it");
+        recreate(sqLiteDatabase);
+    }
+
+    /**
+     * Migrates the database from one version to the next. When you change the schema, bump
+     * DATABASE_VERSION and add a case here that takes a database of the previous version to the
+     * new one, without losing its rows. Then add that version to TestDatabaseMigrations.
+     *
+     * @param sqLiteDatabase Database that is being upgraded
+     * @param fromVersion    The version to migrate from, to fromVersion + 1
+     */
+    private static void migrate(SQLiteDatabase sqLiteDatabase, int fromVersion) {
+        switch (fromVersion) {
+
+            /*
+             * Version 2 made every column NOT NULL, and version 3 made the date UNIQUE. SQLite
+             * can't add either to an existing table, so the table is rebuilt, and one step (from
+             * version 2) handles both.
+             */
+            case 1:
+                break;
+
+            case 2:
+                migrateLegacyWeatherTable(sqLiteDatabase);
+                break;
+
+            /*
+             * Version 4 added the covering index on the forecast columns. Version 6 changed the
+             * index, and its step builds it from scratch, so there is nothing to do here.
+             */
+            case 3:
+                break;
+
+            /* Version 5 added the weather archive */
+            case 4:
+                createArchiveTable(sqLiteDatabase);
+                break;
+
+            /* Version 6 added the location column */
+            case 5:
+                addLocationColumn(sqLiteDatabase);
+                break;
+
+            default:
+                throw new IllegalStateException(
+                        "No migration from database version " + fromVersion);
+        }
+    }
+
+    /**
+     * Moves the rows of a version 1 or 2 weather table into the current weather table. Those
+     * have the same columns as version 3, but version 1 allowed any of them to be NULL, and
+     * neither kept the dates unique.
+     * <p>
+     * A row with a NULL anywhere can't go into the current table, and isn't a day we could show
+     * anyway, so it is left behind; the next sync fills in the gap. Where a day appears more than
+     * once, the rows are copied in the order they were written, so the last one replaces the
+     * others, as it would have with the UNIQUE constraint.
+     *
+     * @param sqLiteDatabase Database that is being upgraded
+     */
+    private static void migrateLegacyWeatherTable(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("ALTER TABLE " + WeatherEntry.TABLE_NAME
+                + " RENAME TO " + LEGACY_WEATHER_TABLE_NAME);
+
+        createWeatherTable(sqLiteDatabase);
+
+        String columns = TextUtils.join(", ", MIGRATED_COLUMNS);
+        String complete = TextUtils.join(" IS NOT NULL AND ", MIGRATED_COLUMNS) + " IS NOT NULL";
+        sqLiteDatabase.execSQL("INSERT INTO " + WeatherEntry.TABLE_NAME + " (" + columns + ")"
+                + " SELECT " + columns + " FROM " + LEGACY_WEATHER_TABLE_NAME
+                + " WHERE " + complete
+                + " ORDER BY " + WeatherEntry._ID);
+
+        sqLiteDatabase.execSQL("DROP TABLE " + LEGACY_WEATHER_TABLE_NAME);
+    }
+
+    /**
+     * Rebuilds the weather table with the location column (unless it has it already, having just
+     * been created by an earlier step), and then the covering index. SQLite can add a column with
+     * ALTER TABLE, but not change the table's UNIQUE constraint, so the rows are copied into a new
+     * table instead. They all belonged to the preferred location, which is what the column's
+     * default says.
+     *
+     * @param sqLiteDatabase Database that is being upgraded
+     */
+    private static void addLocationColumn(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("DROP INDEX IF EXISTS " + WeatherEntry.INDEX_FORECAST);
+
+        if (!getColumnNames(sqLiteDatabase, WeatherEntry.TABLE_NAME)
+                .contains(WeatherEntry.COLUMN_LOCATION)) {
+            sqLiteDatabase.execSQL("ALTER TABLE " + WeatherEntry.TABLE_NAME
+                    + " RENAME TO " + LEGACY_WEATHER_TABLE_NAME);
+
+            createWeatherTable(sqLiteDatabase);
+
+            String columns = WeatherEntry._ID + ", " + TextUtils.join(", ", MIGRATED_COLUMNS);
+            sqLiteDatabase.execSQL("INSERT INTO " + WeatherEntry.TABLE_NAME + " (" + columns + ")"
+                    + " SELECT " + columns + " FROM " + LEGACY_WEATHER_TABLE_NAME);
+
+            sqLiteDatabase.execSQL("DROP TABLE " + LEGACY_WEATHER_TABLE_NAME);
+        }
+
+        createForecastIndex(sqLiteDatabase);
+    }
+
+    /**
+     * Drops every table we know of and creates the current schema from scratch.
+     *
+     * @param sqLiteDatabase Database that is being downgraded
+     */
+    private void recreate(SQLiteDatabase sqLiteDatabase) {
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ArchiveEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LEGACY_WEATHER_TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
-}
\ No newline at end of file
+
+    /**
+     * @param sqLiteDatabase The database.
+     * @param tableName      The table to look at
+     * @return The names of the columns of the table, or an empty set if there is no such table
+     */
+    private static Set<String> getColumnNames(SQLiteDatabase sqLiteDatabase, String tableName) {
+        Set<String> columnNames = new HashSet<>();
+        Cursor cursor = sqLiteDatabase.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                columnNames.add(cursor.getString(nameIndex));
+            }
+        } finally {
+            cursor.close();
+        }
+        return columnNames;
+    }
+}
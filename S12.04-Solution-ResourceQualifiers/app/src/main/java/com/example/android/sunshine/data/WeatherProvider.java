@@ -17,14 +17,26 @@ package com.example.android.sunshine.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.BuildConfig;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SyncTrace;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
@@ -45,6 +57,10 @@ public class WeatherProvider extends ContentProvider {
      */
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_ARCHIVE = 200;
+    public static final int CODE_LOCATION = 300;
+    public static final int CODE_LOCATION_WITH_DATE = 301;
+    public static final int CODE_SYNC_TRACE = 400;
 
     /*
      * The URI Matcher used by this content provider. The leading "s" in this variable name
@@ -52,11 +68,52 @@ public class WeatherProvider extends ContentProvider {
      * common convention in Android programming.
      */
     private static final UriMatcher sUriMatcher = buildUriMatcher();
+
+    /*
+     * Copies the days of a location before a given date from the weather table into the archive,
+     * replacing any days the archive already has.
+     */
+    private static final String SQL_ARCHIVE_PAST_DAYS;
+
+    static {
+        String columns = WeatherContract.WeatherEntry.COLUMN_DATE + ", "
+                + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", "
+                + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", "
+                + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", "
+                + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", "
+                + WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", "
+                + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", "
+                + WeatherContract.WeatherEntry.COLUMN_DEGREES;
+
+        SQL_ARCHIVE_PAST_DAYS = "INSERT INTO " + WeatherContract.ArchiveEntry.TABLE_NAME
+                + " (" + columns + ") SELECT " + columns
+                + " FROM " + WeatherContract.WeatherEntry.TABLE_NAME
+                + " WHERE " + WeatherContract.WeatherEntry.COLUMN_LOCATION + " = ?"
+                + " AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " < ?";
+    }
+
+    /*
+     * Scopes a query, update or delete of the weather table to one location. It always comes
+     * first, so the location is always the first selection argument.
+     */
+    private static final String LOCATION_SELECTION =
+            WeatherContract.WeatherEntry.COLUMN_LOCATION + " = ?";
+
+    /*
+     * The most rows the query cache holds. A 14 day forecast is 14 rows and a day on the detail
+     * screen is one, so this covers the forecasts of a good number of locations.
+     */
+    private static final int QUERY_CACHE_MAX_ROWS = 512;
+
     private WeatherDbHelper mOpenHelper;
 
+    /* Results of recent queries; see QueryCache */
+    private final QueryCache mQueryCache = new QueryCache(QUERY_CACHE_MAX_ROWS);
+
     /**
-     * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
-     * CODE_WEATHER_WITH_DATE constants defined above.
+     * Creates the UriMatcher that will match each URI to the CODE_WEATHER,
+     * CODE_WEATHER_WITH_DATE, CODE_ARCHIVE, CODE_LOCATION and CODE_LOCATION_WITH_DATE constants
+     * defined above.
      * <p>
      * It's possible you might be thinking, "Why create a UriMatcher when you can use regular
      * expressions instead? After all, we really just need to match some patterns, and we can
@@ -96,9 +153,82 @@ public class WeatherProvider extends ContentProvider {
          */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        /* This URI is content://com.example.android.sunshine/archive/ */
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE, CODE_ARCHIVE);
+
+        /*
+         * These URIs are content://com.example.android.sunshine/location/Berlin and
+         * content://com.example.android.sunshine/location/Berlin/1472214172: the same as the
+         * two weather URIs above, for one of the user's saved locations. The "*" matches any
+         * text, which is the location.
+         */
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/*", CODE_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/*/#",
+                CODE_LOCATION_WITH_DATE);
+
+        /*
+         * This URI is content://com.example.android.sunshine/sync_trace/, the timings of the
+         * last syncs. They are for us developers, so release builds don't know the URI at all.
+         */
+        if (BuildConfig.DEBUG) {
+            matcher.addURI(authority, WeatherContract.PATH_SYNC_TRACE, CODE_SYNC_TRACE);
+        }
+
         return matcher;
     }
 
+    /**
+     * Returns the location a weather URI is scoped to. The plain weather URIs are the forecast of
+     * the preferred location.
+     *
+     * @param uri   The URI of the request
+     * @param match The code sUriMatcher matched the URI with
+     * @return The value of {@link WeatherContract.WeatherEntry#COLUMN_LOCATION} to scope to
+     */
+    private static String getLocation(Uri uri, int match) {
+        if (match == CODE_LOCATION || match == CODE_LOCATION_WITH_DATE) {
+            return WeatherContract.WeatherEntry.getLocationFromUri(uri);
+        }
+        return WeatherContract.WeatherEntry.PRIMARY_LOCATION;
+    }
+
+    /**
+     * @param location A value of {@link WeatherContract.WeatherEntry#COLUMN_LOCATION}
+     * @return The URI to notify when the forecast of the location changes
+     */
+    private static Uri getNotificationUri(String location) {
+        if (WeatherContract.WeatherEntry.PRIMARY_LOCATION.equals(location)) {
+            return WeatherContract.WeatherEntry.CONTENT_URI;
+        }
+        return WeatherContract.WeatherEntry.buildLocationUri(location);
+    }
+
+    /**
+     * @param selection The selection of a request, may be null
+     * @return The selection, restricted to one location
+     */
+    private static String scopeSelection(String selection) {
+        if (selection == null || selection.length() == 0) {
+            return LOCATION_SELECTION;
+        }
+        return LOCATION_SELECTION + " AND (" + selection + ")";
+    }
+
+    /**
+     * @param location      The location to restrict the selection to
+     * @param selectionArgs The selection arguments of a request, may be null
+     * @return The arguments of {@link #scopeSelection(String)}
+     */
+    private static String[] scopeSelectionArgs(String location, String... selectionArgs) {
+        if (selectionArgs == null) {
+            return new String[]{location};
+        }
+        String[] scopedArgs = new String[selectionArgs.length + 1];
+        scopedArgs[0] = location;
+        System.arraycopy(selectionArgs, 0, scopedArgs, 1, selectionArgs.length);
+        return scopedArgs;
+    }
+
     /**
      * In onCreate, we initialize our content provider on startup. This method is called for all
      * registered content providers on the application main thread at application launch time.
@@ -132,21 +262,35 @@ public class WeatherProvider extends ContentProvider {
      * implement bulkInsert. In a normal ContentProvider's implementation, you will probably want
      * to provide proper functionality for the insert method as well.
      *
+     * If the URI is {@link WeatherContract.WeatherEntry#CONTENT_MERGE_URI} (or the merge URI of a
+     * saved location), the values are merged with the existing weather instead. See
+     * {@link #mergeWeather(ForecastBatch, String)}. Each day to merge must then hold every column
+     * of a forecast.
+     *
      * @param uri    The content:// URI of the insertion request.
      * @param values An array of sets of column_name/value pairs to add to the database.
      *               This must not be {@code null}.
      *
-     * @return The number of values that were inserted.
+     * @return The number of values that were inserted (or, when merging, inserted or updated).
      */
     @Override
     public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
 
-        switch (sUriMatcher.match(uri)) {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
 
             case CODE_WEATHER:
-                db.beginTransaction();
+            case CODE_LOCATION:
+                String location = getLocation(uri, match);
+                if (WeatherContract.WeatherEntry.isMergeUri(uri)) {
+                    return mergeWeather(ForecastBatch.fromContentValues(values), location);
+                }
+
+                beginWriteTransaction(db);
                 int rowsInserted = 0;
+                /* Compile the INSERT once and reuse it for every row */
+                WeatherBulkInserter inserter = new WeatherBulkInserter(db, location);
                 try {
                     for (ContentValues value : values) {
                         long weatherDate =
@@ -155,27 +299,368 @@ public class WeatherProvider extends ContentProvider {
                             throw new IllegalArgumentException("Date must be normalized to insert");
                         }
 
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        long _id = inserter.insert(value);
                         if (_id != -1) {
                             rowsInserted++;
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
+                    inserter.close();
                     db.endTransaction();
                 }
 
                 if (rowsInserted > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    notifyChange(getNotificationUri(location));
                 }
 
                 return rowsInserted;
 
+            /*
+             * Days normally reach the archive by being merged out of the weather table (see
+             * mergeWeather), but they can also be inserted directly, such as when restoring a
+             * backup of the history.
+             */
+            case CODE_ARCHIVE:
+                return bulkInsertArchive(uri, values);
+
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Inserts days into the weather archive in one transaction. Days the archive already has are
+     * replaced.
+     *
+     * @param uri    The archive URI, notified if anything was inserted
+     * @param values The days to archive, one set of column_name/value pairs per day
+     * @return The number of days that were inserted
+     */
+    private int bulkInsertArchive(Uri uri, ContentValues[] values) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+        int rowsInserted = 0;
+        beginWriteTransaction(db);
+        try {
+            for (ContentValues value : values) {
+                long weatherDate = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
+                    throw new IllegalArgumentException("Date must be normalized to insert");
+                }
+
+                long _id = db.insert(WeatherContract.ArchiveEntry.TABLE_NAME, null, value);
+                if (_id != -1) {
+                    rowsInserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (rowsInserted > 0) {
+            notifyChange(uri);
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * Inserts a whole {@link ForecastBatch} in one transaction. This is the same as
+     * {@link #bulkInsert(Uri, ContentValues[])}, but the values are bound straight from the
+     * batch's arrays, without a ContentValues (and its boxed values) per row.
+     *
+     * @param batch The days to insert
+     * @return The number of days that were inserted
+     */
+    private int bulkInsert(ForecastBatch batch) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final int size = batch.size();
+
+        for (int i = 0; i < size; i++) {
+            if (!SunshineDateUtils.isDateNormalized(batch.getDate(i))) {
+                throw new IllegalArgumentException("Date must be normalized to insert");
+            }
+        }
+
+        int rowsInserted = 0;
+        beginWriteTransaction(db);
+        WeatherBulkInserter inserter = new WeatherBulkInserter(db);
+        try {
+            for (int i = 0; i < size; i++) {
+                if (inserter.insert(batch, i) != -1) {
+                    rowsInserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            inserter.close();
+            db.endTransaction();
+        }
+
+        if (rowsInserted > 0) {
+            notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * Tells observers that the data at a URI changed. Every write ends here, so this is also
+     * where the cached query results it affects are dropped.
+     *
+     * @param uri The URI whose data changed
+     */
+    private void notifyChange(Uri uri) {
+        mQueryCache.invalidate(uri);
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * @param match The code sUriMatcher matched the URI of a query with
+     * @return true if the result of the query should be cached. Only the forecast is: it is what
+     * the screens ask for over and over, while the archive is read rarely and in large ranges. We
+     * need Cursor#getType to copy a result, which came with Honeycomb.
+     */
+    private static boolean isCacheable(int match) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && (match == CODE_WEATHER || match == CODE_WEATHER_WITH_DATE
+                || match == CODE_LOCATION || match == CODE_LOCATION_WITH_DATE);
+    }
+
+    /**
+     * Handles the provider-specific methods that don't fit query, bulkInsert and friends:
+     * <p>
+     *   - {@link WeatherContract#METHOD_BULK_INSERT_BATCH}, used by
+     *     {@link ForecastBatch#bulkInsert(ContentResolver)} to hand us a batch of primitive arrays
+     * <p>
+     *   - {@link WeatherContract#METHOD_MERGE_BATCH}, used by
+     *     {@link ForecastBatch#merge(ContentResolver, String)} to merge such a batch
+     * <p>
+     *   - {@link WeatherContract#METHOD_GET_QUERY_CACHE_STATS} and
+     *     {@link WeatherContract#METHOD_CLEAR_QUERY_CACHE}, to look into and reset the cache of
+     *     query results
+     *
+     * @param method The method to call
+     * @param arg    The location, for METHOD_MERGE_BATCH
+     * @param extras The arguments of the method
+     * @return The result of the method
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_BULK_INSERT_BATCH.equals(method)) {
+            int rowsInserted = bulkInsert(ForecastBatch.fromBundle(extras));
+
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_ROW_COUNT, rowsInserted);
+            return result;
+        }
+        if (WeatherContract.METHOD_MERGE_BATCH.equals(method)) {
+            String location = arg != null ? arg : WeatherContract.WeatherEntry.PRIMARY_LOCATION;
+            int rowsChanged = mergeWeather(ForecastBatch.fromBundle(extras), location);
+
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_ROW_COUNT, rowsChanged);
+            return result;
+        }
+        if (WeatherContract.METHOD_GET_QUERY_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.EXTRA_CACHE_HITS, mQueryCache.getHitCount());
+            result.putInt(WeatherContract.EXTRA_CACHE_MISSES, mQueryCache.getMissCount());
+            result.putInt(WeatherContract.EXTRA_CACHE_EVICTIONS, mQueryCache.getEvictionCount());
+            result.putInt(WeatherContract.EXTRA_CACHE_INVALIDATIONS,
+                    mQueryCache.getInvalidationCount());
+            return result;
+        }
+        if (WeatherContract.METHOD_CLEAR_QUERY_CACHE.equals(method)) {
+            mQueryCache.invalidateAll();
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Starts a transaction for writing weather data. Where the platform supports it, we start it
+     * in IMMEDIATE rather than EXCLUSIVE mode. In write-ahead logging mode (see WeatherDbHelper),
+     * that lets the CursorLoaders keep reading the previous data while we write.
+     *
+     * @param db The database to start the transaction on
+     */
+    private static void beginWriteTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    /**
+     * Merges a freshly downloaded forecast of one location with the weather we already have for
+     * it, in one transaction. Rows are matched up by their (unique) date:
+     * <p>
+     *   1) Days before today are moved into the weather archive (see
+     *      {@link WeatherContract.ArchiveEntry}), or deleted if the user doesn't keep any
+     *      weather history or this isn't the preferred location.
+     * <p>
+     *   2) Days we already have are only rewritten if any of their values changed.
+     * <p>
+     *   3) Days we don't have yet are inserted.
+     * <p>
+     * Compared to deleting everything and inserting the whole forecast again, this writes far
+     * less to flash storage, and observers (such as the CursorLoader in MainActivity) are
+     * notified only once, and only if something changed at all.
+     * <p>
+     * Each location is merged in a transaction of its own, so merging one location only holds the
+     * database for as long as its own few rows take to write.
+     *
+     * @param batch    The new forecast
+     * @param location The location the forecast is for
+     * @return The number of rows that were inserted or updated
+     */
+    private int mergeWeather(ForecastBatch batch, String location) {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        /*
+         * Index the new forecast by date, leaving out any days that have already passed. The map
+         * only holds positions within the batch; the values themselves stay in its arrays.
+         */
+        Map<Long, Integer> newDays = new HashMap<>(batch.size() * 2);
+        for (int i = 0; i < batch.size(); i++) {
+            long weatherDate = batch.getDate(i);
+            if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
+                throw new IllegalArgumentException("Date must be normalized to insert");
+            }
+            if (weatherDate >= today) {
+                newDays.put(weatherDate, i);
+            }
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final String dateSelection =
+                scopeSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " = ?");
+        final boolean archive = WeatherContract.WeatherEntry.PRIMARY_LOCATION.equals(location)
+                && SunshinePreferences.isArchiveEnabled(getContext());
+        final String todayString = Long.toString(today);
+
+        int rowsDeleted;
+        int rowsChanged = 0;
+
+        beginWriteTransaction(db);
+        try {
+            if (archive) {
+                db.execSQL(SQL_ARCHIVE_PAST_DAYS, new Object[]{location, today});
+            }
+
+            rowsDeleted = db.delete(
+                    WeatherContract.WeatherEntry.TABLE_NAME,
+                    scopeSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " < ?"),
+                    scopeSelectionArgs(location, todayString));
+
+            /*
+             * After the delete above, that's every row of the location; asking for them by date
+             * uses the index
+             */
+            Cursor existing = db.query(
+                    WeatherContract.WeatherEntry.TABLE_NAME,
+                    null,
+                    scopeSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?"),
+                    scopeSelectionArgs(location, todayString),
+                    null,
+                    null,
+                    null);
+            try {
+                int dateIndex = existing.getColumnIndexOrThrow(
+                        WeatherContract.WeatherEntry.COLUMN_DATE);
+
+                while (existing.moveToNext()) {
+                    long date = existing.getLong(dateIndex);
+
+                    /*
+                     * Days the server didn't send this time are left alone; they are deleted
+                     * once they have passed, or when the preferred location changes (see
+                     * SunshineSyncTask#forgetPreferredLocation).
+                     */
+                    Integer index = newDays.remove(date);
+                    if (index == null || isCurrentRowEqual(existing, batch, index)) continue;
+
+                    rowsChanged += db.update(
+                            WeatherContract.WeatherEntry.TABLE_NAME,
+                            batch.toContentValues(index),
+                            dateSelection,
+                            scopeSelectionArgs(location, Long.toString(date)));
+                }
+            } finally {
+                existing.close();
+            }
+
+            /* Whatever is left over are days we didn't have yet */
+            if (!newDays.isEmpty()) {
+                WeatherBulkInserter inserter = new WeatherBulkInserter(db, location);
+                try {
+                    for (int index : newDays.values()) {
+                        long _id = inserter.insert(batch, index);
+                        if (_id != -1) {
+                            rowsChanged++;
+                        }
+                    }
+                } finally {
+                    inserter.close();
+                }
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        if (rowsChanged > 0 || rowsDeleted > 0) {
+            notifyChange(getNotificationUri(location));
+        }
+
+        if (archive && rowsDeleted > 0) {
+            notifyChange(WeatherContract.ArchiveEntry.CONTENT_URI);
+        }
+
+        return rowsChanged;
+    }
+
+    /**
+     * Compares the row a Cursor is positioned on with a day of a new forecast.
+     *
+     * @param cursor The cursor over the full rows of the weather table, positioned on the row
+     *               to compare
+     * @param batch  The new forecast
+     * @param index  The position of the day within the batch
+     * @return true if writing the day would not change the row
+     */
+    private static boolean isCurrentRowEqual(Cursor cursor, ForecastBatch batch, int index) {
+        return isColumnEqual(cursor, WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                        batch.getWeatherId(index))
+                && isColumnEqual(cursor, WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                        batch.getMinTemp(index))
+                && isColumnEqual(cursor, WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                        batch.getMaxTemp(index))
+                && isColumnEqual(cursor, WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                        batch.getHumidity(index))
+                && isColumnEqual(cursor, WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                        batch.getPressure(index))
+                && isColumnEqual(cursor, WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                        batch.getWindSpeed(index))
+                && isColumnEqual(cursor, WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                        batch.getDegrees(index));
+    }
+
+    private static boolean isColumnEqual(Cursor cursor, String column, long value) {
+        int index = cursor.getColumnIndexOrThrow(column);
+        return !cursor.isNull(index) && cursor.getLong(index) == value;
+    }
+
+    private static boolean isColumnEqual(Cursor cursor, String column, double value) {
+        int index = cursor.getColumnIndexOrThrow(column);
+        return !cursor.isNull(index) && cursor.getDouble(index) == value;
+    }
+
     /**
      * Handles query requests from clients. We will use this method in Sunshine to query for all
      * of our weather data as well as to query for the weather on a particular day.
@@ -201,7 +686,25 @@ public class WeatherProvider extends ContentProvider {
          * Here's the switch statement that, given a URI, will determine what kind of request is
          * being made and query the database accordingly.
          */
-        switch (sUriMatcher.match(uri)) {
+        final int match = sUriMatcher.match(uri);
+
+        /*
+         * The forecast rarely changes between two identical queries, so we answer from memory
+         * when we can. See QueryCache.
+         */
+        QueryCache.Key cacheKey = null;
+        long cacheGeneration = 0;
+        if (isCacheable(match)) {
+            cacheKey = new QueryCache.Key(uri, projection, selection, selectionArgs, sortOrder);
+            cursor = mQueryCache.get(cacheKey);
+            if (cursor != null) {
+                cursor.setNotificationUri(getContext().getContentResolver(), uri);
+                return cursor;
+            }
+            cacheGeneration = mQueryCache.getGeneration();
+        }
+
+        switch (match) {
 
             /*
              * When sUriMatcher's match method is called with a URI that looks something like this
@@ -214,9 +717,10 @@ public class WeatherProvider extends ContentProvider {
              * programmatically using Uri's getLastPathSegment method.
              *
              * In this case, we want to return a cursor that contains one row of weather data for
-             * a particular date.
+             * a particular date. The same goes for a date of one of the saved locations.
              */
-            case CODE_WEATHER_WITH_DATE: {
+            case CODE_WEATHER_WITH_DATE:
+            case CODE_LOCATION_WITH_DATE: {
 
                 /*
                  * In order to determine the date associated with this URI, we look at the last
@@ -227,11 +731,11 @@ public class WeatherProvider extends ContentProvider {
 
                 /*
                  * The query method accepts a string array of arguments, as there may be more
-                 * than one "?" in the selection statement. Even though in our case, we only have
-                 * one "?", we have to create a string array that only contains one element
-                 * because this method signature accepts a string array.
+                 * than one "?" in the selection statement. In our case, there are two: the
+                 * location (see scopeSelection) and the date.
                  */
-                String[] selectionArguments = new String[]{normalizedUtcDateString};
+                String[] selectionArguments =
+                        scopeSelectionArgs(getLocation(uri, match), normalizedUtcDateString);
 
                 cursor = mOpenHelper.getReadableDatabase().query(
                         /* Table we are going to query */
@@ -252,7 +756,7 @@ public class WeatherProvider extends ContentProvider {
                          * within the selectionArguments array will be inserted into the
                          * selection statement by SQLite under the hood.
                          */
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
+                        scopeSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " = ? "),
                         selectionArguments,
                         null,
                         null,
@@ -270,12 +774,36 @@ public class WeatherProvider extends ContentProvider {
              * to return all of the weather in our weather table.
              *
              * In this case, we want to return a cursor that contains every row of weather data
-             * in our weather table.
+             * of the preferred location in our weather table (or, for a URI of a saved
+             * location, every row of that location).
              */
-            case CODE_WEATHER: {
+            case CODE_WEATHER:
+            case CODE_LOCATION: {
                 cursor = mOpenHelper.getReadableDatabase().query(
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         projection,
+                        scopeSelection(selection),
+                        scopeSelectionArgs(getLocation(uri, match), selectionArgs),
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            /*
+             * When sUriMatcher's match method is called with a URI that looks EXACTLY like this
+             *
+             *      content://com.example.android.sunshine/archive/
+             *
+             * we return the archived days that match the selection. As the archive is stored
+             * in date order, asking for a range of dates (and sorting by date) is cheap however
+             * large the archive grows.
+             */
+            case CODE_ARCHIVE: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.ArchiveEntry.TABLE_NAME,
+                        projection,
                         selection,
                         selectionArgs,
                         null,
@@ -285,14 +813,48 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
 
+            /*
+             * In debug builds, the spans SyncTrace recorded for the last syncs. They are copied
+             * out of its ring buffer, so the cursor doesn't change as new syncs are recorded.
+             */
+            case CODE_SYNC_TRACE: {
+                cursor = querySyncTrace();
+                break;
+            }
+
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
 
+        if (cacheKey != null) {
+            cursor = mQueryCache.put(cacheKey, cursor, cacheGeneration);
+        }
+
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
         return cursor;
     }
 
+    /**
+     * @return A cursor over the spans of the app's SyncTrace, with the columns of
+     * {@link WeatherContract.SyncTraceEntry#COLUMNS}, oldest first
+     */
+    private static Cursor querySyncTrace() {
+        List<SyncTrace.Span> spans = SyncTrace.getInstance().getSpans();
+        MatrixCursor cursor =
+                new MatrixCursor(WeatherContract.SyncTraceEntry.COLUMNS, spans.size());
+        for (SyncTrace.Span span : spans) {
+            cursor.addRow(new Object[]{
+                    span.sequence,
+                    span.syncId,
+                    SyncTrace.getStageName(span.stage),
+                    SyncTrace.getOutcomeName(span.outcome),
+                    span.startNanos,
+                    span.durationNanos,
+                    span.detail});
+        }
+        return cursor;
+    }
+
     /**
      * Deletes data at a given URI with optional arguments for more fine tuned deletions.
      *
@@ -316,11 +878,22 @@ public class WeatherProvider extends ContentProvider {
          */
         if (null == selection) selection = "1";
 
-        switch (sUriMatcher.match(uri)) {
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
 
+            /* Only the rows of the location the URI is scoped to are deleted */
             case CODE_WEATHER:
+            case CODE_LOCATION:
                 numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
                         WeatherContract.WeatherEntry.TABLE_NAME,
+                        scopeSelection(selection),
+                        scopeSelectionArgs(getLocation(uri, match), selectionArgs));
+
+                break;
+
+            case CODE_ARCHIVE:
+                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        WeatherContract.ArchiveEntry.TABLE_NAME,
                         selection,
                         selectionArgs);
 
@@ -332,7 +905,7 @@ public class WeatherProvider extends ContentProvider {
 
         /* If we actually deleted any rows, notify that a change has occurred to this URI */
         if (numRowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         return numRowsDeleted;
@@ -375,6 +948,27 @@ public class WeatherProvider extends ContentProvider {
         throw new RuntimeException("We are not implementing update in Sunshine");
     }
 
+    /**
+     * Prints how the query cache is doing and the timings of the last syncs (see SyncTrace).
+     * Android calls this for
+     *
+     *     adb shell dumpsys activity provider com.example.android.sunshine/.data.WeatherProvider
+     *
+     * on Jelly Bean MR2 and up, as long as the app is running.
+     *
+     * @param fd     The raw file descriptor the dump is being sent to
+     * @param writer The PrintWriter to print the dump to
+     * @param args   Additional arguments to the dump request, ignored
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Query cache: " + mQueryCache.getHitCount() + " hits, "
+                + mQueryCache.getMissCount() + " misses, "
+                + mQueryCache.getEvictionCount() + " evictions, "
+                + mQueryCache.getInvalidationCount() + " invalidations");
+        SyncTrace.getInstance().dump(writer);
+    }
+
     /**
      * You do not need to call this method. This is a method specifically to assist the testing
      * framework in running smoothly. You can read more at:
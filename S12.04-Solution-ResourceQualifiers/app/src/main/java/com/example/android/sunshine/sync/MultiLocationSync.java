@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.v4.os.CancellationSignal;
+import android.util.Log;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.utilities.HttpCache;
+import com.example.android.sunshine.utilities.NetworkResponse;
+import com.example.android.sunshine.utilities.NetworkUtils;
+import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Syncs the forecasts of the user's saved locations (see SunshinePreferences#getSavedLocations).
+ * <p>
+ * Most of the time a sync spends is spent waiting for the weather server, so rather than fetching
+ * one location after the other, several are fetched at the same time. How many is bounded, so a
+ * user following 20 cities doesn't open 20 connections at once.
+ * <p>
+ * Each location is fetched, parsed and merged into the database on its own: its write is a small
+ * transaction of its own (see ForecastBatch#merge), so a slow or failing city doesn't hold back
+ * the others, and doesn't keep the database locked while it is still downloading.
+ */
+public final class MultiLocationSync {
+
+    private static final String TAG = MultiLocationSync.class.getSimpleName();
+
+    /* How many locations are fetched at the same time, unless told otherwise */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * What happened to the locations of one sync.
+     */
+    public static final class Result {
+
+        /* Locations whose new forecast was merged into the database */
+        public final int updated;
+
+        /* Locations the server had nothing new for, or sent no forecast for */
+        public final int unchanged;
+
+        /* Locations that failed or were canceled */
+        public final int failed;
+
+        /* The time the whole sync took */
+        public final long elapsedMillis;
+
+        Result(int updated, int unchanged, int failed, long elapsedMillis) {
+            this.updated = updated;
+            this.unchanged = unchanged;
+            this.failed = failed;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return updated + " updated, " + unchanged + " unchanged, " + failed + " failed in "
+                    + elapsedMillis + " ms";
+        }
+    }
+
+    private final Context mContext;
+    private final HttpCache mHttpCache;
+    private final int mParallelism;
+
+    public MultiLocationSync(Context context) {
+        this(context, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param context     Used to access the ContentResolver and the HTTP cache
+     * @param parallelism The most locations to fetch at the same time
+     */
+    public MultiLocationSync(Context context, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        mContext = context.getApplicationContext();
+        mHttpCache = HttpCache.getInstance(context);
+        mParallelism = parallelism;
+    }
+
+    /**
+     * @param context Used to access SharedPreferences
+     * @return The URL to fetch for each of the user's saved locations, in the order they were
+     * saved
+     */
+    public static Map<String, URL> getSavedLocationUrls(Context context) {
+        Map<String, URL> locationUrls = new LinkedHashMap<>();
+        for (String location : SunshinePreferences.getSavedLocations(context)) {
+            URL url = NetworkUtils.getUrlForLocation(location);
+            if (url != null) {
+                locationUrls.put(location, url);
+            }
+        }
+        return locationUrls;
+    }
+
+    /**
+     * Fetches the forecast of each location and merges it into the database, a few locations at
+     * a time. Blocks until every location is done, so call it on a background thread.
+     * <p>
+     * Canceling the signal cancels every location that is still going: downloads are torn down,
+     * and locations that haven't started yet don't. A location that is already writing is
+     * allowed to finish its transaction.
+     *
+     * @param locationUrls       The URL to fetch for each location
+     * @param cancellationSignal Cancels the sync
+     * @return What happened to the locations
+     */
+    public Result sync(Map<String, URL> locationUrls, CancellationSignal cancellationSignal) {
+        long startMillis = SystemClock.elapsedRealtime();
+        if (locationUrls.isEmpty()) {
+            return new Result(0, 0, 0, 0);
+        }
+
+        /*
+         * A CancellationSignal has room for a single listener, and each download needs one to be
+         * torn down. So every location gets a signal of its own, and canceling ours cancels them
+         * all.
+         */
+        final List<CancellationSignal> locationSignals = new ArrayList<>(locationUrls.size());
+        for (int i = 0; i < locationUrls.size(); i++) {
+            locationSignals.add(new CancellationSignal());
+        }
+        cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                for (CancellationSignal locationSignal : locationSignals) {
+                    locationSignal.cancel();
+                }
+            }
+        });
+
+        /*
+         * The threads only live as long as this sync, which runs a few times a day at most; there
+         * is no point in keeping them around in between.
+         */
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(mParallelism, locationUrls.size()), new LocationThreadFactory());
+
+        int updated = 0;
+        int unchanged = 0;
+        int failed = 0;
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>(locationUrls.size());
+            int i = 0;
+            for (final Map.Entry<String, URL> entry : locationUrls.entrySet()) {
+                final CancellationSignal locationSignal = locationSignals.get(i++);
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return syncLocation(entry.getKey(), entry.getValue(), locationSignal);
+                    }
+                }));
+            }
+            executor.shutdown();
+
+            for (Future<Boolean> future : futures) {
+                try {
+                    if (future.get()) {
+                        updated++;
+                    } else {
+                        unchanged++;
+                    }
+                } catch (ExecutionException e) {
+                    failed++;
+                    if (!cancellationSignal.isCanceled()) {
+                        Log.w(TAG, "Location sync failed", e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed = locationUrls.size() - updated - unchanged;
+        } finally {
+            cancellationSignal.setOnCancelListener(null);
+            executor.shutdownNow();
+        }
+
+        Result result = new Result(updated, unchanged, failed,
+                SystemClock.elapsedRealtime() - startMillis);
+        Log.d(TAG, "Synced " + locationUrls.size() + " locations: " + result);
+        return result;
+    }
+
+    /**
+     * Fetches, parses and merges the forecast of one location.
+     *
+     * @param location           The location
+     * @param url                The URL of its forecast
+     * @param cancellationSignal Cancels this location
+     * @return true if a new forecast was merged into the database, false if there was nothing new
+     * @throws Exception If the forecast couldn't be fetched, parsed or written, or the location
+     *                   was canceled
+     */
+    private boolean syncLocation(String location, URL url, CancellationSignal cancellationSignal)
+            throws Exception {
+
+        HttpCache.Entry validators;
+        ForecastBatch forecast;
+
+        NetworkResponse response = NetworkUtils
+                .openResponse(url, mHttpCache, location, cancellationSignal);
+        try {
+            /*
+             * Nothing new to merge, but the days that have passed since the last sync are still
+             * deleted, by merging an empty forecast, as SunshineSyncTask does for the preferred
+             * location.
+             */
+            if (response.isNotModified()) {
+                cancellationSignal.throwIfCanceled();
+                new ForecastBatch(0).merge(mContext.getContentResolver(), location);
+                return false;
+            }
+
+            validators = HttpCache.Entry.from(response);
+
+            /*
+             * There is no context for the parser: the coordinates it would save are those of the
+             * preferred location, which this isn't.
+             */
+            if (OpenWeatherJsonUtils.isStreamingParserAvailable()) {
+                forecast = OpenWeatherJsonUtils
+                        .getForecastBatchFromJson(null, response.getReader());
+            } else {
+                forecast = OpenWeatherJsonUtils
+                        .getForecastBatchFromJson(null, response.readBody());
+            }
+        } finally {
+            cancellationSignal.setOnCancelListener(null);
+            response.close();
+        }
+
+        if (forecast == null || forecast.size() == 0) {
+            return false;
+        }
+
+        cancellationSignal.throwIfCanceled();
+        forecast.merge(mContext.getContentResolver(), location);
+
+        mHttpCache.put(location, url, validators);
+        return true;
+    }
+
+    /**
+     * Creates the threads locations are synced on, at background priority.
+     */
+    private static final class LocationThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "SunshineLocationSync-" + mCount.incrementAndGet());
+        }
+    }
+}
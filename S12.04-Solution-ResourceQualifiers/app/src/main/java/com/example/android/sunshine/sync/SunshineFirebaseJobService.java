@@ -15,18 +15,61 @@
  */
 package com.example.android.sunshine.sync;
 
-import android.content.Context;
-import android.os.AsyncTask;
+import android.os.Process;
+import android.support.v4.os.CancellationSignal;
+import android.util.Log;
 
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 import com.firebase.jobdispatcher.RetryStrategy;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 
 public class SunshineFirebaseJobService extends JobService {
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    private static final String TAG = SunshineFirebaseJobService.class.getSimpleName();
+
+    /*
+     * The executor our syncs run on. Syncs are serialized anyway (see SyncCoordinator), so one
+     * thread, at background priority, is all we need. Its queue is bounded: there is never a
+     * reason for more than a couple of jobs to be waiting, and if there are, the sync they would
+     * run is already covered by the ones ahead of them. The thread goes away when it has been
+     * idle for a while, so it doesn't hang around between the syncs, hours apart.
+     */
+    private static final int SYNC_QUEUE_CAPACITY = 2;
+    private static final long SYNC_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private static final ThreadPoolExecutor sSyncExecutor = createSyncExecutor();
+
+    private Future<?> mSyncFuture;
+    private CancellationSignal mCancellationSignal;
+
+    private static ThreadPoolExecutor createSyncExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                SYNC_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(SYNC_QUEUE_CAPACITY),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                runnable.run();
+                            }
+                        }, "SunshineSync");
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
@@ -40,29 +83,38 @@ public class SunshineFirebaseJobService extends JobService {
      */
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
+        final CancellationSignal cancellationSignal = new CancellationSignal();
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>(){
-            @Override
-            protected Void doInBackground(Void... voids) {
-                Context context = getApplicationContext();
-                SunshineSyncTask.syncWeather(context);
-                jobFinished(jobParameters, false);
-                return null;
-            }
+        try {
+            mSyncFuture = sSyncExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    SyncCoordinator.getInstance()
+                            .sync(getApplicationContext(), cancellationSignal);
 
-            @Override
-            protected void onPostExecute(Void aVoid) {
-                jobFinished(jobParameters, false);
-            }
-        };
+                    /* Once the job has been stopped, we mustn't report it finished */
+                    if (!cancellationSignal.isCanceled()) {
+                        jobFinished(jobParameters, false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            /* Plenty of syncs are already queued up; they will cover this one */
+            Log.d(TAG, "Sync queue full, skipping job");
+            return false;
+        }
 
-        mFetchWeatherTask.execute();
+        mCancellationSignal = cancellationSignal;
         return true;
     }
 
     /**
      * Called when the scheduling engine has decided to interrupt the execution of a running job,
      * most likely because the runtime constraints associated with the job are no longer satisfied.
+     * <p>
+     * Canceling the signal stops the sync between its stages, and tears down its network
+     * connection if it is downloading, so the device can go back to sleep right away. A sync
+     * that hasn't started yet is taken off the queue.
      *
      * @return whether the job should be retried
      * @see Job.Builder#setRetryStrategy(RetryStrategy)
@@ -70,9 +122,13 @@ public class SunshineFirebaseJobService extends JobService {
      */
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
-        if (mFetchWeatherTask != null) {
-            mFetchWeatherTask.cancel(true);
+        if (mCancellationSignal != null) {
+            mCancellationSignal.cancel();
+        }
+        if (mSyncFuture != null && mSyncFuture.cancel(false)) {
+            /* It never started; free up its place in the queue */
+            sSyncExecutor.purge();
         }
         return true;
     }
-}
\ No newline at end of file
+}
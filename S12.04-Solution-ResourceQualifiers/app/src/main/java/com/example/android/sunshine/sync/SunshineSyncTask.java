@@ -16,101 +16,391 @@
 package com.example.android.sunshine.sync;
 
 import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 import android.text.format.DateUtils;
+import android.util.Log;
 
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.HttpCache;
+import com.example.android.sunshine.utilities.NetworkResponse;
 import com.example.android.sunshine.utilities.NetworkUtils;
 import com.example.android.sunshine.utilities.NotificationUtils;
 import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SyncTrace;
 
 import java.net.URL;
+import java.util.Map;
 
 public class SunshineSyncTask {
 
+    private static final String TAG = SunshineSyncTask.class.getSimpleName();
+
+    /**
+     * Performs a sync that can't be canceled. See
+     * {@link #syncWeather(Context, CancellationSignal)}.
+     *
+     * @param context Used to access utility methods and the ContentResolver
+     */
+    public static void syncWeather(Context context) {
+        syncWeather(context, new CancellationSignal());
+    }
+
     /**
      * Performs the network request for updated weather, parses the JSON from that request, and
      * inserts the new weather information into our ContentProvider. Will notify the user that new
      * weather has been loaded if the user hasn't been notified of the weather within the last day
      * AND they haven't disabled notifications in the preferences screen.
+     * <p>
+     * The sync runs in stages: fetch and parse, write, notify, and then the user's saved
+     * locations. The cancellation signal is checked before each stage, and canceling it also
+     * tears down the network connection, so a canceled sync stops within moments instead of
+     * running to the end. A stage that has started writing to the database is allowed to finish
+     * its (short) transaction, so the database is never left half-updated.
+     * <p>
+     * How long each stage took, and how it went, is recorded in the app's {@link SyncTrace}.
      *
-     * @param context Used to access utility methods and the ContentResolver
+     * @param context            Used to access utility methods and the ContentResolver
+     * @param cancellationSignal Cancels the sync, such as when the JobScheduler stops our job
      */
-    synchronized public static void syncWeather(Context context) {
+    synchronized public static void syncWeather(Context context,
+                                                CancellationSignal cancellationSignal) {
+
+        SyncTrace.Recorder trace = SyncTrace.getInstance().startSync();
+        int outcome = SyncTrace.OUTCOME_OK;
 
         try {
             /*
-             * The getUrl method will return the URL that we need to get the forecast JSON for the
-             * weather. It will decide whether to create a URL based off of the latitude and
-             * longitude or off of a simple location as a String.
+             * Keep the weather archive within the bounds the user chose. We do this first, so it
+             * happens on every sync, even when the forecast itself hasn't changed.
              */
-            URL weatherRequestUrl = NetworkUtils.getUrl(context);
+            cancellationSignal.throwIfCanceled();
+            trace.begin(SyncTrace.STAGE_COMPACT_ARCHIVE);
+            trace.end(compactArchive(context));
+
+            syncPreferredLocation(context, cancellationSignal, trace);
+
+            /* If the code reaches this point, we have successfully performed our sync */
 
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+        } catch (OperationCanceledException e) {
+            Log.d(TAG, "Sync canceled");
+            trace.finish(SyncTrace.OUTCOME_CANCELED);
+            return;
+        } catch (Exception e) {
+            if (cancellationSignal.isCanceled()) {
+                /* Most likely the read failed because we tore down the connection */
+                Log.d(TAG, "Sync canceled: " + e);
+                trace.finish(SyncTrace.OUTCOME_CANCELED);
+                return;
+            }
+            /* Server probably invalid. The trace shows which stage failed. */
+            Log.e(TAG, "Unable to sync the forecast", e);
+            trace.abort(SyncTrace.OUTCOME_FAILED);
+            outcome = SyncTrace.OUTCOME_FAILED;
+        }
 
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+        /*
+         * Stage 4: the user's saved locations, several at a time. They don't depend on the
+         * preferred location in any way, so they are synced even if it failed.
+         */
+        if (!cancellationSignal.isCanceled()) {
+            Map<String, URL> locationUrls = MultiLocationSync.getSavedLocationUrls(context);
+            trace.begin(SyncTrace.STAGE_SAVED_LOCATIONS);
+            MultiLocationSync.Result result =
+                    new MultiLocationSync(context).sync(locationUrls, cancellationSignal);
+            if (result.failed == 0) {
+                trace.end(locationUrls.size());
+            } else {
+                trace.abort(SyncTrace.OUTCOME_FAILED);
+            }
+        }
+
+        trace.finish(cancellationSignal.isCanceled() ? SyncTrace.OUTCOME_CANCELED : outcome);
+    }
+
+    /**
+     * Syncs the forecast of the user's preferred location, the one every screen shows: stages 1
+     * to 3 of {@link #syncWeather(Context, CancellationSignal)}.
+     *
+     * @param context            Used to access utility methods and the ContentResolver
+     * @param cancellationSignal Cancels the sync
+     * @param trace              Records how long each stage takes
+     * @throws Exception If the forecast couldn't be fetched or parsed, or the sync was canceled
+     */
+    private static void syncPreferredLocation(Context context,
+                                              CancellationSignal cancellationSignal,
+                                              SyncTrace.Recorder trace)
+            throws Exception {
+        /* Stage 1: download the forecast and parse it, as it streams in */
+        cancellationSignal.throwIfCanceled();
+        trace.begin(SyncTrace.STAGE_BUILD_URL);
+
+        /*
+         * The getUrl method will return the URL that we need to get the forecast JSON for the
+         * weather. It will decide whether to create a URL based off of the latitude and
+         * longitude or off of a simple location as a String.
+         */
+        URL weatherRequestUrl = NetworkUtils.getUrl(context);
+        trace.end(0);
+
+        HttpCache httpCache = HttpCache.getInstance(context);
+        HttpCache.Entry validators;
+        ForecastBatch forecast;
+
+        trace.begin(SyncTrace.STAGE_CONNECT);
+        NetworkResponse response = NetworkUtils
+                .openResponse(weatherRequestUrl, httpCache,
+                        WeatherContract.WeatherEntry.PRIMARY_LOCATION, cancellationSignal);
+        try {
+            trace.end(response.getResponseCode());
 
             /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-             * would have returned null. We need to check for those cases here to prevent any
-             * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
-             * there isn't any to insert.
+             * If the forecast hasn't changed since our last successful sync, the server
+             * answers our conditional request with 304 Not Modified. The data in our database
+             * is still current, so there is nothing to insert or notify the user about. The days
+             * that have passed since are still moved out of the forecast, by merging an empty
+             * one.
              */
-            if (weatherValues != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
-                ContentResolver sunshineContentResolver = context.getContentResolver();
-
-                /* Delete old weather data because we don't need to keep multiple days' data */
-                sunshineContentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
-
-                /* Insert our new weather data into Sunshine's ContentProvider */
-                sunshineContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        weatherValues);
-
-                /*
-                 * Finally, after we insert data into the ContentProvider, determine whether or not
-                 * we should notify the user that the weather has been refreshed.
-                 */
-                boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
-
-                /*
-                 * If the last notification was shown was more than 1 day ago, we want to send
-                 * another notification to the user that the weather has been updated. Remember,
-                 * it's important that you shouldn't spam your users with notifications.
-                 */
-                long timeSinceLastNotification = SunshinePreferences
-                        .getEllapsedTimeSinceLastNotification(context);
-
-                boolean oneDayPassedSinceLastNotification = false;
-
-                if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
-                    oneDayPassedSinceLastNotification = true;
-                }
-
-                /*
-                 * We only want to show the notification if the user wants them shown and we
-                 * haven't shown a notification in the past day.
-                 */
-                if (notificationsEnabled && oneDayPassedSinceLastNotification) {
-                    NotificationUtils.notifyUserOfNewWeather(context);
-                }
+            if (response.isNotModified()) {
+                cancellationSignal.throwIfCanceled();
+                trace.begin(SyncTrace.STAGE_WRITE);
+                trace.end(writeForecast(context, new ForecastBatch(0)));
+                return;
+            }
 
-            /* If the code reaches this point, we have successfully performed our sync */
+            /* Hold on to the validators until the new forecast is safely in the database */
+            validators = HttpCache.Entry.from(response);
+
+            /*
+             * The body is parsed as it streams in, so reading and parsing take turns. The time
+             * spent waiting inside the read calls is recorded as reading the body, and the rest
+             * as parsing.
+             */
+            trace.begin(SyncTrace.STAGE_PARSE);
+            long parseStartNanos = System.nanoTime();
+            forecast = parseForecast(context, response);
+            long readNanos = response.getTimeInReadNanos();
+            trace.record(SyncTrace.STAGE_READ_BODY, parseStartNanos, readNanos,
+                    response.getWireBytesRead());
+            trace.end(forecast == null ? 0 : forecast.size(), readNanos);
+        } finally {
+            cancellationSignal.setOnCancelListener(null);
+            response.close();
+        }
 
+        /*
+         * In cases where our JSON contained an error code, getForecastBatchFromJson would have
+         * returned null. We need to check for those cases here to prevent any
+         * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
+         * there isn't any to insert.
+         */
+        if (forecast == null || forecast.size() == 0) {
+            return;
+        }
+
+        /* Stage 2: merge the new forecast into the database */
+        cancellationSignal.throwIfCanceled();
+        trace.begin(SyncTrace.STAGE_WRITE);
+        trace.end(writeForecast(context, forecast));
+
+        /*
+         * Keep a copy of the forecast where MainActivity can show it the moment it starts,
+         * without waiting for the database (see ForecastSnapshot). The copy is of what the
+         * database holds after the merge, which may include days the server didn't send this
+         * time, so that the first frame matches what the loader shows right after.
+         */
+        trace.begin(SyncTrace.STAGE_WRITE_SNAPSHOT);
+        ForecastBatch stored = readStoredForecast(context);
+        if (stored != null) {
+            ForecastSnapshot.write(context,
+                    SunshinePreferences.getPreferredWeatherLocation(context), stored);
+        }
+        trace.end(stored == null ? 0 : stored.size());
+
+        /*
+         * Now that the forecast is stored, remember its validators so that the next sync
+         * can ask the server whether anything has changed since.
+         */
+        httpCache.put(WeatherContract.WeatherEntry.PRIMARY_LOCATION, weatherRequestUrl,
+                validators);
+
+        /* Stage 3: let the user know, if they want to be told */
+        cancellationSignal.throwIfCanceled();
+        trace.begin(SyncTrace.STAGE_NOTIFY);
+        trace.end(notifyUserIfNeeded(context, forecast) ? 1 : 0);
+    }
+
+    /**
+     * Forgets what the sync stored for the previous preferred location, so that the next sync
+     * starts afresh for the new one. Call this whenever the preferred location changes, before
+     * syncing it.
+     * <p>
+     * The validators in the HttpCache are kept by URL, while the rows of the preferred location
+     * are stored under PRIMARY_LOCATION whichever location they are for. Switching from A to B
+     * and back to A would otherwise send the validators of A's last forecast, and the server
+     * would answer 304 Not Modified while the database still holds B's.
+     * <p>
+     * The forecast of the previous location is deleted as well. Merging keeps the days the
+     * server didn't send until they have passed, so the new location's forecast would otherwise
+     * be mixed with the old one's later days. So is its ForecastSnapshot, which no longer
+     * applies.
+     * <p>
+     * This waits for a sync that is running to finish, so it must not be called on the main
+     * thread.
+     *
+     * @param context Used to access the HttpCache, the ContentResolver and the cache directory
+     */
+    synchronized public static void forgetPreferredLocation(Context context) {
+        HttpCache.getInstance(context).clear();
+        context.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        ForecastSnapshot.delete(context);
+    }
+
+    /**
+     * Use the response to parse the JSON into a batch of weather values. Where JsonReader is
+     * available, the response body is streamed straight into the parser, so neither the body nor
+     * a JSONObject tree of the whole forecast is held in memory.
+     *
+     * @param context  Used by the parser
+     * @param response The forecast response
+     * @return The forecast, or null if the JSON held an error
+     * @throws Exception If the response can't be read or parsed
+     */
+    private static ForecastBatch parseForecast(Context context, NetworkResponse response)
+            throws Exception {
+        if (OpenWeatherJsonUtils.isStreamingParserAvailable()) {
+            return OpenWeatherJsonUtils.getForecastBatchFromJson(context, response.getReader());
+        } else {
+            String jsonWeatherResponse = response.readBody();
+            return OpenWeatherJsonUtils.getForecastBatchFromJson(context, jsonWeatherResponse);
+        }
+    }
+
+    /**
+     * Merge our new weather data into Sunshine's ContentProvider. Rather than deleting everything
+     * and inserting it all again, the ContentProvider only writes the days that changed and
+     * deletes the days that have passed, then notifies its observers once (if anything changed at
+     * all).
+     *
+     * @param context  Used to get a handle on the ContentResolver
+     * @param forecast The new forecast
+     * @return The number of days that were inserted or updated
+     */
+    private static int writeForecast(Context context, ForecastBatch forecast) {
+        ContentResolver sunshineContentResolver = context.getContentResolver();
+        return forecast.merge(sunshineContentResolver,
+                WeatherContract.WeatherEntry.PRIMARY_LOCATION);
+    }
+
+    /**
+     * Reads the forecast of the preferred location back from the ContentProvider, from today on,
+     * the way MainActivity's loader shows it.
+     *
+     * @param context Used to get a handle on the ContentResolver
+     * @return The forecast, sorted by date, or null if it couldn't be queried
+     */
+    private static ForecastBatch readStoredForecast(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                ForecastBatch.PROJECTION,
+                WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) return null;
+
+        try {
+            return ForecastBatch.fromCursor(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Determines whether or not we should notify the user that the weather has been refreshed,
+     * and does so if we should.
+     *
+     * @param context  Used to access preferences and to show the notification
+     * @param forecast The forecast that was just written
+     * @return true if the user was notified
+     */
+    private static boolean notifyUserIfNeeded(Context context, ForecastBatch forecast) {
+        boolean notificationsEnabled = SunshinePreferences.areNotificationsEnabled(context);
+
+        /*
+         * If the last notification was shown was more than 1 day ago, we want to send
+         * another notification to the user that the weather has been updated. Remember,
+         * it's important that you shouldn't spam your users with notifications.
+         */
+        long timeSinceLastNotification = SunshinePreferences
+                .getEllapsedTimeSinceLastNotification(context);
+
+        boolean oneDayPassedSinceLastNotification = false;
+
+        if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
+            oneDayPassedSinceLastNotification = true;
+        }
+
+        /*
+         * We only want to show the notification if the user wants them shown and we
+         * haven't shown a notification in the past day.
+         */
+        if (notificationsEnabled && oneDayPassedSinceLastNotification) {
+            /*
+             * We have just parsed today's weather, so there is no need to read it back from the
+             * database. Only if the forecast doesn't include today (the server's day may not be
+             * ours yet) do we fall back on whatever the database has for today.
+             */
+            long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+            int todayIndex = forecast.indexOfDate(today);
+            if (todayIndex != -1) {
+                NotificationUtils.notifyUserOfNewWeather(context, forecast, todayIndex);
+            } else {
+                NotificationUtils.notifyUserOfNewWeather(context);
             }
+            return true;
+        }
+        return false;
+    }
 
-        } catch (Exception e) {
-            /* Server probably invalid */
-            e.printStackTrace();
+    /**
+     * Deletes the archived weather that is older than the user wants to keep (see
+     * SunshinePreferences#getArchiveRetentionDays), as well as the oldest days beyond the
+     * archive's size limit. If the user doesn't want any history kept, the archive is emptied.
+     * <p>
+     * Both deletes work on the date order the archive is stored in, so they only touch the rows
+     * they delete (and, for the size limit, the newest days they keep). Run this off the main
+     * thread.
+     *
+     * @param context Used to access preferences and the ContentResolver
+     * @return The number of archived days that were deleted
+     */
+    public static int compactArchive(Context context) {
+        ContentResolver contentResolver = context.getContentResolver();
+        Uri archiveUri = WeatherContract.ArchiveEntry.CONTENT_URI;
+
+        int retentionDays = SunshinePreferences.getArchiveRetentionDays(context);
+        if (retentionDays == 0) {
+            return contentResolver.delete(archiveUri, null, null);
         }
+
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        long oldestDate = today - retentionDays * SunshineDateUtils.DAY_IN_MILLIS;
+        int rowsDeleted = contentResolver.delete(archiveUri,
+                WeatherContract.ArchiveEntry.getSqlSelectOlderThan(oldestDate),
+                null);
+
+        int maxDays = SunshinePreferences.getArchiveMaxDays(context);
+        rowsDeleted += contentResolver.delete(archiveUri,
+                WeatherContract.ArchiveEntry.getSqlSelectBeyondNewest(maxDays),
+                null);
+
+        return rowsDeleted;
     }
-}
\ No newline at end of file
+}
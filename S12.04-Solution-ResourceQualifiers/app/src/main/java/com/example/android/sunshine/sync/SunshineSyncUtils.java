@@ -21,7 +21,9 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.data.ForecastSnapshot;
 import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.utilities.HttpCache;
 import com.firebase.jobdispatcher.Constraint;
 import com.firebase.jobdispatcher.Driver;
 import com.firebase.jobdispatcher.FirebaseJobDispatcher;
@@ -167,6 +169,15 @@ public class SunshineSyncUtils {
                  * be able to display data to the user.
                  */
                 if (null == cursor || cursor.getCount() == 0) {
+                    /*
+                     * The server would answer a conditional request with 304 Not Modified if
+                     * the forecast hasn't changed since we last stored it, even though it is no
+                     * longer in our database. Forget the cached validators so that the sync
+                     * downloads the full forecast. A snapshot of that forecast would only show
+                     * days the database no longer has, so it goes as well.
+                     */
+                    HttpCache.getInstance(context).clear();
+                    ForecastSnapshot.delete(context);
                     startImmediateSync(context);
                 }
 
@@ -179,13 +190,35 @@ public class SunshineSyncUtils {
         checkForEmpty.start();
     }
 
+    /**
+     * Syncs the weather of a new preferred location right away, after forgetting what was stored
+     * for the previous one (see {@link SunshineSyncTask#forgetPreferredLocation(Context)}). That
+     * has to wait for a running sync to finish, so it is done on a thread of its own.
+     *
+     * @param context The Context used to start the IntentService for the sync.
+     */
+    public static void onPreferredLocationChanged(@NonNull final Context context) {
+        final Context appContext = context.getApplicationContext();
+        Thread forgetLocation = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SunshineSyncTask.forgetPreferredLocation(appContext);
+                startImmediateSync(appContext);
+            }
+        });
+        forgetLocation.start();
+    }
+
     /**
      * Helper method to perform a sync immediately using an IntentService for asynchronous
-     * execution.
+     * execution. If a sync is already scheduled or running, no new one is started; the request
+     * is folded into the next one instead (see {@link SyncCoordinator}).
      *
      * @param context The Context used to start the IntentService for the sync.
      */
     public static void startImmediateSync(@NonNull final Context context) {
+        if (!SyncCoordinator.getInstance().requestSync()) return;
+
         Intent intentToSyncImmediately = new Intent(context, SunshineSyncIntentService.class);
         context.startService(intentToSyncImmediately);
     }
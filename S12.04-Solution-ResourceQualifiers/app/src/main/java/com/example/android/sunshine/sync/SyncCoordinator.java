@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.annotation.NonNull;
+import android.support.v4.os.CancellationSignal;
+import android.util.Log;
+
+/**
+ * Makes sure that no matter how many times a sync is asked for, at most one runs at a time, and
+ * at most one more is queued up behind it.
+ * <p>
+ * Syncs are asked for from several places: the check for an empty database when the app starts,
+ * the SettingsFragment when the location changes, and the periodic FirebaseJobDispatcher job.
+ * Without coordination, each request downloads the forecast again, even if an identical download
+ * is already under way. Instead, requests go through this class, which is in one of four states:
+ * <p>
+ *   IDLE      - nothing to do; the next request schedules a sync
+ * <p>
+ *   SCHEDULED - a sync has been asked for but hasn't started yet. Further requests are covered
+ *               by it, as it will fetch the latest settings when it starts.
+ * <p>
+ *   RUNNING   - a sync is under way. It may already have read the settings, so the next request
+ *               queues up one follow-up sync.
+ * <p>
+ *   PENDING   - a sync is under way and a follow-up is queued. Further requests are covered by
+ *               the follow-up.
+ * <p>
+ * However quickly a user changes settings, this means at most two downloads: the one in progress
+ * and one with the final settings.
+ * <p>
+ * A follow-up is owed to whoever asked for it, so it survives the running sync being canceled:
+ * it is handed on to a sync of its own (see {@link SyncAction#dispatch(Context)}).
+ */
+public final class SyncCoordinator {
+
+    private static final String TAG = SyncCoordinator.class.getSimpleName();
+
+    /**
+     * The work a sync does. In the app, that's
+     * {@link SunshineSyncTask#syncWeather(Context, CancellationSignal)}.
+     */
+    interface SyncAction {
+        void sync(Context context, CancellationSignal cancellationSignal);
+
+        /**
+         * Starts a sync in the background, which calls {@link #runRequestedSyncs(Context)}. Used
+         * for a follow-up that was queued up behind a sync that was then canceled. In the app,
+         * that's SunshineSyncIntentService.
+         */
+        void dispatch(Context context);
+    }
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_SCHEDULED = 1;
+    private static final int STATE_RUNNING = 2;
+    private static final int STATE_PENDING = 3;
+
+    private static SyncCoordinator sInstance;
+
+    private final SyncAction mSyncAction;
+
+    private int mState = STATE_IDLE;
+
+    private long mRequestedCount;
+    private long mExecutedCount;
+
+    /**
+     * @return The coordinator every sync of the app goes through
+     */
+    public static synchronized SyncCoordinator getInstance() {
+        if (sInstance == null) {
+            sInstance = new SyncCoordinator(new SyncAction() {
+                @Override
+                public void sync(Context context, CancellationSignal cancellationSignal) {
+                    SunshineSyncTask.syncWeather(context, cancellationSignal);
+                }
+
+                @Override
+                public void dispatch(Context context) {
+                    context.startService(new Intent(context, SunshineSyncIntentService.class));
+                }
+            });
+        }
+        return sInstance;
+    }
+
+    SyncCoordinator(SyncAction syncAction) {
+        mSyncAction = syncAction;
+    }
+
+    /**
+     * Asks for a sync. If one is already scheduled, or queued up behind the running one, this
+     * request is folded into it.
+     *
+     * @return true if the caller should start a sync, by calling {@link #runRequestedSyncs}
+     * on a background thread; false if an earlier request already takes care of it
+     */
+    public synchronized boolean requestSync() {
+        mRequestedCount++;
+
+        switch (mState) {
+            case STATE_IDLE:
+                mState = STATE_SCHEDULED;
+                return true;
+
+            case STATE_RUNNING:
+                mState = STATE_PENDING;
+                return false;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Runs the sync that {@link #requestSync()} asked the caller to start, followed by at most
+     * one more if further requests came in while it was running. Blocks until done, so it must
+     * be called off the main thread.
+     *
+     * @param context Passed on to the sync
+     */
+    public void runRequestedSyncs(@NonNull Context context) {
+        runRequestedSyncs(context, new CancellationSignal());
+    }
+
+    /**
+     * Runs the requested syncs like {@link #runRequestedSyncs(Context)}, but stops as soon as the
+     * cancellation signal is canceled. The signal belongs to whoever started the sync, such as a
+     * job that was stopped, not to whoever queued up the follow-up, such as the user changing
+     * the location. A follow-up that was queued up is therefore not dropped, but stays scheduled
+     * and is dispatched to run on its own.
+     *
+     * @param context            Passed on to the sync
+     * @param cancellationSignal Cancels the running sync and any follow-up
+     */
+    public void runRequestedSyncs(@NonNull Context context,
+                                  @NonNull CancellationSignal cancellationSignal) {
+        synchronized (this) {
+            if (mState != STATE_SCHEDULED) return;
+            mState = STATE_RUNNING;
+        }
+
+        boolean done = false;
+        boolean dispatchFollowUp = false;
+        try {
+            while (!done) {
+                synchronized (this) {
+                    mExecutedCount++;
+                }
+
+                mSyncAction.sync(context, cancellationSignal);
+
+                synchronized (this) {
+                    if (mState == STATE_PENDING && !cancellationSignal.isCanceled()) {
+                        mState = STATE_RUNNING;
+                    } else if (mState == STATE_PENDING) {
+                        /* Further requests are covered by the dispatched sync */
+                        mState = STATE_SCHEDULED;
+                        dispatchFollowUp = true;
+                        done = true;
+                    } else {
+                        mState = STATE_IDLE;
+                        done = true;
+                    }
+                }
+            }
+        } finally {
+            if (!done) {
+                /* The sync threw; don't leave every future request waiting on it */
+                synchronized (this) {
+                    mState = STATE_IDLE;
+                }
+            }
+        }
+
+        if (dispatchFollowUp) {
+            Log.d(TAG, "Sync canceled, dispatching its follow-up");
+            mSyncAction.dispatch(context);
+        }
+
+        Log.d(TAG, "Syncs requested: " + getRequestedCount()
+                + ", executed: " + getExecutedCount());
+    }
+
+    /**
+     * Requests a sync and, if that calls for one, runs it on the calling thread. Used where the
+     * caller already is on a background thread, such as a JobService's worker. If a sync is
+     * already under way, this returns right away, having queued up a follow-up.
+     *
+     * @param context Passed on to the sync
+     */
+    public void sync(@NonNull Context context) {
+        sync(context, new CancellationSignal());
+    }
+
+    /**
+     * Requests a sync and runs it on the calling thread, like {@link #sync(Context)}, but stops
+     * as soon as the cancellation signal is canceled.
+     *
+     * @param context            Passed on to the sync
+     * @param cancellationSignal Cancels the sync, if this call ends up running one
+     */
+    public void sync(@NonNull Context context, @NonNull CancellationSignal cancellationSignal) {
+        if (requestSync()) {
+            runRequestedSyncs(context, cancellationSignal);
+        }
+    }
+
+    /**
+     * @return The number of syncs that have been asked for since the app started
+     */
+    public synchronized long getRequestedCount() {
+        return mRequestedCount;
+    }
+
+    /**
+     * @return The number of syncs that have actually run since the app started. The difference
+     * with {@link #getRequestedCount()} is the number of downloads saved by coalescing requests.
+     */
+    public synchronized long getExecutedCount() {
+        return mExecutedCount;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import java.util.Locale;
+
+/**
+ * Keeps the friendly date labels ("Today, June 8", "Tomorrow", "Friday", ...) that
+ * {@link SunshineDateUtils#getFriendlyDateString(Context, long, boolean)} builds, so each label is
+ * only formatted once. The forecast list, the detail screen and notifications all ask for the
+ * same handful of days over and over.
+ * <p>
+ * A label depends on more than the day it is for: on which day is today, on the time zone and
+ * on the locale. The labels are therefore kept in {@link Labels}, which are only good for the
+ * day, time zone and locale they were created in. They are thrown away:
+ * <p>
+ * 1) When the day changes. Like the rest of SunshineDateUtils, "today" is counted in days since
+ * the epoch, in UTC.
+ * 2) When the default locale changes.
+ * 3) When the time zone or the clock is changed, which the system tells us with a broadcast.
+ * <p>
+ * Safe to use from any thread. Looking a label up doesn't allocate.
+ */
+final class DateLabelCache {
+
+    /* Labels are kept for the days from a week before today to this many days after it */
+    private static final int DAYS_BEFORE_TODAY = 7;
+    private static final int DAYS_AFTER_TODAY = 31;
+
+    private static volatile Labels sLabels;
+
+    private static boolean sReceiverRegistered;
+
+    private DateLabelCache() {
+    }
+
+    /**
+     * Returns the labels for today, in the current time zone and locale, creating them if the
+     * ones we had are no longer good.
+     *
+     * @param context Used to register for time zone and clock changes
+     * @return The labels to look up and store labels in
+     */
+    static Labels getLabels(Context context) {
+        long nowMillis = System.currentTimeMillis();
+        Locale locale = Locale.getDefault();
+
+        Labels labels = sLabels;
+        if (labels == null
+                || nowMillis >= labels.mExpiresAtMillis
+                || !locale.equals(labels.mLocale)) {
+            registerReceiver(context);
+            labels = new Labels(nowMillis, locale);
+            sLabels = labels;
+        }
+        return labels;
+    }
+
+    /**
+     * Throws away every label. A label being formatted while this is called ends up in the old
+     * labels, and is never looked up.
+     */
+    static void invalidate() {
+        sLabels = null;
+    }
+
+    private static synchronized void registerReceiver(Context context) {
+        if (sReceiverRegistered) return;
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+
+        /* The application context lives as long as the process, and so does the registration */
+        context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, filter);
+        sReceiverRegistered = true;
+    }
+
+    /**
+     * The labels of the days around one day, in one time zone and locale, in two arrays indexed
+     * by day: one for short labels and one for labels that show the full date.
+     */
+    static final class Labels {
+
+        private final long mFirstDay;
+        private final long mExpiresAtMillis;
+        private final Locale mLocale;
+
+        private final String[] mLabels = new String[DAYS_BEFORE_TODAY + DAYS_AFTER_TODAY + 1];
+        private final String[] mFullDateLabels =
+                new String[DAYS_BEFORE_TODAY + DAYS_AFTER_TODAY + 1];
+
+        Labels(long nowMillis, Locale locale) {
+            long today = nowMillis / SunshineDateUtils.DAY_IN_MILLIS;
+            mFirstDay = today - DAYS_BEFORE_TODAY;
+            mExpiresAtMillis = (today + 1) * SunshineDateUtils.DAY_IN_MILLIS;
+            mLocale = locale;
+        }
+
+        /**
+         * @return The index of the normalized date in the arrays, or -1 if it isn't kept
+         */
+        private int indexOf(long normalizedUtcMidnight) {
+            if (normalizedUtcMidnight % SunshineDateUtils.DAY_IN_MILLIS != 0) return -1;
+
+            long index = normalizedUtcMidnight / SunshineDateUtils.DAY_IN_MILLIS - mFirstDay;
+            if (index < 0 || index >= mLabels.length) return -1;
+            return (int) index;
+        }
+
+        /**
+         * @param normalizedUtcMidnight The date in milliseconds (UTC midnight)
+         * @param showFullDate          Whether the label shows the full date
+         * @return The label, or null if it hasn't been stored
+         */
+        String get(long normalizedUtcMidnight, boolean showFullDate) {
+            int index = indexOf(normalizedUtcMidnight);
+            if (index == -1) return null;
+            return showFullDate ? mFullDateLabels[index] : mLabels[index];
+        }
+
+        /**
+         * Stores a label. Labels of days too far from today are simply not stored. Strings are
+         * immutable, so a thread that reads the label at the same time either sees all of it or
+         * sees null and formats it itself.
+         *
+         * @param normalizedUtcMidnight The date in milliseconds (UTC midnight)
+         * @param showFullDate          Whether the label shows the full date
+         * @param label                 The label
+         */
+        void put(long normalizedUtcMidnight, boolean showFullDate, String label) {
+            int index = indexOf(normalizedUtcMidnight);
+            if (index == -1) return;
+            if (showFullDate) {
+                mFullDateLabels[index] = label;
+            } else {
+                mLabels[index] = label;
+            }
+        }
+    }
+}
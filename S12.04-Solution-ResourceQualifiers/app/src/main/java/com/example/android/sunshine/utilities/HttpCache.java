@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * A small disk-backed cache of HTTP validators (the ETag and Last-Modified headers) for the
+ * weather server's responses.
+ * <p>
+ * We don't keep the response bodies around: the forecast is already stored in our database once
+ * it has been synced. All we need to remember is enough to ask the server "has this changed since
+ * the last time I asked?" with a conditional GET (If-None-Match / If-Modified-Since). When the
+ * server answers 304 Not Modified, there is nothing to download, parse or insert.
+ * <p>
+ * Each URL gets its own small file in the app's cache directory. If Android clears that
+ * directory to free up space, the worst that happens is that the next sync downloads the full
+ * forecast again.
+ * <p>
+ * The validators are kept per location as well as per URL: they only mean something as long as
+ * the rows of the forecast they came with are still in the database. Until the first sync has
+ * saved its coordinates, the preferred location is fetched with the same URL as a saved location
+ * of the same name, but their rows are stored apart, and one being up to date says nothing about
+ * the other.
+ */
+public final class HttpCache {
+
+    private static final String TAG = HttpCache.class.getSimpleName();
+
+    /* The name of the directory within the app's cache directory that holds our entries */
+    private static final String CACHE_DIRECTORY_NAME = "http";
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static HttpCache sInstance;
+
+    private final File mDirectory;
+
+    /* Guarded by this */
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * Creates a cache that keeps its entries in the given directory. Most callers want the
+     * app-wide cache from {@link #getInstance(Context)} instead; this constructor exists so that
+     * tests can use a directory of their own.
+     *
+     * @param directory The directory to keep the cache entries in
+     */
+    public HttpCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * @param context Used to find the app's cache directory
+     * @return The HTTP cache shared by the whole app
+     */
+    public static synchronized HttpCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(),
+                    CACHE_DIRECTORY_NAME);
+            sInstance = new HttpCache(directory);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Adds the conditional request headers for the given URL to a connection that hasn't been
+     * connected yet. If we have never stored validators for the location and URL, the request is
+     * left alone and the server will answer with the full response.
+     *
+     * @param urlConnection The connection to add the headers to
+     * @param location      The location the response will be stored under
+     */
+    void applyValidators(HttpURLConnection urlConnection, String location) {
+        /*
+         * We handle the validators ourselves, so make sure a platform-wide response cache (if
+         * anyone ever installs one) doesn't answer the request before it reaches the server.
+         */
+        urlConnection.setUseCaches(false);
+
+        Entry entry = get(location, urlConnection.getURL());
+        if (entry == null) return;
+
+        if (entry.eTag != null) {
+            urlConnection.setRequestProperty(HEADER_IF_NONE_MATCH, entry.eTag);
+        }
+        if (entry.lastModified != null) {
+            urlConnection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, entry.lastModified);
+        }
+    }
+
+    /**
+     * Counts a response towards the hit and miss counters. A 304 Not Modified is a hit, anything
+     * else means the server had to send us the full response.
+     *
+     * @param responseCode The HTTP status code of the response
+     */
+    synchronized void recordResponse(int responseCode) {
+        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            mHitCount++;
+        } else {
+            mMissCount++;
+        }
+    }
+
+    /**
+     * @return The number of requests the server answered with 304 Not Modified
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return The number of requests the server answered with a full response
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Looks up the validators stored for a location and URL.
+     *
+     * @param location The location the validators were stored for
+     * @param url      The URL the validators were stored for
+     * @return The stored validators, or null if there aren't any
+     */
+    public synchronized Entry get(String location, URL url) {
+        String key = getKey(location, url);
+        File file = getFile(key);
+        if (!file.exists()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            String storedKey = in.readUTF();
+            String eTag = in.readUTF();
+            String lastModified = in.readUTF();
+
+            /* Two keys can share a hash code, so make sure this entry really is for our key */
+            if (!storedKey.equals(key)) return null;
+
+            return new Entry(emptyToNull(eTag), emptyToNull(lastModified));
+        } catch (IOException e) {
+            /* A corrupt entry is as good as no entry at all */
+            Log.w(TAG, "Unable to read cache entry for " + url, e);
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores the validators for a location and URL. Only call this once the response they came
+     * with has been fully handled (parsed AND stored in the database), otherwise a later 304
+     * would leave us without the data it refers to. Whenever the location's rows are deleted,
+     * remove its entry as well, by storing null.
+     *
+     * @param location The location the response was stored under
+     * @param url      The URL the validators belong to
+     * @param entry    The validators to store, or null or an entry without any, to remove the
+     *                 entry
+     */
+    public synchronized void put(String location, URL url, Entry entry) {
+        String key = getKey(location, url);
+        File file = getFile(key);
+        if (entry == null || entry.isEmpty()) {
+            file.delete();
+            return;
+        }
+
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Unable to create cache directory " + mDirectory);
+            return;
+        }
+
+        /*
+         * Write to a temporary file first and then rename it, so that a crash halfway through
+         * never leaves a truncated entry behind.
+         */
+        File temp = new File(mDirectory, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(temp));
+            out.writeUTF(key);
+            out.writeUTF(nullToEmpty(entry.eTag));
+            out.writeUTF(nullToEmpty(entry.lastModified));
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "Unable to store cache entry for " + url);
+                temp.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to store cache entry for " + url, e);
+            temp.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * Removes every stored entry, so that the next request for any URL downloads the full
+     * response. Use this whenever our copy of the data may have gone missing, for example when
+     * the database turns out to be empty.
+     */
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    private static String getKey(String location, URL url) {
+        /* A location never holds a line break, so no two locations and URLs share a key */
+        return location + '\n' + url;
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, Integer.toHexString(key.hashCode()));
+    }
+
+    private static String emptyToNull(String value) {
+        return value.length() == 0 ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            /* Nothing useful to do here */
+        }
+    }
+
+    /**
+     * The validators the server sent along with a response.
+     */
+    public static final class Entry {
+
+        /* The value of the ETag header, or null if the server didn't send one */
+        public final String eTag;
+
+        /* The value of the Last-Modified header, or null if the server didn't send one */
+        public final String lastModified;
+
+        public Entry(String eTag, String lastModified) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Reads the validators from a response. Call this before closing the response.
+         *
+         * @param response The response to read the validators from
+         * @return The validators of the response
+         */
+        public static Entry from(NetworkResponse response) {
+            return new Entry(response.getHeaderField(HEADER_ETAG),
+                    response.getHeaderField(HEADER_LAST_MODIFIED));
+        }
+
+        /**
+         * @return true if the server sent neither an ETag nor a Last-Modified header
+         */
+        public boolean isEmpty() {
+            return eTag == null && lastModified == null;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.support.v4.content.ContextCompat;
+import android.support.v4.util.LruCache;
+
+/**
+ * Keeps the large icons of our notifications in memory, keyed by the resource ID of the art they
+ * were made from. The weather changes a lot less often than it is synced, so the same handful of
+ * icons is shown over and over again.
+ * <p>
+ * The art is made to fill the screen of the detail view, many times larger than a notification
+ * icon. Rather than decoding it at full size, we decode it at the size the notification shows it
+ * at: a bitmap is downsampled as it is decoded, and art that can't be decoded into a bitmap at
+ * all (the vector drawables of newer versions of Android) is drawn at that size instead.
+ * <p>
+ * The cache is bounded by the number of bytes its bitmaps take up; the least recently used
+ * icons go first.
+ */
+final class LargeIconCache {
+
+    /* Room for several notification icons, even at the highest screen densities */
+    private static final int MAX_SIZE_BYTES = 1024 * 1024;
+
+    /* The size of a large notification icon before Honeycomb, which has no resource for it */
+    private static final int LEGACY_ICON_SIZE_DP = 64;
+
+    private static final LruCache<Integer, Bitmap> sIcons =
+            new LruCache<Integer, Bitmap>(MAX_SIZE_BYTES) {
+                @Override
+                protected int sizeOf(Integer resourceId, Bitmap icon) {
+                    /* Bitmap#getByteCount is only available from Honeycomb MR1 on */
+                    return icon.getRowBytes() * icon.getHeight();
+                }
+            };
+
+    private LargeIconCache() {
+    }
+
+    /**
+     * @param context    Used to access resources
+     * @param resourceId The resource ID of the art, such as R.drawable.art_clear
+     * @return The art, sized for the large icon of a notification, or null if it can't be loaded
+     */
+    static Bitmap getLargeIcon(Context context, int resourceId) {
+        Bitmap icon = sIcons.get(resourceId);
+        if (icon == null) {
+            icon = loadLargeIcon(context, resourceId);
+            if (icon != null) {
+                sIcons.put(resourceId, icon);
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * Empties the cache, so that every icon is loaded again the next time it is asked for.
+     */
+    static void clear() {
+        sIcons.evictAll();
+    }
+
+    private static Bitmap loadLargeIcon(Context context, int resourceId) {
+        Resources resources = context.getResources();
+        int width;
+        int height;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            width = resources.getDimensionPixelSize(
+                    android.R.dimen.notification_large_icon_width);
+            height = resources.getDimensionPixelSize(
+                    android.R.dimen.notification_large_icon_height);
+        } else {
+            width = height = Math.round(
+                    LEGACY_ICON_SIZE_DP * resources.getDisplayMetrics().density);
+        }
+
+        Bitmap icon = decodeSampledBitmap(resources, resourceId, width, height);
+        if (icon == null) {
+            icon = drawBitmap(context, resourceId, width, height);
+        }
+        return icon;
+    }
+
+    /**
+     * Decodes a bitmap resource, skipping as many of its pixels as possible while keeping it at
+     * least as large as asked for, then scales it down to exactly that size.
+     *
+     * @return The bitmap, or null if the resource isn't a bitmap
+     */
+    private static Bitmap decodeSampledBitmap(Resources resources, int resourceId,
+                                              int width, int height) {
+        /* First only read the size of the bitmap, which doesn't allocate any pixels */
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resourceId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap sampled = BitmapFactory.decodeResource(resources, resourceId, options);
+        if (sampled == null
+                || (sampled.getWidth() <= width && sampled.getHeight() <= height)) {
+            return sampled;
+        }
+
+        Bitmap scaled = Bitmap.createScaledBitmap(sampled, width, height, true);
+        if (scaled != sampled) {
+            sampled.recycle();
+        }
+        return scaled;
+    }
+
+    /**
+     * Draws a drawable resource, such as a vector drawable, into a bitmap of the given size.
+     *
+     * @return The bitmap, or null if the resource can't be loaded
+     */
+    private static Bitmap drawBitmap(Context context, int resourceId, int width, int height) {
+        Drawable drawable;
+        try {
+            drawable = ContextCompat.getDrawable(context, resourceId);
+        } catch (Resources.NotFoundException e) {
+            return null;
+        }
+        if (drawable == null) {
+            return null;
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(canvas);
+        return bitmap;
+    }
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The body of an HTTP response from the weather server. It can be read in two ways:
+ * <p>
+ * 1) {@link #readBody()} reads the whole body into a pooled byte buffer and decodes it into a
+ * String exactly once.
+ * 2) {@link #getInputStream()} or {@link #getReader()} hand the body straight to a parser, so it
+ * never has to be held in memory as a whole.
+ * <p>
+ * Either way, the number of bytes read and the time spent reading them are recorded and logged
+ * when the response is closed. So is the time spent waiting inside the read calls, which tells the
+ * network apart from the parser when the body is streamed. Always close the response, as that
+ * also closes the connection.
+ * <p>
+ * We ask the server to compress the body (forecast JSON shrinks to a fraction of its size), and
+ * decompress it on the fly as it is read. Both the compressed (wire) and the decoded byte counts
+ * are recorded, so we can see how much data compression saves our users.
+ */
+public final class NetworkResponse implements Closeable {
+
+    private static final String TAG = NetworkResponse.class.getSimpleName();
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+
+    /* The weather server always answers in UTF-8 */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* The size of the buffer the decompressors read compressed data into */
+    private static final int INFLATE_BUFFER_SIZE = 8 * 1024;
+
+    /* Large enough for a 14 day forecast, so the buffer normally never has to grow */
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    /* Buffers that grew past this size are dropped instead of being returned to the pool */
+    private static final int MAX_POOLED_BUFFER_SIZE = 256 * 1024;
+
+    /*
+     * A pool of one is enough: syncs are serialized, so the responses of the preferred location
+     * are read one at a time. When responses overlap, such as the saved locations a sync fetches
+     * in parallel (see MultiLocationSync), the others simply allocate their own buffer.
+     */
+    private static byte[] sPooledBuffer;
+
+    private final HttpURLConnection mUrlConnection;
+
+    /* Counts the bytes as they arrive over the network, possibly compressed */
+    private CountingInputStream mWireStream;
+
+    /* Counts the bytes after decompression. The same stream as above if there is no compression. */
+    private CountingInputStream mInputStream;
+
+    private boolean mClosed;
+
+    NetworkResponse(HttpURLConnection urlConnection) {
+        mUrlConnection = urlConnection;
+
+        /*
+         * By asking for compression explicitly, HttpURLConnection leaves decompression to us
+         * (see getInputStream), which lets us count the bytes on the wire as well.
+         */
+        mUrlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING,
+                ENCODING_GZIP + ", " + ENCODING_DEFLATE);
+    }
+
+    /**
+     * @return The HTTP status code of the response
+     * @throws IOException Related to network access
+     */
+    public int getResponseCode() throws IOException {
+        return mUrlConnection.getResponseCode();
+    }
+
+    /**
+     * @return true if the server answered a conditional request with 304 Not Modified, meaning
+     * the data we already have is still up to date and there is no body to read
+     * @throws IOException Related to network access
+     */
+    public boolean isNotModified() throws IOException {
+        return getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    /**
+     * @param name The name of the header, such as "ETag"
+     * @return The value of the header, or null if the response doesn't have it
+     */
+    public String getHeaderField(String name) {
+        return mUrlConnection.getHeaderField(name);
+    }
+
+    /**
+     * Returns the body of the response as a stream of bytes, decompressing it on the fly if the
+     * server compressed it. Calling this more than once returns the same stream.
+     *
+     * @return The response body
+     * @throws IOException Related to network and stream reading
+     */
+    public InputStream getInputStream() throws IOException {
+        if (mInputStream == null) {
+            long startNanos = System.nanoTime();
+            mWireStream = new CountingInputStream(mUrlConnection.getInputStream(), startNanos);
+
+            String contentEncoding = mUrlConnection.getContentEncoding();
+            if (ENCODING_GZIP.equalsIgnoreCase(contentEncoding)) {
+                mInputStream = new CountingInputStream(
+                        new GZIPInputStream(mWireStream, INFLATE_BUFFER_SIZE), startNanos);
+            } else if (ENCODING_DEFLATE.equalsIgnoreCase(contentEncoding)) {
+                mInputStream = new CountingInputStream(
+                        DeflateInputStream.create(mWireStream), startNanos);
+            } else {
+                mInputStream = mWireStream;
+            }
+        }
+        return mInputStream;
+    }
+
+    /**
+     * @return The Content-Encoding the server compressed the body with, or null if it isn't
+     * compressed
+     */
+    public String getContentEncoding() {
+        return mUrlConnection.getContentEncoding();
+    }
+
+    /**
+     * Returns the body of the response as a stream of characters, ready to be handed to a
+     * streaming parser such as android.util.JsonReader. We don't wrap it in a BufferedReader, as
+     * parsers buffer their input themselves.
+     *
+     * @return The response body
+     * @throws IOException Related to network and stream reading
+     */
+    public Reader getReader() throws IOException {
+        return new InputStreamReader(getInputStream(), UTF_8);
+    }
+
+    /**
+     * Reads the whole body of the response into a reusable buffer and decodes it into a String
+     * in one go.
+     *
+     * @return The contents of the HTTP response, null if the body was empty
+     * @throws IOException Related to network and stream reading
+     */
+    public String readBody() throws IOException {
+        InputStream in = getInputStream();
+
+        byte[] buffer = acquireBuffer();
+        int length = 0;
+        try {
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    /* Out of room, so double the buffer. The pool will keep the larger one. */
+                    byte[] larger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    buffer = larger;
+                }
+            }
+
+            if (length == 0) {
+                return null;
+            }
+
+            return new String(buffer, 0, length, UTF_8);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * @return The number of bytes of the body read so far, after decompression
+     */
+    public long getBytesRead() {
+        return mInputStream == null ? 0 : mInputStream.mBytesRead;
+    }
+
+    /**
+     * @return The number of bytes of the body received over the network so far. Less than
+     * {@link #getBytesRead()} if the body is compressed.
+     */
+    public long getWireBytesRead() {
+        return mWireStream == null ? 0 : mWireStream.mBytesRead;
+    }
+
+    /**
+     * @return The time, in milliseconds, between opening the body and reading the last byte of
+     * it (or closing the response, if it wasn't read to the end)
+     */
+    public long getReadDurationMillis() {
+        return mInputStream == null ? 0 : TimeUnit.NANOSECONDS.toMillis(mInputStream.getElapsedNanos());
+    }
+
+    /**
+     * @return The time, in nanoseconds, spent inside the read calls on the body so far: waiting
+     * for the network and decompressing. Unlike {@link #getReadDurationMillis()}, this leaves out
+     * whatever the caller did with the bytes in between reads, such as parsing them.
+     */
+    public long getTimeInReadNanos() {
+        return mInputStream == null ? 0 : mInputStream.mTimeInReadNanos;
+    }
+
+    /**
+     * Aborts the response by disconnecting, from any thread. A read that is blocked waiting for
+     * the server fails with an IOException right away, rather than when the connection times out.
+     * The response must still be closed by the thread reading it.
+     */
+    public void cancel() {
+        mUrlConnection.disconnect();
+    }
+
+    /**
+     * Closes the body and disconnects. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if (mClosed) return;
+        mClosed = true;
+
+        try {
+            if (mInputStream != null) {
+                mInputStream.close();
+                String encoding = getContentEncoding();
+                Log.v(TAG, "Read " + getBytesRead() + " bytes ("
+                        + getWireBytesRead() + " on the wire, "
+                        + (encoding != null ? encoding : "uncompressed") + ") in "
+                        + getReadDurationMillis() + " ms, "
+                        + TimeUnit.NANOSECONDS.toMillis(getTimeInReadNanos())
+                        + " ms of it in read calls");
+            }
+        } catch (IOException e) {
+            /* Nothing useful to do here, we are done with the response either way */
+            Log.w(TAG, "Error closing response", e);
+        } finally {
+            mUrlConnection.disconnect();
+        }
+    }
+
+    private static synchronized byte[] acquireBuffer() {
+        byte[] buffer = sPooledBuffer;
+        sPooledBuffer = null;
+        return buffer != null ? buffer : new byte[INITIAL_BUFFER_SIZE];
+    }
+
+    private static synchronized void releaseBuffer(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+            sPooledBuffer = buffer;
+        }
+    }
+
+    /**
+     * Counts the bytes that pass through it and notes when the end of the stream is reached.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private final long mStartNanos;
+        private long mEndNanos;
+        long mBytesRead;
+        long mTimeInReadNanos;
+
+        CountingInputStream(InputStream in, long startNanos) {
+            super(in);
+            mStartNanos = startNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            mTimeInReadNanos += System.nanoTime() - start;
+            if (b == -1) {
+                markEnd();
+            } else {
+                mBytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            long start = System.nanoTime();
+            int read = super.read(buffer, offset, count);
+            mTimeInReadNanos += System.nanoTime() - start;
+            if (read == -1) {
+                markEnd();
+            } else {
+                mBytesRead += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            mBytesRead += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            markEnd();
+            super.close();
+        }
+
+        private void markEnd() {
+            if (mEndNanos == 0) {
+                mEndNanos = System.nanoTime();
+            }
+        }
+
+        long getElapsedNanos() {
+            long end = mEndNanos != 0 ? mEndNanos : System.nanoTime();
+            return end - mStartNanos;
+        }
+    }
+
+    /**
+     * Decompresses a "deflate" encoded body. The HTTP spec says that is zlib-wrapped data, but
+     * some servers send raw deflate data instead, so we look at the first two bytes to tell them
+     * apart.
+     */
+    private static final class DeflateInputStream extends InflaterInputStream {
+
+        static InputStream create(InputStream in) throws IOException {
+            BufferedInputStream buffered = new BufferedInputStream(in, 2);
+            buffered.mark(2);
+            int first = buffered.read();
+            int second = buffered.read();
+            buffered.reset();
+
+            /*
+             * A zlib header says the compression method is deflate (8) in its low bits, and the
+             * two bytes taken together are a multiple of 31.
+             */
+            boolean zlibWrapped = first != -1 && second != -1
+                    && (first & 0x0F) == 8
+                    && ((first << 8) | second) % 31 == 0;
+            return new DeflateInputStream(buffered, new Inflater(!zlibWrapped));
+        }
+
+        private DeflateInputStream(InputStream in, Inflater inflater) {
+            super(in, inflater, INFLATE_BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                /* We supplied the Inflater, so closing the stream doesn't free it for us */
+                inf.end();
+            }
+        }
+    }
+}
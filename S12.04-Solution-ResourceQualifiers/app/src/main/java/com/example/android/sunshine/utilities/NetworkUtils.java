@@ -17,16 +17,15 @@ package com.example.android.sunshine.utilities;
 
 import android.content.Context;
 import android.net.Uri;
+import android.support.v4.os.CancellationSignal;
 import android.util.Log;
 
 import com.example.android.sunshine.data.SunshinePreferences;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -109,6 +108,18 @@ public final class NetworkUtils {
         }
     }
 
+    /**
+     * Retrieves the URL to query for the weather of one of the user's saved locations (see
+     * SunshinePreferences#getSavedLocations). Saved locations are only known by name, so unlike
+     * {@link #getUrl(Context)}, this never uses coordinates.
+     *
+     * @param location The saved location
+     * @return URL to query weather service
+     */
+    public static URL getUrlForLocation(String location) {
+        return buildUrlWithLocationQuery(location);
+    }
+
     /**
      * Builds the URL used to talk to the weather server using latitude and longitude of a
      * location.
@@ -162,29 +173,86 @@ public final class NetworkUtils {
     }
 
     /**
-     * This method returns the entire result from the HTTP response.
+     * Opens a connection to the given URL and returns the response, so that its body can be
+     * either read in one go or streamed straight into a parser. The caller must close the
+     * returned response.
      *
      * @param url The URL to fetch the HTTP response from.
-     * @return The contents of the HTTP response, null if no response
-     * @throws IOException Related to network and stream reading
+     * @return The HTTP response
+     * @throws IOException Related to network access
      */
-    public static String getResponseFromHttpUrl(URL url) throws IOException {
+    public static NetworkResponse openResponse(URL url) throws IOException {
         HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        return new NetworkResponse(urlConnection);
+    }
+
+    /**
+     * Opens a conditional request to the given URL. If the cache holds validators for the
+     * location and URL, they are sent along with the request, and the server may answer with 304
+     * Not Modified (see {@link NetworkResponse#isNotModified()}) instead of sending the full
+     * response. The response is counted towards the cache's hit and miss counters.
+     * <p>
+     * Storing the validators of a full response is left to the caller, as they should only be
+     * stored once the response has been handled successfully.
+     *
+     * @param url      The URL to fetch the HTTP response from.
+     * @param cache    The cache holding the validators from earlier responses
+     * @param location The location the response will be stored under
+     * @return The HTTP response
+     * @throws IOException Related to network access
+     */
+    public static NetworkResponse openResponse(URL url, HttpCache cache, String location)
+            throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        cache.applyValidators(urlConnection, location);
+
+        NetworkResponse response = new NetworkResponse(urlConnection);
         try {
-            InputStream in = urlConnection.getInputStream();
+            cache.recordResponse(response.getResponseCode());
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
+        return response;
+    }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+    /**
+     * Opens a conditional request to the given URL (see
+     * {@link #openResponse(URL, HttpCache, String)}) that can be canceled. When the signal is
+     * canceled, the connection is torn down, so that both connecting and reading the body fail
+     * right away instead of running to completion. The caller must remove the cancel listener
+     * (with setOnCancelListener(null)) once it is done with the response.
+     *
+     * @param url                The URL to fetch the HTTP response from.
+     * @param cache              The cache holding the validators from earlier responses
+     * @param location           The location the response will be stored under
+     * @param cancellationSignal Cancels the request
+     * @return The HTTP response
+     * @throws IOException Related to network access, including being canceled
+     */
+    public static NetworkResponse openResponse(URL url, HttpCache cache, String location,
+                                               CancellationSignal cancellationSignal)
+            throws IOException {
+        cancellationSignal.throwIfCanceled();
+
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        cache.applyValidators(urlConnection, location);
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
+        final NetworkResponse response = new NetworkResponse(urlConnection);
+        cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                response.cancel();
             }
-            scanner.close();
-            return response;
-        } finally {
-            urlConnection.disconnect();
+        });
+
+        try {
+            cache.recordResponse(response.getResponseCode());
+        } catch (IOException e) {
+            cancellationSignal.setOnCancelListener(null);
+            response.close();
+            throw e;
         }
+        return response;
     }
 }
\ No newline at end of file
@@ -15,16 +15,21 @@
  */
 package com.example.android.sunshine.utilities;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
+import android.os.Build;
+import android.util.JsonReader;
 
+import com.example.android.sunshine.data.ForecastBatch;
 import com.example.android.sunshine.data.SunshinePreferences;
-import com.example.android.sunshine.data.WeatherContract;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 
 /**
@@ -68,14 +73,35 @@ public final class OpenWeatherJsonUtils {
      * getFullWeatherDataFromJson function, leveraging the data we have stored in the JSON. For
      * now, we just convert the JSON into human-readable strings.
      *
+     * @param context         Used to save the location coordinates of the forecast, or null to
+     *                        leave them alone (for a saved location other than the preferred one)
      * @param forecastJsonStr JSON response from server
      *
-     * @return Array of Strings describing weather data
+     * @return Array of ContentValues, one for each day of the forecast, or null if the server
+     * returned an error code
      *
      * @throws JSONException If JSON data cannot be properly parsed
      */
     public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
             throws JSONException {
+        ForecastBatch batch = getForecastBatchFromJson(context, forecastJsonStr);
+        return batch == null ? null : batch.toContentValues();
+    }
+
+    /**
+     * Parses the JSON of a forecast into a {@link ForecastBatch}: the days are stored as
+     * primitives, column by column, rather than as a ContentValues of boxed values per day.
+     *
+     * @param context         Used to save the location coordinates of the forecast, or null to
+     *                        leave them alone (for a saved location other than the preferred one)
+     * @param forecastJsonStr JSON response from server
+     *
+     * @return The forecast, or null if the server returned an error code
+     *
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ForecastBatch getForecastBatchFromJson(Context context, String forecastJsonStr)
+            throws JSONException {
 
         JSONObject forecastJson = new JSONObject(forecastJsonStr);
 
@@ -103,9 +129,11 @@ public final class OpenWeatherJsonUtils {
         double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
         double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
 
-        SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+        if (context != null) {
+            SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+        }
 
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
+        ForecastBatch batch = new ForecastBatch(jsonWeatherArray.length());
 
         /*
          * OWM returns daily forecasts based upon the local time of the city that is being asked
@@ -166,19 +194,284 @@ public final class OpenWeatherJsonUtils {
             high = temperatureObject.getDouble(OWM_MAX);
             low = temperatureObject.getDouble(OWM_MIN);
 
-            ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-            weatherContentValues[i] = weatherValues;
+            batch.add(dateTimeMillis, weatherId, low, high,
+                    humidity, pressure, windSpeed, windDirection);
+        }
+
+        return batch;
+    }
+
+    /**
+     * Returns true if this device can use the streaming parser,
+     * {@link #getForecastBatchFromJson(Context, Reader)}. android.util.JsonReader was
+     * added in Honeycomb (API 11), while Sunshine still supports Gingerbread.
+     *
+     * @return true if JSON can be streamed on this device
+     */
+    public static boolean isStreamingParserAvailable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    /**
+     * The streaming version of {@link #getWeatherContentValuesFromJson(Context, String)}; see
+     * {@link #getForecastBatchFromJson(Context, Reader)}.
+     *
+     * @param context            Used to save the location coordinates of the forecast, or null
+     *                           to leave them alone (for a saved location other than the
+     *                           preferred one)
+     * @param forecastJsonReader Reader over the JSON response from the server. It is closed by
+     *                           this method.
+     *
+     * @return Array of ContentValues, one for each day of the forecast, or null if the server
+     * returned an error code
+     *
+     * @throws IOException   If the JSON is malformed or the Reader can't be read
+     * @throws JSONException If the JSON is missing a value we require
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ContentValues[] getWeatherContentValuesFromJson(Context context,
+            Reader forecastJsonReader) throws IOException, JSONException {
+        ForecastBatch batch = getForecastBatchFromJson(context, forecastJsonReader);
+        return batch == null ? null : batch.toContentValues();
+    }
+
+    /**
+     * This method parses the same JSON as {@link #getForecastBatchFromJson(Context, String)},
+     * but pulls it one token at a time from a Reader instead of building a JSONObject tree for the
+     * whole forecast first. Each day is added to the batch as soon as its closing brace is read,
+     * so no objects are kept alive for the days at all.
+     * <p>
+     * Unlike the DOM version, we can't rely on the order of the keys in the response: the "city"
+     * object may come before or after the "list" array, so the location is saved once the whole
+     * response has been read.
+     *
+     * @param context            Used to save the location coordinates of the forecast, or null
+     *                           to leave them alone (for a saved location other than the
+     *                           preferred one)
+     * @param forecastJsonReader Reader over the JSON response from the server. It is closed by
+     *                           this method.
+     *
+     * @return The forecast, or null if the server returned an error code
+     *
+     * @throws IOException   If the JSON is malformed or the Reader can't be read
+     * @throws JSONException If the JSON is missing a value we require
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ForecastBatch getForecastBatchFromJson(Context context,
+            Reader forecastJsonReader) throws IOException, JSONException {
+
+        JsonReader reader = new JsonReader(forecastJsonReader);
+
+        ForecastBatch batch = null;
+        double[] cityCoordinates = null;
+
+        /* See getForecastBatchFromJson(Context, String) for why we only need today's date */
+        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    /*
+                     * JsonReader will happily read "200" as well as 200. Like JSONObject#getInt,
+                     * we read a number and then drop any fraction, as nextInt would throw.
+                     */
+                    int errorCode = (int) reader.nextDouble();
+
+                    if (errorCode != HttpURLConnection.HTTP_OK) {
+                        /* Location invalid or server probably down */
+                        return null;
+                    }
+                } else if (OWM_CITY.equals(name)) {
+                    cityCoordinates = readCityCoordinates(reader);
+                } else if (OWM_LIST.equals(name)) {
+                    batch = new ForecastBatch();
+
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        /* As above, we assume the days are returned in-order */
+                        long dateTimeMillis = normalizedUtcStartDay
+                                + SunshineDateUtils.DAY_IN_MILLIS * batch.size();
+                        readDayForecast(reader, dateTimeMillis, batch);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+
+        if (batch == null) {
+            throw new JSONException("No value for " + OWM_LIST);
+        }
+        if (cityCoordinates == null) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+
+        if (context != null) {
+            SunshinePreferences.setLocationDetails(context, cityCoordinates[0], cityCoordinates[1]);
         }
 
-        return weatherContentValues;
+        return batch;
+    }
+
+    /**
+     * Reads the "city" object and returns the latitude and longitude found in its "coord" child.
+     *
+     * @param reader JsonReader positioned at the beginning of the "city" object
+     *
+     * @return an array containing the latitude and longitude of the city
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static double[] readCityCoordinates(JsonReader reader)
+            throws IOException, JSONException {
+
+        double[] coordinates = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (OWM_COORD.equals(reader.nextName())) {
+                coordinates = new double[2];
+                int found = 0;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (OWM_LATITUDE.equals(name)) {
+                        coordinates[0] = reader.nextDouble();
+                        found |= 1;
+                    } else if (OWM_LONGITUDE.equals(name)) {
+                        coordinates[1] = reader.nextDouble();
+                        found |= 2;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (found != 3) {
+                    throw new JSONException("No value for " + (((found & 1) == 0)
+                            ? OWM_LATITUDE : OWM_LONGITUDE));
+                }
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (coordinates == null) {
+            throw new JSONException("No value for " + OWM_COORD);
+        }
+        return coordinates;
+    }
+
+    /**
+     * Reads a single element of the "list" array and adds it to the end of a batch.
+     *
+     * @param reader         JsonReader positioned at the beginning of a day's forecast object
+     * @param dateTimeMillis Normalized UTC date of this day
+     * @param batch          The batch to add the day to
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readDayForecast(JsonReader reader, long dateTimeMillis,
+                                        ForecastBatch batch)
+            throws IOException, JSONException {
+
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+
+        double high = 0;
+        double low = 0;
+
+        int weatherId = 0;
+
+        /* Track every required value, so we can report a missing one like JSONObject would */
+        boolean hasPressure = false;
+        boolean hasHumidity = false;
+        boolean hasWindSpeed = false;
+        boolean hasWindDirection = false;
+        boolean hasTemperature = false;
+        boolean hasWeatherId = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+                hasPressure = true;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                /* Truncated, as JSONObject#getInt does, rather than rejected like nextInt */
+                humidity = (int) reader.nextDouble();
+                hasHumidity = true;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+                hasWindSpeed = true;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+                hasWindDirection = true;
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                boolean hasMax = false;
+                boolean hasMin = false;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        high = reader.nextDouble();
+                        hasMax = true;
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        low = reader.nextDouble();
+                        hasMin = true;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                if (!hasMax) throw new JSONException("No value for " + OWM_MAX);
+                if (!hasMin) throw new JSONException("No value for " + OWM_MIN);
+                hasTemperature = true;
+            } else if (OWM_WEATHER.equals(name)) {
+                /* Only the first element of the "weather" array is used, as in the DOM parser */
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                            weatherId = (int) reader.nextDouble();
+                            hasWeatherId = true;
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!hasPressure) throw new JSONException("No value for " + OWM_PRESSURE);
+        if (!hasHumidity) throw new JSONException("No value for " + OWM_HUMIDITY);
+        if (!hasWindSpeed) throw new JSONException("No value for " + OWM_WINDSPEED);
+        if (!hasWindDirection) throw new JSONException("No value for " + OWM_WIND_DIRECTION);
+        if (!hasTemperature) throw new JSONException("No value for " + OWM_TEMPERATURE);
+        if (!hasWeatherId) throw new JSONException("No value for " + OWM_WEATHER_ID);
+
+        batch.add(dateTimeMillis, weatherId, low, high,
+                humidity, pressure, windSpeed, windDirection);
     }
 }
\ No newline at end of file
@@ -199,6 +199,31 @@ public final class SunshineDateUtils {
      * or "Friday"
      */
     public static String getFriendlyDateString(Context context, long normalizedUtcMidnight, boolean showFullDate) {
+        /*
+         * Labels are formatted once for each day, and kept until the day, the time zone or the
+         * locale changes (see DateLabelCache).
+         */
+        DateLabelCache.Labels labels = DateLabelCache.getLabels(context);
+        String label = labels.get(normalizedUtcMidnight, showFullDate);
+        if (label == null) {
+            label = formatFriendlyDateString(context, normalizedUtcMidnight, showFullDate);
+            labels.put(normalizedUtcMidnight, showFullDate, label);
+        }
+        return label;
+    }
+
+    /**
+     * Formats the date the way {@link #getFriendlyDateString(Context, long, boolean)} describes,
+     * without looking in the cache of labels.
+     *
+     * @param context               Context to use for resource localization
+     * @param normalizedUtcMidnight The date in milliseconds (UTC midnight)
+     * @param showFullDate          Used to show a fuller-version of the date
+     *
+     * @return A user-friendly representation of the date
+     */
+    static String formatFriendlyDateString(Context context, long normalizedUtcMidnight,
+                                           boolean showFullDate) {
 
         /*
          * NOTE: localDate should be localDateMidnightMillis and should be straight from the
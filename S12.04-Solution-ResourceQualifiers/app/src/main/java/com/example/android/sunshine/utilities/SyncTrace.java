@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long each stage of a sync takes, so that a slow sync can be pinned on the network,
+ * the parser, SQLite or the notification. Each stage that runs becomes a {@link Span}: which sync
+ * and stage it belongs to, when it started and how long it took on the monotonic clock
+ * (System.nanoTime), whether it succeeded, and a stage-specific detail such as the HTTP response
+ * code or the number of rows written.
+ * <p>
+ * The spans of the last syncs are kept in a ring buffer of fixed size that never blocks: writers
+ * claim a slot with a single atomic increment, so the saved locations a sync fetches in parallel
+ * never wait on each other, and recording a span costs two clock reads and a handful of stores.
+ * Each slot carries a sequence number that is odd while the slot is being written, so readers
+ * skip slots that are being written or were overwritten while they read them, instead of seeing a
+ * mix of two spans.
+ * <p>
+ * In debug builds, WeatherProvider serves the spans at WeatherContract.SyncTraceEntry#CONTENT_URI,
+ * and they are part of its dumpsys output (see {@link #dump(PrintWriter)}).
+ */
+public final class SyncTrace {
+
+    /* The whole sync, from the first stage to the last */
+    public static final int STAGE_SYNC = 0;
+    /* Deleting the archived days the user no longer wants kept; detail: rows deleted */
+    public static final int STAGE_COMPACT_ARCHIVE = 1;
+    /* Building the forecast URL, which reads the location preferences */
+    public static final int STAGE_BUILD_URL = 2;
+    /* Connecting and waiting for the response headers (DNS, TLS, server); detail: HTTP code */
+    public static final int STAGE_CONNECT = 3;
+    /* Waiting for the body to arrive and decompressing it; detail: bytes on the wire */
+    public static final int STAGE_READ_BODY = 4;
+    /* Parsing the body, not counting the time spent waiting for it; detail: days parsed */
+    public static final int STAGE_PARSE = 5;
+    /* Merging the forecast into the database; detail: days inserted or updated */
+    public static final int STAGE_WRITE = 6;
+    /* Writing the forecast snapshot (see ForecastSnapshot) */
+    public static final int STAGE_WRITE_SNAPSHOT = 7;
+    /* Deciding whether to notify the user, and doing so; detail: 1 if the user was notified */
+    public static final int STAGE_NOTIFY = 8;
+    /* Syncing the user's saved locations; detail: the number of locations */
+    public static final int STAGE_SAVED_LOCATIONS = 9;
+
+    private static final String[] STAGE_NAMES = {
+            "sync",
+            "compact_archive",
+            "build_url",
+            "connect",
+            "read_body",
+            "parse",
+            "write",
+            "write_snapshot",
+            "notify",
+            "saved_locations",
+    };
+
+    public static final int OUTCOME_OK = 0;
+    public static final int OUTCOME_FAILED = 1;
+    public static final int OUTCOME_CANCELED = 2;
+
+    private static final String[] OUTCOME_NAMES = {"ok", "failed", "canceled"};
+
+    /* Enough for the last couple of dozen syncs. Must be a power of two. */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private static final SyncTrace sInstance = new SyncTrace(DEFAULT_CAPACITY);
+
+    private final int mMask;
+
+    /* The number of spans ever recorded, which is also the sequence number of the next one */
+    private final AtomicLong mNextSequence = new AtomicLong();
+
+    /* Hands out the IDs that tie the spans of one sync together */
+    private final AtomicInteger mNextSyncId = new AtomicInteger(1);
+
+    /*
+     * The slots, one array per field. mSlotStates holds 2 * sequence + 1 while a slot is being
+     * written and 2 * sequence + 2 once it holds the span with that sequence number.
+     */
+    private final AtomicLongArray mSlotStates;
+    private final AtomicLongArray mInfos;
+    private final AtomicLongArray mStartNanos;
+    private final AtomicLongArray mDurationNanos;
+    private final AtomicLongArray mDetails;
+
+    /**
+     * Creates a trace of its own. Most callers want the app-wide trace from
+     * {@link #getInstance()} instead; this constructor exists so that tests can use a trace of
+     * their own.
+     *
+     * @param capacity The number of spans to keep, a power of two
+     */
+    public SyncTrace(int capacity) {
+        if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        mMask = capacity - 1;
+        mSlotStates = new AtomicLongArray(capacity);
+        mInfos = new AtomicLongArray(capacity);
+        mStartNanos = new AtomicLongArray(capacity);
+        mDurationNanos = new AtomicLongArray(capacity);
+        mDetails = new AtomicLongArray(capacity);
+    }
+
+    /**
+     * @return The trace the syncs of the whole app record their spans in
+     */
+    public static SyncTrace getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Starts recording a sync. The whole sync becomes a {@link #STAGE_SYNC} span once it is
+     * finished (see {@link Recorder#finish(int)}).
+     *
+     * @return The recorder to record the stages of the sync with
+     */
+    public Recorder startSync() {
+        return new Recorder(mNextSyncId.getAndIncrement());
+    }
+
+    /**
+     * Records one span. Safe to call from any thread, and never blocks.
+     *
+     * @param syncId        The sync the span belongs to
+     * @param stage         One of the STAGE_ constants
+     * @param outcome       One of the OUTCOME_ constants
+     * @param startNanos    When the stage started, from System.nanoTime
+     * @param durationNanos How long the stage took
+     * @param detail        A stage-specific detail, see the STAGE_ constants
+     */
+    public void record(int syncId, int stage, int outcome, long startNanos, long durationNanos,
+                       long detail) {
+        long sequence = mNextSequence.getAndIncrement();
+        int slot = (int) sequence & mMask;
+
+        mSlotStates.set(slot, 2 * sequence + 1);
+        mInfos.set(slot, ((long) syncId << 16) | (stage << 8) | outcome);
+        mStartNanos.set(slot, startNanos);
+        mDurationNanos.set(slot, durationNanos);
+        mDetails.set(slot, detail);
+        mSlotStates.set(slot, 2 * sequence + 2);
+    }
+
+    /**
+     * Copies the spans the ring buffer holds, oldest first. Spans that are being written while
+     * they are copied are left out.
+     *
+     * @return The recorded spans
+     */
+    public List<Span> getSpans() {
+        long next = mNextSequence.get();
+        long first = Math.max(0, next - (mMask + 1));
+
+        List<Span> spans = new ArrayList<>((int) (next - first));
+        for (long sequence = first; sequence < next; sequence++) {
+            int slot = (int) sequence & mMask;
+            long state = mSlotStates.get(slot);
+            if (state != 2 * sequence + 2) {
+                /* Still being written, or already overwritten by a newer span */
+                continue;
+            }
+
+            long info = mInfos.get(slot);
+            long startNanos = mStartNanos.get(slot);
+            long durationNanos = mDurationNanos.get(slot);
+            long detail = mDetails.get(slot);
+
+            if (mSlotStates.get(slot) != state) {
+                /* Overwritten while we were copying it */
+                continue;
+            }
+            spans.add(new Span(sequence, (int) (info >>> 16), (int) (info >>> 8) & 0xFF,
+                    (int) info & 0xFF, startNanos, durationNanos, detail));
+        }
+        return spans;
+    }
+
+    /**
+     * Prints the recorded spans, oldest first, one per line, followed by the median and
+     * maximum duration of each stage.
+     *
+     * @param writer Where to print the spans
+     */
+    public void dump(PrintWriter writer) {
+        List<Span> spans = getSpans();
+        writer.println("Sync trace: " + spans.size() + " spans");
+        for (Span span : spans) {
+            writer.println("  " + span);
+        }
+
+        writer.println("Sync stages:");
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            List<Long> durations = new ArrayList<>();
+            for (Span span : spans) {
+                if (span.stage == stage) durations.add(span.durationNanos);
+            }
+            if (durations.isEmpty()) continue;
+
+            Collections.sort(durations);
+            writer.println(String.format(Locale.US, "  %-16s n=%d median=%.1fms max=%.1fms",
+                    STAGE_NAMES[stage], durations.size(),
+                    durations.get(durations.size() / 2) / 1e6,
+                    durations.get(durations.size() - 1) / 1e6));
+        }
+    }
+
+    /**
+     * @param stage One of the STAGE_ constants
+     * @return The name of the stage, as shown in the dump and by the provider
+     */
+    public static String getStageName(int stage) {
+        return stage >= 0 && stage < STAGE_NAMES.length ? STAGE_NAMES[stage] : "unknown";
+    }
+
+    /**
+     * @param outcome One of the OUTCOME_ constants
+     * @return The name of the outcome, as shown in the dump and by the provider
+     */
+    public static String getOutcomeName(int outcome) {
+        return outcome >= 0 && outcome < OUTCOME_NAMES.length ? OUTCOME_NAMES[outcome] : "unknown";
+    }
+
+    /**
+     * One recorded stage of a sync.
+     */
+    public static final class Span {
+        /* The position of the span among all spans ever recorded */
+        public final long sequence;
+        public final int syncId;
+        public final int stage;
+        public final int outcome;
+        public final long startNanos;
+        public final long durationNanos;
+        public final long detail;
+
+        Span(long sequence, int syncId, int stage, int outcome, long startNanos,
+             long durationNanos, long detail) {
+            this.sequence = sequence;
+            this.syncId = syncId;
+            this.stage = stage;
+            this.outcome = outcome;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.detail = detail;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "#%d sync %d %-16s %-8s %8.1fms detail=%d",
+                    sequence, syncId, getStageName(stage), getOutcomeName(outcome),
+                    durationNanos / 1e6, detail);
+        }
+    }
+
+    /**
+     * Records the stages of one sync, one after the other. Only use a recorder from the thread
+     * running the sync; stages that run on other threads can be recorded with
+     * {@link #record(int, long, long, long)}.
+     */
+    public final class Recorder {
+
+        private final int mSyncId;
+        private final long mSyncStartNanos = System.nanoTime();
+
+        /* The stage that is running, or -1 */
+        private int mStage = -1;
+        private long mStageStartNanos;
+
+        private Recorder(int syncId) {
+            mSyncId = syncId;
+        }
+
+        /**
+         * Starts timing a stage. Call {@link #end(long)} when it is done.
+         *
+         * @param stage One of the STAGE_ constants
+         */
+        public void begin(int stage) {
+            mStage = stage;
+            mStageStartNanos = System.nanoTime();
+        }
+
+        /**
+         * Records the stage that was begun as successful.
+         *
+         * @param detail A stage-specific detail, see the STAGE_ constants
+         */
+        public void end(long detail) {
+            endStage(OUTCOME_OK, detail, 0);
+        }
+
+        /**
+         * Records the stage that was begun as successful, leaving out time that was recorded as a
+         * stage of its own, such as the time the parser spent waiting for the network.
+         *
+         * @param detail        A stage-specific detail, see the STAGE_ constants
+         * @param excludedNanos The time to leave out of the stage's duration
+         */
+        public void end(long detail, long excludedNanos) {
+            endStage(OUTCOME_OK, detail, excludedNanos);
+        }
+
+        /**
+         * Records the stage that was begun, if any, as failed or canceled. Call this from the
+         * catch block that ends the stage.
+         *
+         * @param outcome OUTCOME_FAILED or OUTCOME_CANCELED
+         */
+        public void abort(int outcome) {
+            endStage(outcome, 0, 0);
+        }
+
+        /**
+         * Records a stage that was timed some other way, such as by NetworkResponse.
+         *
+         * @param stage         One of the STAGE_ constants
+         * @param startNanos    When the stage started, from System.nanoTime
+         * @param durationNanos How long the stage took
+         * @param detail        A stage-specific detail, see the STAGE_ constants
+         */
+        public void record(int stage, long startNanos, long durationNanos, long detail) {
+            SyncTrace.this.record(mSyncId, stage, OUTCOME_OK, startNanos, durationNanos, detail);
+        }
+
+        /**
+         * Records the whole sync as a {@link #STAGE_SYNC} span. A stage that is still running is
+         * recorded with the same outcome.
+         *
+         * @param outcome How the sync as a whole went, one of the OUTCOME_ constants
+         */
+        public void finish(int outcome) {
+            abort(outcome);
+            SyncTrace.this.record(mSyncId, STAGE_SYNC, outcome, mSyncStartNanos,
+                    System.nanoTime() - mSyncStartNanos, 0);
+        }
+
+        private void endStage(int outcome, long detail, long excludedNanos) {
+            if (mStage == -1) return;
+            long now = System.nanoTime();
+            SyncTrace.this.record(mSyncId, mStage, outcome, mStageStartNanos,
+                    now - mStageStartNanos - excludedNanos, detail);
+            mStage = -1;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.content.res.Configuration;
+
+import com.example.android.sunshine.R;
+
+/**
+ * Everything Sunshine knows about an OpenWeatherMap weather condition ID, in one table indexed by
+ * the ID: the resource IDs of its description, its small artwork and its large artwork. The
+ * table is filled once, when the class is loaded, by running the range checks and switch
+ * statements SunshineWeatherUtils used to run on every call for each ID in the range. Looking a
+ * condition up is then a bounds check and an array read, for the list, the detail screen and
+ * notifications alike.
+ * <p>
+ * The descriptions are resolved into Strings lazily, and kept for as long as the configuration
+ * (most importantly the locale) stays the same.
+ * <p>
+ * See http://openweathermap.org/weather-conditions for a list of all IDs.
+ */
+final class WeatherConditionTable {
+
+    /* The lowest and highest weather condition IDs OpenWeatherMap uses */
+    static final int MIN_WEATHER_ID = 200;
+    static final int MAX_WEATHER_ID = 962;
+
+    /* Returned for IDs there is no resource for. Resource IDs are never 0. */
+    static final int NO_RESOURCE = 0;
+
+    /* The resource IDs of one condition are stored next to each other, in this order */
+    private static final int DESCRIPTION = 0;
+    private static final int SMALL_ART = 1;
+    private static final int LARGE_ART = 2;
+    private static final int ENTRY_SIZE = 3;
+
+    private static final int[] sTable = createTable();
+
+    /* The descriptions resolved for the current configuration */
+    private static volatile Descriptions sDescriptions;
+
+    private WeatherConditionTable() {
+    }
+
+    private static int[] createTable() {
+        int[] table = new int[(MAX_WEATHER_ID - MIN_WEATHER_ID + 1) * ENTRY_SIZE];
+        for (int weatherId = MIN_WEATHER_ID; weatherId <= MAX_WEATHER_ID; weatherId++) {
+            int entry = (weatherId - MIN_WEATHER_ID) * ENTRY_SIZE;
+            table[entry + DESCRIPTION] = mapDescriptionResourceId(weatherId);
+            table[entry + SMALL_ART] = mapSmallArtResourceId(weatherId);
+            table[entry + LARGE_ART] = mapLargeArtResourceId(weatherId);
+        }
+        return table;
+    }
+
+    private static int lookUp(int weatherId, int field) {
+        if (weatherId < MIN_WEATHER_ID || weatherId > MAX_WEATHER_ID) {
+            return NO_RESOURCE;
+        }
+        return sTable[(weatherId - MIN_WEATHER_ID) * ENTRY_SIZE + field];
+    }
+
+    /**
+     * @param weatherId The weather condition ID
+     * @return The string resource ID of the description, or {@link #NO_RESOURCE} if the ID is
+     * unknown
+     */
+    static int getDescriptionResourceId(int weatherId) {
+        return lookUp(weatherId, DESCRIPTION);
+    }
+
+    /**
+     * @param weatherId The weather condition ID
+     * @return The drawable resource ID of the small artwork, or {@link #NO_RESOURCE} if the ID is
+     * unknown
+     */
+    static int getSmallArtResourceId(int weatherId) {
+        return lookUp(weatherId, SMALL_ART);
+    }
+
+    /**
+     * @param weatherId The weather condition ID
+     * @return The drawable resource ID of the large artwork, or {@link #NO_RESOURCE} if the ID is
+     * unknown
+     */
+    static int getLargeArtResourceId(int weatherId) {
+        return lookUp(weatherId, LARGE_ART);
+    }
+
+    /**
+     * Returns the localized description of a weather condition. Each description is only
+     * resolved once per configuration. Safe to call from any thread.
+     *
+     * @param context   Used to access the app resources
+     * @param weatherId The weather condition ID
+     * @return The description, or "Unknown condition" with the ID, if the ID is unknown
+     */
+    static String getDescription(Context context, int weatherId) {
+        if (weatherId < MIN_WEATHER_ID || weatherId > MAX_WEATHER_ID) {
+            return context.getString(R.string.condition_unknown, weatherId);
+        }
+
+        Configuration configuration = context.getResources().getConfiguration();
+        Descriptions descriptions = sDescriptions;
+        if (descriptions == null || !descriptions.mConfiguration.equals(configuration)) {
+            descriptions = new Descriptions(configuration);
+            sDescriptions = descriptions;
+        }
+
+        int index = weatherId - MIN_WEATHER_ID;
+        String description = descriptions.mStrings[index];
+        if (description == null) {
+            int stringId = getDescriptionResourceId(weatherId);
+            description = stringId != NO_RESOURCE
+                    ? context.getString(stringId)
+                    : context.getString(R.string.condition_unknown, weatherId);
+            /*
+             * Strings are immutable, so another thread that reads the array either sees this
+             * String complete or sees null and resolves the description itself.
+             */
+            descriptions.mStrings[index] = description;
+        }
+        return description;
+    }
+
+    /**
+     * The descriptions of all conditions, for one configuration. Filled in as they are needed.
+     */
+    private static final class Descriptions {
+        final Configuration mConfiguration;
+        final String[] mStrings = new String[MAX_WEATHER_ID - MIN_WEATHER_ID + 1];
+
+        Descriptions(Configuration configuration) {
+            /* The configuration passed in may change later, so we keep a copy */
+            mConfiguration = new Configuration(configuration);
+        }
+    }
+
+    /*
+     * The mapping from weather condition IDs to resources, as OpenWeatherMap defines it. These
+     * methods are only run to fill the table, and by the benchmark that compares the two.
+     */
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return The string resource ID of the description, or {@link #NO_RESOURCE}
+     */
+    static int mapDescriptionResourceId(int weatherId) {
+        int stringId;
+        if (weatherId >= 200 && weatherId <= 232) {
+            stringId = R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            stringId = R.string.condition_3xx;
+        } else switch (weatherId) {
+            case 500:
+                stringId = R.string.condition_500;
+                break;
+            case 501:
+                stringId = R.string.condition_501;
+                break;
+            case 502:
+                stringId = R.string.condition_502;
+                break;
+            case 503:
+                stringId = R.string.condition_503;
+                break;
+            case 504:
+                stringId = R.string.condition_504;
+                break;
+            case 511:
+                stringId = R.string.condition_511;
+                break;
+            case 520:
+                stringId = R.string.condition_520;
+                break;
+            case 531:
+                stringId = R.string.condition_531;
+                break;
+            case 600:
+                stringId = R.string.condition_600;
+                break;
+            case 601:
+                stringId = R.string.condition_601;
+                break;
+            case 602:
+                stringId = R.string.condition_602;
+                break;
+            case 611:
+                stringId = R.string.condition_611;
+                break;
+            case 612:
+                stringId = R.string.condition_612;
+                break;
+            case 615:
+                stringId = R.string.condition_615;
+                break;
+            case 616:
+                stringId = R.string.condition_616;
+                break;
+            case 620:
+                stringId = R.string.condition_620;
+                break;
+            case 621:
+                stringId = R.string.condition_621;
+                break;
+            case 622:
+                stringId = R.string.condition_622;
+                break;
+            case 701:
+                stringId = R.string.condition_701;
+                break;
+            case 711:
+                stringId = R.string.condition_711;
+                break;
+            case 721:
+                stringId = R.string.condition_721;
+                break;
+            case 731:
+                stringId = R.string.condition_731;
+                break;
+            case 741:
+                stringId = R.string.condition_741;
+                break;
+            case 751:
+                stringId = R.string.condition_751;
+                break;
+            case 761:
+                stringId = R.string.condition_761;
+                break;
+            case 762:
+                stringId = R.string.condition_762;
+                break;
+            case 771:
+                stringId = R.string.condition_771;
+                break;
+            case 781:
+                stringId = R.string.condition_781;
+                break;
+            case 800:
+                stringId = R.string.condition_800;
+                break;
+            case 801:
+                stringId = R.string.condition_801;
+                break;
+            case 802:
+                stringId = R.string.condition_802;
+                break;
+            case 803:
+                stringId = R.string.condition_803;
+                break;
+            case 804:
+                stringId = R.string.condition_804;
+                break;
+            case 900:
+                stringId = R.string.condition_900;
+                break;
+            case 901:
+                stringId = R.string.condition_901;
+                break;
+            case 902:
+                stringId = R.string.condition_902;
+                break;
+            case 903:
+                stringId = R.string.condition_903;
+                break;
+            case 904:
+                stringId = R.string.condition_904;
+                break;
+            case 905:
+                stringId = R.string.condition_905;
+                break;
+            case 906:
+                stringId = R.string.condition_906;
+                break;
+            case 951:
+                stringId = R.string.condition_951;
+                break;
+            case 952:
+                stringId = R.string.condition_952;
+                break;
+            case 953:
+                stringId = R.string.condition_953;
+                break;
+            case 954:
+                stringId = R.string.condition_954;
+                break;
+            case 955:
+                stringId = R.string.condition_955;
+                break;
+            case 956:
+                stringId = R.string.condition_956;
+                break;
+            case 957:
+                stringId = R.string.condition_957;
+                break;
+            case 958:
+                stringId = R.string.condition_958;
+                break;
+            case 959:
+                stringId = R.string.condition_959;
+                break;
+            case 960:
+                stringId = R.string.condition_960;
+                break;
+            case 961:
+                stringId = R.string.condition_961;
+                break;
+            case 962:
+                stringId = R.string.condition_962;
+                break;
+            default:
+                return NO_RESOURCE;
+        }
+
+        return stringId;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return The drawable resource ID of the small artwork, or {@link #NO_RESOURCE}
+     */
+    static int mapSmallArtResourceId(int weatherId) {
+
+        /*
+         * Based on weather code data for Open Weather Map.
+         */
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return R.drawable.ic_clear;
+        }
+
+        return NO_RESOURCE;
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return The drawable resource ID of the large artwork, or {@link #NO_RESOURCE}
+     */
+    static int mapLargeArtResourceId(int weatherId) {
+
+        /*
+         * Based on weather code data for Open Weather Map.
+         */
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return R.drawable.art_clear;
+        }
+
+        return NO_RESOURCE;
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+
+import com.example.android.sunshine.R;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Just enough of a Context for the utilities to run on the JVM: the app's default resources (see
+ * {@link BenchmarkResources}) and SharedPreferences kept in memory.
+ * <p>
+ * The units preference is fixed when the context is created, before SunshinePreferences reads it
+ * for the first time. Changing it afterwards would make SunshinePreferences notify its listeners
+ * through the main Looper, which doesn't exist here. JMH runs every benchmark and parameter in
+ * a fork of its own, so a benchmark that is run in both units gets a fresh SunshinePreferences
+ * for each.
+ */
+final class BenchmarkContext extends ContextWrapper {
+
+    private static final String PACKAGE_NAME = "com.example.android.sunshine";
+
+    private final Resources mResources = new BenchmarkResources();
+    private final Map<String, InMemorySharedPreferences> mPreferences = new HashMap<>();
+
+    /**
+     * @param metric true to format in metric units, false for imperial
+     */
+    BenchmarkContext(boolean metric) {
+        super(null);
+
+        /* The name PreferenceManager#getDefaultSharedPreferences uses */
+        SharedPreferences defaults = getSharedPreferences(PACKAGE_NAME + "_preferences",
+                Context.MODE_PRIVATE);
+        defaults.edit()
+                .putString(getString(R.string.pref_units_key), metric
+                        ? getString(R.string.pref_units_metric)
+                        : getString(R.string.pref_units_imperial))
+                .apply();
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    @Override
+    public String getPackageName() {
+        return PACKAGE_NAME;
+    }
+
+    @Override
+    public Resources getResources() {
+        return mResources;
+    }
+
+    @Override
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        InMemorySharedPreferences preferences = mPreferences.get(name);
+        if (preferences == null) {
+            preferences = new InMemorySharedPreferences();
+            mPreferences.put(name, preferences);
+        }
+        return preferences;
+    }
+
+    /**
+     * SharedPreferences that are never written to disk. Listeners are kept, but never called:
+     * the preferences are only written before anything reads them (see above).
+     */
+    private static final class InMemorySharedPreferences implements SharedPreferences {
+
+        private final Map<String, Object> mValues = new HashMap<>();
+        private final Set<OnSharedPreferenceChangeListener> mListeners = new HashSet<>();
+
+        @Override
+        public synchronized Map<String, ?> getAll() {
+            return new HashMap<>(mValues);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return (String) get(key, defValue);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            return (Set<String>) get(key, defValues);
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return (Integer) get(key, defValue);
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return (Long) get(key, defValue);
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return (Float) get(key, defValue);
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return (Boolean) get(key, defValue);
+        }
+
+        @Override
+        public synchronized boolean contains(String key) {
+            return mValues.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new InMemoryEditor();
+        }
+
+        @Override
+        public synchronized void registerOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+            mListeners.add(listener);
+        }
+
+        @Override
+        public synchronized void unregisterOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+            mListeners.remove(listener);
+        }
+
+        private synchronized Object get(String key, Object defValue) {
+            Object value = mValues.get(key);
+            return value != null ? value : defValue;
+        }
+
+        private final class InMemoryEditor implements Editor {
+
+            /* A removed key maps to this */
+            private final Object mRemoved = new Object();
+
+            private final Map<String, Object> mChanges = new HashMap<>();
+            private boolean mClear;
+
+            @Override
+            public Editor putString(String key, String value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                return put(key, values != null ? new HashSet<>(values) : null);
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                return put(key, value);
+            }
+
+            @Override
+            public Editor remove(String key) {
+                return put(key, null);
+            }
+
+            @Override
+            public Editor clear() {
+                mClear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                synchronized (InMemorySharedPreferences.this) {
+                    if (mClear) {
+                        mValues.clear();
+                    }
+                    for (Map.Entry<String, Object> change : mChanges.entrySet()) {
+                        if (change.getValue() == mRemoved) {
+                            mValues.remove(change.getKey());
+                        } else {
+                            mValues.put(change.getKey(), change.getValue());
+                        }
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                commit();
+            }
+
+            private Editor put(String key, Object value) {
+                mChanges.put(key, value != null ? value : mRemoved);
+                return this;
+            }
+        }
+    }
+}
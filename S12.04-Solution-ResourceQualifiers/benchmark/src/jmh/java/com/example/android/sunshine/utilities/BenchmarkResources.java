@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.res.Configuration;
+import android.content.res.Resources;
+
+import com.example.android.sunshine.R;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * The app's default resource values (res/values), read straight from the XML files, for code
+ * that formats with them on the JVM. Only strings, booleans and integers are supported, which is
+ * all the utilities need; there is no resource table and no configuration qualifiers.
+ * <p>
+ * android-all's Resources reads the compiled resource table through native code, so this
+ * subclass answers the lookups itself. It uses the constructor Resources has for subclasses that
+ * don't need an implementation, which android.jar hides but android-all has.
+ */
+final class BenchmarkResources extends Resources {
+
+    /* Set by the benchmark module's build.gradle */
+    private static final String PROPERTY_RES_DIR = "sunshine.resDir";
+
+    private final Map<Integer, String> mStrings = new HashMap<>();
+    private final Map<Integer, Boolean> mBooleans = new HashMap<>();
+    private final Map<Integer, Integer> mIntegers = new HashMap<>();
+
+    private final Configuration mConfiguration = new Configuration();
+
+    BenchmarkResources() {
+        super(BenchmarkResources.class.getClassLoader());
+
+        String resDir = System.getProperty(PROPERTY_RES_DIR);
+        if (resDir == null) {
+            throw new IllegalStateException("Set " + PROPERTY_RES_DIR + " to the app's res/values");
+        }
+
+        Map<String, String> strings = new HashMap<>();
+        Map<String, String> booleans = new HashMap<>();
+        Map<String, String> integers = new HashMap<>();
+        File[] files = new File(resDir).listFiles();
+        if (files == null) {
+            throw new IllegalStateException("No resources in " + resDir);
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(".xml")) {
+                readValues(file, "string", strings);
+                readValues(file, "bool", booleans);
+                readValues(file, "integer", integers);
+            }
+        }
+
+        /* Match the values to the IDs the app's code was compiled with */
+        for (Map.Entry<Integer, String> entry : getIds(R.string.class, strings).entrySet()) {
+            mStrings.put(entry.getKey(), decodeString(entry.getValue()));
+        }
+        for (Map.Entry<Integer, String> entry : getIds(R.bool.class, booleans).entrySet()) {
+            mBooleans.put(entry.getKey(), Boolean.parseBoolean(entry.getValue().trim()));
+        }
+        for (Map.Entry<Integer, String> entry : getIds(R.integer.class, integers).entrySet()) {
+            mIntegers.put(entry.getKey(), Integer.parseInt(entry.getValue().trim()));
+        }
+    }
+
+    @Override
+    public CharSequence getText(int id) {
+        return getString(id);
+    }
+
+    @Override
+    public String getString(int id) {
+        String value = mStrings.get(id);
+        if (value == null) {
+            throw new NotFoundException("String resource ID #0x" + Integer.toHexString(id));
+        }
+        return value;
+    }
+
+    @Override
+    public String getString(int id, Object... formatArgs) {
+        return String.format(Locale.getDefault(), getString(id), formatArgs);
+    }
+
+    @Override
+    public boolean getBoolean(int id) {
+        Boolean value = mBooleans.get(id);
+        if (value == null) {
+            throw new NotFoundException("Boolean resource ID #0x" + Integer.toHexString(id));
+        }
+        return value;
+    }
+
+    @Override
+    public int getInteger(int id) {
+        Integer value = mIntegers.get(id);
+        if (value == null) {
+            throw new NotFoundException("Integer resource ID #0x" + Integer.toHexString(id));
+        }
+        return value;
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return mConfiguration;
+    }
+
+    /**
+     * Adds the raw text of every element with the given tag in a values file to the map, by
+     * name. The text of child elements, such as xliff:g placeholders, is included.
+     */
+    private static void readValues(File file, String tag, Map<String, String> values) {
+        try {
+            DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            NodeList elements = builder.parse(file).getElementsByTagName(tag);
+            for (int i = 0; i < elements.getLength(); i++) {
+                Element element = (Element) elements.item(i);
+                values.put(element.getAttribute("name"), element.getTextContent());
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to read " + file, e);
+        }
+    }
+
+    /**
+     * Maps the values to the resource IDs of the same name in one of R's inner classes. Values
+     * the app's R doesn't know about are left out.
+     */
+    private static Map<Integer, String> getIds(Class<?> rClass, Map<String, String> values) {
+        Map<Integer, String> ids = new HashMap<>();
+        for (Field field : rClass.getFields()) {
+            String value = values.get(field.getName());
+            if (value == null) continue;
+            try {
+                ids.put(field.getInt(null), value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Turns the text of a string resource into the string aapt would compile it to: runs of
+     * white space become a single space and are trimmed from the ends, unless they are within
+     * double quotes, and backslash escapes such as \' and \n are resolved.
+     */
+    static String decodeString(String raw) {
+        StringBuilder out = new StringBuilder(raw.length());
+        boolean quoted = false;
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+
+            if (c == '"') {
+                quoted = !quoted;
+                continue;
+            }
+            if (!quoted && Character.isWhitespace(c)) {
+                pendingSpace = true;
+                continue;
+            }
+
+            if (c == '\\' && i + 1 < raw.length()) {
+                char escaped = raw.charAt(++i);
+                if (escaped == 'n') {
+                    c = '\n';
+                } else if (escaped == 't') {
+                    c = '\t';
+                } else if (escaped == 'u' && i + 4 < raw.length()) {
+                    c = (char) Integer.parseInt(raw.substring(i + 1, i + 5), 16);
+                    i += 4;
+                } else {
+                    /* \' \" \\ \@ \? stand for themselves */
+                    c = escaped;
+                }
+            }
+
+            if (pendingSpace && out.length() > 0) {
+                out.append(' ');
+            }
+            pendingSpace = false;
+            out.append(c);
+        }
+        return out.toString();
+    }
+}
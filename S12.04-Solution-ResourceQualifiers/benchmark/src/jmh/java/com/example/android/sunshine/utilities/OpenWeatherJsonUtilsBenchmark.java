@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.utils.FakeForecastJson;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing a forecast response with org.json (the whole response is turned into a tree
+ * first) for two weeks, a year, and far more days than the server ever sends. The responses are
+ * built by FakeForecastJson, the same payloads JsonParsingBenchmark parses on a device.
+ * <p>
+ * The streaming parser is only measured there, by JsonParsingBenchmark. android-all's
+ * android.util.JsonReader calls System.arraycopy(char[], int, char[], int, int), an overload
+ * that only Android's own core library has, so it fails with a NoSuchMethodError on a desktop
+ * JVM.
+ * <p>
+ * The parsers are passed no Context, so the location stored in the preferences isn't updated and
+ * only the parsing itself is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OpenWeatherJsonUtilsBenchmark {
+
+    @Param({"14", "365", "10000"})
+    public int days;
+
+    private String mJson;
+
+    @Setup
+    public void setUp() throws JSONException {
+        mJson = FakeForecastJson.createForecastJson(days);
+
+        /* Make sure the parser accepts the payload, or the scores would mean nothing */
+        int parsed = OpenWeatherJsonUtils.getForecastBatchFromJson(null, mJson).size();
+        if (parsed != days) {
+            throw new IllegalStateException("Parsed " + parsed + " of " + days + " days");
+        }
+    }
+
+    @Benchmark
+    public ForecastBatch parseTree() throws JSONException {
+        return OpenWeatherJsonUtils.getForecastBatchFromJson(null, mJson);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the date arithmetic the forecast list and the sync run for every row. None of it
+ * touches Android, so these numbers are what the code itself costs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SunshineDateUtilsBenchmark {
+
+    /* Not final, so the JIT can't fold the calls into constants */
+    private long mDate = 1475280000000L + 13 * 60 * 60 * 1000 + 37 * 60 * 1000;
+    private long mNormalizedDate = 1475280000000L;
+
+    @Benchmark
+    public long normalizeDate() {
+        return SunshineDateUtils.normalizeDate(mDate);
+    }
+
+    @Benchmark
+    public long getNormalizedUtcDateForToday() {
+        return SunshineDateUtils.getNormalizedUtcDateForToday();
+    }
+
+    @Benchmark
+    public boolean isDateNormalized() {
+        return SunshineDateUtils.isDateNormalized(mNormalizedDate);
+    }
+}
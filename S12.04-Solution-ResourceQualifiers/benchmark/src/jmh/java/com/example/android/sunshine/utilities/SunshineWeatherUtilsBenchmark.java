@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures formatting temperatures and wind, and mapping weather condition IDs to descriptions
+ * and artwork, against the app's default (English) resources. The condition benchmarks go over
+ * a fixed set of IDs, so their scores are per lookup.
+ * <p>
+ * The mapping is measured both through {@link WeatherConditionTable} and through the switch
+ * statements the table is built from, like WeatherConditionBenchmark does on a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SunshineWeatherUtilsBenchmark {
+
+    /* One of every kind of weather the server sends, see FakeForecastJson */
+    private static final int[] WEATHER_IDS = {200, 300, 500, 511, 600, 711, 800, 801, 803, 962};
+
+    /*
+     * The units to format in. Each value runs in a fork of its own, which is what lets
+     * BenchmarkContext fix the units up front.
+     */
+    @Param({"true", "false"})
+    public boolean metric;
+
+    private BenchmarkContext mContext;
+
+    /* Not final, so the JIT can't fold the calls into constants */
+    private double mHigh = 21.4;
+    private double mLow = 12.6;
+    private float mWindSpeed = 7.2f;
+    private float mWindDegrees = 245f;
+
+    @Setup
+    public void setUp() {
+        mContext = new BenchmarkContext(metric);
+
+        /* Unknown IDs are logged, and android.util.Log doesn't run on the JVM */
+        for (int weatherId : WEATHER_IDS) {
+            if (WeatherConditionTable.getSmallArtResourceId(weatherId)
+                    == WeatherConditionTable.NO_RESOURCE) {
+                throw new IllegalStateException("Unknown weather ID " + weatherId);
+            }
+        }
+    }
+
+    @Benchmark
+    public String formatTemperature() {
+        return SunshineWeatherUtils.formatTemperature(mContext, mHigh);
+    }
+
+    @Benchmark
+    public String formatHighLows() {
+        return SunshineWeatherUtils.formatHighLows(mContext, mHigh, mLow);
+    }
+
+    @Benchmark
+    public String getFormattedWind() {
+        return SunshineWeatherUtils.getFormattedWind(mContext, mWindSpeed, mWindDegrees);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void getStringForWeatherCondition(Blackhole blackhole) {
+        for (int weatherId : WEATHER_IDS) {
+            blackhole.consume(
+                    SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void getArtResourceIds(Blackhole blackhole) {
+        for (int weatherId : WEATHER_IDS) {
+            blackhole.consume(
+                    SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId));
+            blackhole.consume(
+                    SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void mapResourceIds(Blackhole blackhole) {
+        for (int weatherId : WEATHER_IDS) {
+            blackhole.consume(WeatherConditionTable.mapDescriptionResourceId(weatherId));
+            blackhole.consume(WeatherConditionTable.mapSmallArtResourceId(weatherId));
+            blackhole.consume(WeatherConditionTable.mapLargeArtResourceId(weatherId));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public void lookUpResourceIds(Blackhole blackhole) {
+        for (int weatherId : WEATHER_IDS) {
+            blackhole.consume(WeatherConditionTable.getDescriptionResourceId(weatherId));
+            blackhole.consume(WeatherConditionTable.getSmallArtResourceId(weatherId));
+            blackhole.consume(WeatherConditionTable.getLargeArtResourceId(weatherId));
+        }
+    }
+}